@@ -0,0 +1,233 @@
+package study.querydsl.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 회원 검색 API 부하 테스트 (./gradlew loadTest -Dloadtest.rate=500 -Dloadtest.duration=PT1M)
+ *
+ * 열린 모델(open model) : 응답을 기다렸다가 다음 요청을 보내는 대신, rate 에 맞춰 정해진 시각마다 요청을 시작한다.
+ * 지연 시간은 실제로 보낸 시각이 아니라 보내야 했던 시각(intended start)부터 잰다. 서버가 느려져서 요청이 밀리면 밀린 시간까지
+ * 지연 시간에 들어가므로, 느린 구간의 요청이 적게 측정되는 문제(coordinated omission)가 없다.
+ * 끝날 때까지 보내지 못했거나 응답을 받지 못하고 중단된 요청도 빼지 않고 최대값(1분)으로 기록하고, 따로 세어서 출력한다.
+ * 워밍업 구간은 응답이 측정 구간에 도착해도 보내야 했던 시각으로 판단해서 뺀다.
+ *
+ * 결과는 요청 종류별, 전체 HdrHistogram 으로 모아서 build/loadtest/[label]-[시각].hlog (HistogramLogProcessor 로 다시 읽을 수 있다.)
+ * 와 .hgrm (백분위 분포) 파일로 남긴다. label 을 빌드마다 다르게 주면 결과를 비교할 수 있다.
+ *
+ * 설정 (시스템 프로퍼티)
+ * loadtest.base-url    : http://localhost:8080
+ * loadtest.rate        : 초당 요청 수 (200)
+ * loadtest.concurrency : 동시에 처리 중인 최대 요청 수 (32). 넘는 요청은 대기열에서 기다리고, 기다린 시간도 지연 시간에 들어간다.
+ * loadtest.duration    : 측정 시간 (PT30S)
+ * loadtest.warmup      : 측정 전에 같은 부하를 주는 시간 (PT5S). 결과에서 뺀다.
+ * loadtest.mix         : 요청 종류와 가중치 (Scenario)
+ * loadtest.max-page    : 페이징 요청의 최대 페이지 번호 (50)
+ * loadtest.label       : 결과 파일 이름 (run)
+ * loadtest.out         : 결과 디렉토리 (build/loadtest)
+ */
+public class LoadTest {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final double rate;
+    private final int concurrency;
+    private final Duration duration;
+    private final Duration warmup;
+    private final List<Scenario> mix;
+    private final int maxPage;
+
+    private final Map<Scenario, Recorder> recorders = new EnumMap<>(Scenario.class);
+    private final Recorder total = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder unsent = new LongAdder(); // 끝날 때까지 보내지 못했거나 응답 전에 중단된 요청
+
+    LoadTest(String baseUrl, double rate, int concurrency, Duration duration, Duration warmup, List<Scenario> mix, int maxPage) {
+        this.baseUrl = baseUrl;
+        this.rate = rate;
+        this.concurrency = concurrency;
+        this.duration = duration;
+        this.warmup = warmup;
+        this.mix = mix;
+        this.maxPage = maxPage;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (Scenario scenario : mix) {
+            recorders.computeIfAbsent(scenario, s -> new Recorder(HIGHEST_TRACKABLE_NANOS, 3));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest(
+                System.getProperty("loadtest.base-url", "http://localhost:8080"),
+                Double.parseDouble(System.getProperty("loadtest.rate", "200")),
+                Integer.parseInt(System.getProperty("loadtest.concurrency", "32")),
+                Duration.parse(System.getProperty("loadtest.duration", "PT30S")),
+                Duration.parse(System.getProperty("loadtest.warmup", "PT5S")),
+                Scenario.mix(System.getProperty("loadtest.mix",
+                        "v1-username:3,v1-team-age:2,v1-all:1,v2-first-page:3,v2-deep-page:1,v2-slice:2")),
+                Integer.parseInt(System.getProperty("loadtest.max-page", "50")));
+
+        Map<Scenario, Histogram> histograms = loadTest.run();
+
+        String label = System.getProperty("loadtest.label", "run");
+        File out = new File(System.getProperty("loadtest.out", "build/loadtest"));
+        loadTest.report(histograms, out, label + "-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+    }
+
+    /* warmup + duration 동안 부하를 주고, 측정 구간의 요청 종류별 히스토그램을 돌려준다. (전체는 key null) */
+    Map<Scenario, Histogram> run() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "loadtest-" + r.hashCode());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        System.out.printf("[loadtest] %s rate=%.0f/s concurrency=%d warmup=%s duration=%s mix=%s%n",
+                baseUrl, rate, concurrency, warmup, duration, recorders.keySet());
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long measureStart = start + warmup.toNanos();
+        long end = measureStart + duration.toNanos();
+
+        for (long i = 0; ; i++) {
+            long intended = start + i * intervalNanos; // i 번째 요청을 보내야 하는 시각 (응답과 상관없이 고정)
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            workers.execute(new Send(Scenario.pick(mix), intended, intended >= measureStart));
+        }
+
+        workers.shutdown();
+        if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+            for (Runnable queued : workers.shutdownNow()) {
+                ((Send) queued).dropped(); // 대기열에서 시작하지 못한 요청
+            }
+            workers.awaitTermination(5, TimeUnit.SECONDS); // 보내던 요청은 중단되면서 스스로 기록한다.
+        }
+
+        Map<Scenario, Histogram> histograms = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+        recorders.forEach((scenario, recorder) -> histograms.put(scenario, recorder.getIntervalHistogram()));
+        histograms.put(null, total.getIntervalHistogram());
+        return histograms;
+    }
+
+    void report(Map<Scenario, Histogram> histograms, File dir, String name) throws FileNotFoundException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("cannot create " + dir);
+        }
+        File hlog = new File(dir, name + ".hlog");
+        File hgrm = new File(dir, name + ".hgrm");
+        double seconds = duration.toNanos() / 1e9;
+
+        try (PrintStream logOut = new PrintStream(new FileOutputStream(hlog));
+             PrintStream hgrmOut = new PrintStream(new FileOutputStream(hgrm))) {
+            HistogramLogWriter writer = new HistogramLogWriter(logOut);
+            writer.outputComment("querydsl loadtest " + name + " base-url=" + baseUrl + " rate=" + rate + " concurrency=" + concurrency);
+            writer.outputLogFormatVersion();
+            writer.outputLegend();
+
+            histograms.forEach((scenario, histogram) -> {
+                String tag = scenario == null ? "total" : scenario.label();
+                histogram.setTag(tag);
+                writer.outputIntervalHistogram(histogram);
+
+                hgrmOut.println("# " + tag);
+                histogram.outputPercentileDistribution(hgrmOut, 1_000_000.0); // ms 단위
+                System.out.printf("[loadtest] %-14s %8.1f req/s  p50 %7.2fms  p90 %7.2fms  p99 %7.2fms  p99.9 %7.2fms  max %7.2fms%n",
+                        tag, histogram.getTotalCount() / seconds,
+                        histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(90) / 1e6,
+                        histogram.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6,
+                        histogram.getMaxValue() / 1e6);
+            });
+        }
+        System.out.printf("[loadtest] status %s, io errors %d, unsent %d%n", new TreeMap<>(statuses), errors.sum(), unsent.sum());
+        System.out.printf("[loadtest] written %s, %s%n", hlog, hgrm);
+    }
+
+    /* 요청 하나. measured 가 false 면 워밍업 구간의 요청이므로 기록하지 않는다. */
+    private class Send implements Runnable {
+        final Scenario scenario;
+        final long intended;
+        final boolean measured;
+
+        Send(Scenario scenario, long intended, boolean measured) {
+            this.scenario = scenario;
+            this.intended = intended;
+            this.measured = measured;
+        }
+
+        @Override
+        public void run() {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + scenario.path(maxPage)))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            int status;
+            try {
+                status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped();
+                return;
+            }
+            if (!measured) {
+                return;
+            }
+            if (status < 0) {
+                errors.increment();
+            } else {
+                statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            }
+            record(Math.min(System.nanoTime() - intended, HIGHEST_TRACKABLE_NANOS));
+        }
+
+        /* 응답을 받지 못한 요청. 빼면 가장 느린 요청이 사라지므로 최대값으로 기록한다. */
+        void dropped() {
+            if (measured) {
+                unsent.increment();
+                record(HIGHEST_TRACKABLE_NANOS);
+            }
+        }
+
+        private void record(long latency) {
+            recorders.get(scenario).recordValue(latency);
+            total.recordValue(latency);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package study.querydsl.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+
+/**
+ * 요청 종류 (검색 조건 모양, 페이지 깊이)
+ * InitMember 데이터(member0 ~ member99, teamA/teamB, 나이 0 ~ 99) 기준으로 조건 값을 고른다.
+ * mix 는 "이름:가중치,이름:가중치" 형식이다. (loadtest.mix)
+ */
+enum Scenario {
+
+    V1_USERNAME(maxPage -> "/v1/members?username=member" + random(100)),
+    V1_TEAM_AGE(maxPage -> "/v1/members?teamName=team" + (random(2) == 0 ? "A" : "B") + "&ageGoe=" + random(100)),
+    V1_ALL(maxPage -> "/v1/members"),                                                  // 조건 없음 (결과 건수 제한 확인용)
+    V2_FIRST_PAGE(maxPage -> "/v2/members?teamName=teamA&page=0&size=20"),
+    V2_DEEP_PAGE(maxPage -> "/v2/members?page=" + random(maxPage + 1) + "&size=20"),   // 0 ~ maxPage 사이 임의 페이지
+    V2_SLICE(maxPage -> "/v2/members/slice?ageGoe=" + random(100) + "&page=" + random(maxPage + 1) + "&size=20");
+
+    private final IntFunction<String> path;
+
+    Scenario(IntFunction<String> path) {
+        this.path = path;
+    }
+
+    String path(int maxPage) {
+        return path.apply(maxPage);
+    }
+
+    String label() {
+        return name().toLowerCase().replace('_', '-');
+    }
+
+    private static int random(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    /* "v1-username:3,v2-first-page:5" -> 가중치만큼 반복한 목록. 임의로 하나 고르면 가중치 비율대로 나온다. */
+    static List<Scenario> mix(String spec) {
+        List<Scenario> weighted = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            Scenario scenario = valueOf(nameAndWeight[0].trim().toUpperCase().replace('-', '_'));
+            int weight = nameAndWeight.length > 1 ? Integer.parseInt(nameAndWeight[1].trim()) : 1;
+            for (int i = 0; i < weight; i++) {
+                weighted.add(scenario);
+            }
+        }
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("empty request mix: " + spec);
+        }
+        return weighted;
+    }
+
+    static Scenario pick(List<Scenario> weighted) {
+        return weighted.get(random(weighted.size()));
+    }
+}
@@ -3,11 +3,14 @@ package study.querydsl;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import javax.persistence.EntityManager;
 
-@SpringBootApplication
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class) // R2DBC ConnectionFactory 빈이 생기면 JDBC DataSource 자동 설정이 꺼지므로 제외 (ReactiveMemberRepository 참고)
+@EnableScheduling // 팀 통계 재계산 등 주기 작업
 public class QuerydslApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,188 @@
+package study.querydsl.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.event.EntityCommittedEvent;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 조회 결과 캐시 (LRU + TTL)
+ *
+ * 결과마다 의존하는 엔티티 타입을 함께 저장하고, 그 타입의 변경이 커밋되면(EntityCommittedEvent) 해당 결과를 모두 지운다.
+ * 조회 도중에 커밋된 변경이 있으면(엔티티 타입별 세대가 바뀌었으면) 조회 결과를 저장하지 않는다.
+ * 쓰기 트랜잭션 안에서는 캐시를 쓰지 않는다. (커밋 전의 자기 변경이 보여야 하고, 롤백될 결과를 저장하면 안 된다.)
+ *
+ * 크기 상한 : 결과 수 maxEntries, 결과에 담긴 행 수 합계 maxRows. 넘으면 가장 오래 쓰이지 않은 결과부터 버린다.
+ * 캐시한 값은 여러 요청이 함께 보므로 변경할 수 없는 값이어야 한다. (SearchResultCache 참고)
+ */
+@Component
+public class QueryResultCache {
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxRows;
+    private final int estimatedRowBytes;
+
+    private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Class<?>, Long> generations = new HashMap<>();
+    private long rows;
+    private long hits;
+    private long misses;
+
+    @Autowired
+    public QueryResultCache(MeterRegistry meterRegistry,
+                            @Value("${querydsl.cache.enabled:true}") boolean enabled,
+                            @Value("${querydsl.cache.max-entries:500}") int maxEntries,
+                            @Value("${querydsl.cache.max-rows:100000}") long maxRows,
+                            @Value("${querydsl.cache.estimated-row-bytes:200}") int estimatedRowBytes) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+        this.estimatedRowBytes = estimatedRowBytes;
+
+        meterRegistry.gauge("querydsl.cache.entries", this, c -> c.stat(() -> c.entries.size()));
+        meterRegistry.gauge("querydsl.cache.rows", this, c -> c.stat(() -> c.rows));
+        meterRegistry.gauge("querydsl.cache.estimated.bytes", this, c -> c.stat(() -> c.rows * c.estimatedRowBytes));
+        meterRegistry.gauge("querydsl.cache.hit.ratio", this, c -> c.stat(() -> c.hits + c.misses == 0 ? 0 : (double) c.hits / (c.hits + c.misses)));
+    }
+
+    /**
+     * key 로 캐시된 결과를 반환하고, 없거나 만료되었으면 loader 로 조회해서 저장한다.
+     *
+     * @param region      메트릭 태그로 쓰는 캐시 이름 (member.search 등)
+     * @param key         equals/hashCode 로 결과를 구별하는 값. 사용자 입력이 들어가는 키를 문자열로 이어 붙이면
+     *                    서로 다른 입력이 같은 문자열이 될 수 있으므로, 필드별로 비교하는 값 객체를 쓴다.
+     * @param entityTypes 결과가 의존하는 엔티티 타입. 이 타입의 변경이 커밋되면 결과를 지운다.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String region, Object key, Set<Class<?>> entityTypes, Duration ttl, Supplier<T> loader) {
+        if (!enabled || isWriteTransaction()) {
+            count(region, "bypass");
+            return loader.get();
+        }
+
+        List<Object> cacheKey = List.of(region, key);
+        long generation;
+        synchronized (this) {
+            Entry entry = entries.get(cacheKey);
+            if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+                hits++;
+                count(region, "hit");
+                return (T) entry.value;
+            }
+            if (entry != null) {
+                remove(cacheKey);
+            }
+            misses++;
+            generation = generationOf(entityTypes);
+        }
+        count(region, "miss");
+
+        T value = loader.get();
+        synchronized (this) {
+            if (generation == generationOf(entityTypes)) { // 조회하는 동안 커밋된 변경이 있으면 낡은 결과일 수 있다.
+                remove(cacheKey);
+                Entry entry = new Entry(value, entityTypes, System.nanoTime() + ttl.toNanos(), rowsOf(value));
+                entries.put(cacheKey, entry);
+                rows += entry.rows;
+                evictOverflow();
+            }
+        }
+        return value;
+    }
+
+    @EventListener
+    public synchronized void onEntityCommitted(EntityCommittedEvent event) {
+        generations.merge(event.getEntityType(), 1L, Long::sum);
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.entityTypes.contains(event.getEntityType())) {
+                rows -= entry.rows;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        rows = 0;
+    }
+
+    private static boolean isWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private long generationOf(Set<Class<?>> entityTypes) {
+        long sum = 0; // 세대는 늘어나기만 하므로 합이 같으면 어느 타입도 바뀌지 않았다.
+        for (Class<?> type : entityTypes) {
+            sum += generations.getOrDefault(type, 0L);
+        }
+        return sum;
+    }
+
+    private void remove(List<Object> cacheKey) {
+        Entry removed = entries.remove(cacheKey);
+        if (removed != null) {
+            rows -= removed.rows;
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || rows > maxRows) && it.hasNext()) {
+            Entry eldest = it.next();
+            rows -= eldest.rows;
+            it.remove();
+        }
+    }
+
+    private static long rowsOf(Object value) {
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).size();
+        }
+        if (value instanceof Slice) {
+            return ((Slice<?>) value).getNumberOfElements();
+        }
+        return 1;
+    }
+
+    private void count(String region, String result) {
+        meterRegistry.counter("querydsl.cache.requests", "region", region, "result", result).increment();
+    }
+
+    private synchronized double stat(Supplier<Number> value) {
+        return value.get().doubleValue();
+    }
+
+    private static class Entry {
+        final Object value;
+        final Set<Class<?>> entityTypes;
+        final long expiresAt;
+        final long rows;
+
+        Entry(Object value, Set<Class<?>> entityTypes, long expiresAt, long rows) {
+            this.value = value;
+            this.entityTypes = entityTypes;
+            this.expiresAt = expiresAt;
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package study.querydsl.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.UsernameMatchType;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.EstimatedPage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 회원 검색(MemberTeamDto) 결과 캐시
+ *
+ * 키는 (검색 메서드, 검색 조건, 페이지 요청) 이고 Member, Team 변경이 커밋되면 지워진다.
+ * 검색 조건의 toString() 은 값을 구분 없이 이어 붙이므로, 조건의 필드 값을 복사한 SearchKey 로 비교한다.
+ * MemberTeamDto 는 setter 가 있는 가변 객체이므로, 저장할 때와 꺼낼 때 모두 복사해서 캐시 안의 값이 바뀌지 않게 한다.
+ * 반환하는 리스트는 변경할 수 없다.
+ */
+@Component
+public class SearchResultCache {
+
+    private static final Set<Class<?>> ENTITY_TYPES = Set.of(Member.class, Team.class);
+
+    private final QueryResultCache cache;
+    private final Duration ttl;
+
+    public SearchResultCache(QueryResultCache cache,
+                             @Value("${querydsl.cache.search-ttl:PT30S}") Duration ttl) {
+        this.cache = cache;
+        this.ttl = ttl;
+    }
+
+    public List<MemberTeamDto> list(String method, MemberSearchCondition condition,
+                                    Supplier<List<MemberTeamDto>> loader) {
+        return copy(cache.get("member.search", SearchKey.of(method, condition, null), ENTITY_TYPES, ttl,
+                () -> copy(loader.get())));
+    }
+
+    public Page<MemberTeamDto> page(String method, MemberSearchCondition condition, Pageable pageable,
+                                    Supplier<Page<MemberTeamDto>> loader) {
+        return copy(cache.get("member.search", SearchKey.of(method, condition, pageable), ENTITY_TYPES, ttl,
+                () -> copy(loader.get())));
+    }
+
+    private static Page<MemberTeamDto> copy(Page<MemberTeamDto> page) {
+        List<MemberTeamDto> content = copy(page.getContent());
+        if (page instanceof EstimatedPage) {
+            return new EstimatedPage<>(content, page.getPageable(), ((EstimatedPage<MemberTeamDto>) page).getCountEstimate());
+        }
+        return new PageImpl<>(content, page.getPageable(), page.getTotalElements());
+    }
+
+    private static List<MemberTeamDto> copy(List<MemberTeamDto> dtos) {
+        List<MemberTeamDto> copies = new ArrayList<>(dtos.size());
+        for (MemberTeamDto dto : dtos) {
+            copies.add(new MemberTeamDto(dto.getMemberId(), dto.getUsername(), dto.getAge(), dto.getTeamId(), dto.getTeamName()));
+        }
+        return Collections.unmodifiableList(copies);
+    }
+
+    /* 검색 조건은 가변 객체이므로 키에는 필드 값을 복사해 둔다. pageable 은 목록 검색이면 null */
+    @lombok.Value
+    static class SearchKey {
+        String method;
+        String username;
+        UsernameMatchType usernameMatch;
+        String teamName;
+        Integer ageGoe;
+        Integer ageLoe;
+        Pageable pageable;
+
+        static SearchKey of(String method, MemberSearchCondition condition, Pageable pageable) {
+            return new SearchKey(method, condition.getUsername(), condition.getUsernameMatch(), condition.getTeamName(),
+                    condition.getAgeGoe(), condition.getAgeLoe(), pageable);
+        }
+    }
+}
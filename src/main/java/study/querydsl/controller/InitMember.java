@@ -1,35 +1,49 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.startup.DbImage;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.time.Duration;
 
 @Profile("local") // 프로파일 설정. 부트가 처음 뜰 때 둘째 줄 로그에서 현재 사용중인 profile 확인 가능
 @Component //스프링 빈에 자동 등록 되도록 설정
 @RequiredArgsConstructor
 public class InitMember {
     private final InitMemberService initMemberService;
+    private final DbImage dbImage;
 
     @PostConstruct  // @PostConstruct 는 WAS 가 뜰 때 bean이 생성된 다음 딱 한번만 실행된다.
     public void init() {
+        if (dbImage.isRestored()) {
+            return;  // DB 이미지로 스키마와 데이터를 복원했으면 다시 넣지 않는다. (DbImage 참고)
+        }
         /*스프링 라이프사이클 때문에, PostConstruct 와 Transactional을 동시에 쓸 수 없으므로, 분리하여 호출한다.*/
+        long start = System.nanoTime();
         initMemberService.init();
+        dbImage.recordSeedTime(Duration.ofNanos(System.nanoTime() - start));
     }
 
     @Component
     static class InitMemberService {
 
+        private static final int FLUSH_SIZE = 1000;
+
         @PersistenceContext
         private EntityManager em;
 
+        @Value("${init.members:100}")  // DB 이미지를 만들 때(./gradlew buildDbImage -Dinit.members=1000000) 데이터 양을 늘린다.
+        private int members;
+
         @Transactional
         public void init() {
             Team teamA = new Team("teamA");
@@ -37,11 +51,27 @@ public class InitMember {
             em.persist(teamA);
             em.persist(teamB);
 
-            for (int i = 0; i < 100; i++) {
-                Team selectedTeam = i % 2 == 0 ? teamA : teamB;
-                em.persist(new Member("member" + i, i, selectedTeam));
+            if (members <= FLUSH_SIZE) {
+                for (int i = 0; i < members; i++) {
+                    Team selectedTeam = i % 2 == 0 ? teamA : teamB;
+                    em.persist(new Member("member" + i, i, selectedTeam));
+                }
+                return;
             }
 
+            // 많이 넣을 때는 영속성 컨텍스트가 커지지 않도록 주기적으로 비운다.
+            // changeTeam() 은 팀의 members 컬렉션에 쌓으므로, 팀 참조(프록시)만 연결한다.
+            Long teamAId = teamA.getId();
+            Long teamBId = teamB.getId();
+            for (int i = 0; i < members; i++) {
+                Member member = new Member("member" + i, i);
+                member.setTeam(em.getReference(Team.class, i % 2 == 0 ? teamAId : teamBId));
+                em.persist(member);
+                if ((i + 1) % FLUSH_SIZE == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
         }
     }
 
@@ -3,31 +3,170 @@ package study.querydsl.controller;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import study.querydsl.dto.MemberSearchBatchResult;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.MemberUpdateDto;
+import study.querydsl.guard.Bulkheads;
+import study.querydsl.guard.SearchGuard;
+import study.querydsl.prefetch.PagePrefetcher;
 import study.querydsl.repository.MemberJpaRepository;
 import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.CountMode;
+import study.querydsl.retry.OptimisticRetry;
+import study.querydsl.writebehind.MemberUpdate;
+import study.querydsl.writebehind.MemberWriteBehind;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static study.querydsl.web.ColumnarMemberMessageConverter.*;
 
 @RestController
 @RequiredArgsConstructor
 public class MemberController {
 
+    private static final int MAX_BATCH_CONDITIONS = 100;
+    private static final String RESULT_TRUNCATED = "X-Result-Truncated";
+
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final PagePrefetcher pagePrefetcher;
+    private final SearchGuard searchGuard;
+    private final Bulkheads bulkheads;
+    private final MemberWriteBehind memberWriteBehind;
+    private final OptimisticRetry optimisticRetry;
+
+    // 검색 결과는 Accept 헤더에 따라 행 단위 JSON, CBOR, Smile 이나 열 단위 JSON, CBOR, Smile 로 응답한다.
+    // Accept 가 없거나 모든 형식을 허용하면 produces 의 첫 번째 형식(행 단위 JSON)으로 응답한다.
+    // 검색 엔드포인트는 모두 Bulkheads 의 동시 실행 한도 안에서 실행되고, 한도가 차면 429 로 응답한다.
+    @GetMapping(value = "/v1/members", produces = {MediaType.APPLICATION_JSON_VALUE, CBOR_VALUE, SMILE_VALUE,
+            COLUMNAR_JSON_VALUE, COLUMNAR_CBOR_VALUE, COLUMNAR_SMILE_VALUE})
+    public ResponseEntity<List<MemberTeamDto>> searchMemberV1(MemberSearchCondition condition,
+                                                              @RequestParam(required = false) Integer limit) {
+        //페이징이 없으므로 최대 limit 건까지만 내려준다. 더 있으면 X-Result-Truncated: true 헤더를 붙인다.
+        int maxRows = searchGuard.limit("v1/members", limit);
+        return bulkheads.call("v1/members", () -> {
+            searchGuard.checkCost("v1/members", maxRows, () -> memberRepository.estimateSearch(condition));
+            List<MemberTeamDto> result = memberJpaRepository.search(condition, maxRows);
+            if (result.size() <= maxRows) {
+                return ResponseEntity.ok(result);
+            }
+            return ResponseEntity.ok()
+                    .header(RESULT_TRUNCATED, "true")
+                    .body(result.subList(0, maxRows));
+        });
+    }
 
-    @GetMapping("/v1/members")
-    public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
-        return memberJpaRepository.search(condition);
+    /**
+     * 여러 검색 조건을 한 번에 조회 (/v1/members 를 조건마다 호출하는 대신 한 번의 요청, 한 번의 쿼리)
+     * 응답의 i 번째 결과가 요청의 i 번째 조건의 결과이다.
+     * /v1/members 와 같이 조건마다 최대 limit 건이고, 잘린 조건은 결과의 truncated 가 true 이다. (하나라도 잘렸으면 X-Result-Truncated: true)
+     * 비용 검사는 조건들을 OR 로 묶은 검색에 한 번만 하고, 조건 수 x limit 건보다 많으면 거절한다.
+     * 조건이 하나도 없는 검색 조건은 테이블 전체를 읽어야 하므로 400 으로 거절한다.
+     */
+    @PostMapping("/v1/members/search:batch")
+    public ResponseEntity<List<MemberSearchBatchResult>> searchMemberBatch(@RequestBody List<MemberSearchCondition> conditions,
+                                                                       @RequestParam(required = false) Integer limit) {
+        if (conditions.size() > MAX_BATCH_CONDITIONS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "at most " + MAX_BATCH_CONDITIONS + " conditions per batch");
+        }
+        for (MemberSearchCondition condition : conditions) {
+            if (!memberJpaRepository.searchPredicate(condition).hasValue()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "every condition in a batch needs at least one filter");
+            }
+        }
+        int maxRows = searchGuard.limit("v1/members/search:batch", limit);
+        return bulkheads.call("v1/members/search:batch", () -> {
+            searchGuard.checkCost("v1/members/search:batch", conditions.size() * maxRows,
+                    () -> memberRepository.estimateSearchBatch(conditions));
+            List<MemberSearchBatchResult> results = new ArrayList<>();
+            boolean truncated = false;
+            for (List<MemberTeamDto> rows : memberJpaRepository.searchBatch(conditions, maxRows)) {
+                boolean cut = rows.size() > maxRows;
+                results.add(new MemberSearchBatchResult(cut ? rows.subList(0, maxRows) : rows, cut));
+                truncated |= cut;
+            }
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (truncated) {
+                response.header(RESULT_TRUNCATED, "true");
+            }
+            return response.body(results);
+        });
     }
 
-    @GetMapping("/v2/members")
-    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
+    @GetMapping(value = "/v2/members", produces = {MediaType.APPLICATION_JSON_VALUE, CBOR_VALUE, SMILE_VALUE,
+            COLUMNAR_JSON_VALUE, COLUMNAR_CBOR_VALUE, COLUMNAR_SMILE_VALUE})
+    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable,
+                                              @RequestParam(defaultValue = "approx") String count) {
         //기본적으로 스프링 데이터가, Pageable 인터페이스를 넘기면, 컨트롤러로 바인딩 될 때 데이터를 다 넣어서 준다.
-        return memberRepository.searchPage(condition,pageable);
+        //페이지 크기는 spring.data.web.pageable.max-page-size 를 넘지 않는다.
+        //count=exact|approx|none 으로 전체 건수를 구하는 방식을 고른다. (approx 는 추정값과 오차 범위를 countEstimate 로 함께 내려준다.)
+        //page=0,1,2... 처럼 순서대로 요청하면 다음 페이지를 미리 조회해 둔다.
+        CountMode countMode;
+        try {
+            countMode = CountMode.from(count);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "count must be one of exact, approx, none: " + count);
+        }
+        return bulkheads.call("v2/members", () -> pagePrefetcher.fetch("v2/members?count=" + countMode, condition, pageable,
+                page -> memberRepository.searchPage(condition, page, countMode)));
     }
 
+    @GetMapping(value = "/v2/members/slice", produces = {MediaType.APPLICATION_JSON_VALUE, CBOR_VALUE, SMILE_VALUE,
+            COLUMNAR_JSON_VALUE, COLUMNAR_CBOR_VALUE, COLUMNAR_SMILE_VALUE})
+    public Slice<MemberTeamDto> searchMemberSlice(MemberSearchCondition condition, Pageable pageable) {
+        //무한 스크롤용. totalElements 없이 hasNext(last) 만 내려주므로 count 쿼리가 나가지 않는다.
+        return bulkheads.call("v2/members/slice", () -> pagePrefetcher.fetch("v2/members/slice", condition, pageable,
+                page -> memberRepository.searchSlice(condition, page)));
+    }
+
+    /**
+     * 회원 나이 수정, 팀 이동. 바로 UPDATE 하지 않고 쓰기 버퍼(MemberWriteBehind)에 넣어 같은 회원의 변경과 합쳐서 반영한다.
+     * 기본은 버퍼에 넣자마자 202 로 응답하고, wait=true 면 DB 에 커밋된 뒤 204 로 응답한다.
+     * direct=true 면 버퍼를 거치지 않고 JPA 로 바로 반영한 뒤 204 로 응답한다. 같은 회원을 동시에 바꿔서 낙관적 락이 충돌하면
+     * OptimisticRetry 로 다시 읽어서 적용하고, 끝내 충돌하면 409. (버퍼에 남은 같은 회원의 변경이 나중에 반영되면 그 값이 이긴다.)
+     * 없는 회원이면 404, 없는 팀으로 옮기면 400, 버퍼가 가득 차면 429 (Retry-After)
+     */
+    @PatchMapping("/v1/members/{id}")
+    public ResponseEntity<Void> updateMember(@PathVariable Long id, @RequestBody MemberUpdateDto request,
+                                             @RequestParam(defaultValue = "false") boolean wait,
+                                             @RequestParam(defaultValue = "false") boolean direct) {
+        MemberUpdate update;
+        try {
+            update = new MemberUpdate(id, request.getAge(), request.getTeamId());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (direct) {
+            optimisticRetry.run("member.update", () -> memberJpaRepository.update(update));
+            return ResponseEntity.noContent().build();
+        }
+        if (!wait) {
+            memberWriteBehind.submit(update);
+            return ResponseEntity.accepted().build();
+        }
+        try {
+            memberWriteBehind.submit(update).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ResponseStatusException) {
+                throw (ResponseStatusException) e.getCause(); // 기다리는 동안 회원이 삭제되면 404
+            }
+            throw e;
+        }
+        return ResponseEntity.noContent().build();
+    }
 }
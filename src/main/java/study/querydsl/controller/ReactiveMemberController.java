@@ -0,0 +1,40 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.guard.SearchGuard;
+import study.querydsl.repository.ReactiveMemberRepository;
+
+/**
+ * R2DBC 검색 엔드포인트. 파라미터와 결과는 /v1/members, /v2/members 와 같다.
+ * Flux, Mono 를 반환하면 스프링 MVC 가 비동기 요청으로 처리하므로, 쿼리가 도는 동안 서블릿 스레드를 붙잡지 않는다.
+ */
+@RestController
+@RequiredArgsConstructor
+public class ReactiveMemberController {
+
+    private final ReactiveMemberRepository reactiveMemberRepository;
+    private final SearchGuard searchGuard;
+
+    // Accept: application/x-ndjson (기본) 이면 한 줄에 한 건씩 흘려보낸다. 다음 건은 앞의 건을 응답에 쓴 뒤에 요청한다. (backpressure)
+    // Accept: application/json 이면 모두 모아서 배열 하나로 응답한다.
+    @GetMapping(value = "/reactive/members", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<MemberTeamDto> searchMember(MemberSearchCondition condition, @RequestParam(required = false) Integer limit) {
+        //v1 과 같은 결과 건수 상한. 스트리밍 응답은 헤더를 먼저 보내므로 X-Result-Truncated 는 붙이지 않는다.
+        return reactiveMemberRepository.search(condition, searchGuard.limit("reactive/members", limit));
+    }
+
+    @GetMapping("/reactive/members/page")
+    public Mono<Page<MemberTeamDto>> searchMemberPage(MemberSearchCondition condition, Pageable pageable) {
+        return reactiveMemberRepository.searchPage(condition, pageable);
+    }
+}
@@ -0,0 +1,41 @@
+package study.querydsl.controller;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.TeamStatisticsDto;
+import study.querydsl.statistics.TeamStatistics;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QTeam.team;
+
+@RestController
+@RequiredArgsConstructor
+public class TeamController {
+
+    private final TeamStatistics teamStatistics;
+    private final JPAQueryFactory queryFactory;
+
+    /**
+     * 팀별 회원 수, 나이 합/평균/최대/최소
+     * group by 로 회원 전체를 매번 스캔하지 않고, 메모리에 유지 중인 집계를 반환한다. 팀 이름만 team 테이블에서 가져온다.
+     */
+    @GetMapping("/teams/statistics")
+    public List<TeamStatisticsDto> teamStatistics() {
+        Map<Long, String> teamNames = new HashMap<>();
+        for (Tuple tuple : queryFactory.select(team.id, team.name).from(team).fetch()) {
+            teamNames.put(tuple.get(team.id), tuple.get(team.name));
+        }
+
+        return teamStatistics.getAll().stream()
+                .map(s -> new TeamStatisticsDto(s.getTeamId(), teamNames.get(s.getTeamId()),
+                        s.getMemberCount(), s.getAgeSum(), s.getAgeAvg(), s.getAgeMax(), s.getAgeMin()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/* 묶음 검색(/v1/members/search:batch)의 조건 하나의 결과. truncated 면 limit 건보다 많아서 잘린 것 */
+@Data
+@AllArgsConstructor
+public class MemberSearchBatchResult {
+
+    private List<MemberTeamDto> content;
+    private boolean truncated;
+}
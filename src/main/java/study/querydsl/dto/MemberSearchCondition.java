@@ -6,6 +6,7 @@ import lombok.Data;
 public class MemberSearchCondition { // 동적쿼리 생성에 사용할 멤버정보를 담은 Dto 객체
     //회원명, 팀명, 나이(ageGoe, ageLoe)
     private String username;
+    private UsernameMatchType usernameMatch; // 회원명 검색 방식. null이면 EQ(정확히 일치)
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
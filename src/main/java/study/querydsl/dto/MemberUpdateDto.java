@@ -0,0 +1,9 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+@Data
+public class MemberUpdateDto { // PATCH /v1/members/{id} 요청 본문. null 인 필드는 바꾸지 않는다.
+    private Integer age;
+    private Long teamId;
+}
@@ -0,0 +1,11 @@
+package study.querydsl.dto;
+
+/**
+ * 회원명 검색 방식
+ * EQ : 정확히 일치 (기본값), PREFIX : ~로 시작, CONTAINS : ~를 포함
+ */
+public enum UsernameMatchType {
+    EQ,
+    PREFIX,
+    CONTAINS
+}
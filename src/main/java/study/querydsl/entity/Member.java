@@ -1,6 +1,7 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.Hibernate;
 
 import javax.persistence.*;
 
@@ -17,6 +18,12 @@ public class Member {
     private String username;
     private int age;
 
+    /* 낙관적 락. 같은 회원을 동시에 바꾼 트랜잭션 중 나중에 커밋하는 쪽이 실패한다. (OptimisticRetry 로 다시 시도)
+     * JDBC 로 직접 넣는 행(벤치마크 데이터 등)도 0 으로 시작하도록 DB 기본값을 준다. */
+    @Version @Setter(AccessLevel.NONE)
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "team_id")
     private Team team;
@@ -37,7 +44,13 @@ public class Member {
         }
     }
 
+    /* 팀의 회원 컬렉션(Team.members, extra lazy)을 초기화하지 않는다.
+     * 이전 팀의 컬렉션은 이미 읽어 둔 경우에만 뺀다. 읽지 않은 컬렉션에서 빼려면 전체를 읽어야 하고, 나중에 읽으면 DB 에서 바뀐 값을 읽는다. */
     public void changeTeam(Team team) {
+        if (this.team != null && this.team != team
+                && Hibernate.isInitialized(this.team) && Hibernate.isInitialized(this.team.getMembers())) {
+            this.team.getMembers().remove(this);
+        }
         this.team = team;
         team.getMembers().add(this);
     }
@@ -1,11 +1,16 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
+import org.hibernate.annotations.OptimisticLock;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
+import javax.persistence.Version;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -19,6 +24,15 @@ public class Team {
     private Long id;
     private String name;
 
+    @Version @Setter(AccessLevel.NONE)
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long version;
+
+    /* 회원의 팀 이동(changeTeam)은 Member 의 변경이다. 팀의 버전까지 올리면 같은 팀으로 옮기는 트랜잭션끼리 모두 충돌하므로 제외한다.
+     * EXTRA : 초기화 전에는 size() 를 count 쿼리로, add() 는 (연관관계 주인이 아닌 쪽이므로) 초기화 없이 쌓아두었다가 처리한다.
+     * 회원이 많은 팀에서 회원 수를 세거나 changeTeam 할 때 팀의 회원 전체를 읽지 않는다. 순회하거나 get(i) 하면 그때 전체를 읽는다. */
+    @OptimisticLock(excluded = true)
+    @LazyCollection(LazyCollectionOption.EXTRA)
     @OneToMany(mappedBy = "team")
     private List<Member> members = new ArrayList<>();
 
@@ -26,4 +40,9 @@ public class Team {
         this.name = name;
     }
 
+    /* 회원 수. 컬렉션을 읽지 않았으면 count 쿼리 한 번으로 구한다. */
+    public int getMemberCount() {
+        return members.size();
+    }
+
 }
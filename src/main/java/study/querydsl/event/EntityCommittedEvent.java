@@ -0,0 +1,12 @@
+package study.querydsl.event;
+
+import lombok.Value;
+
+/**
+ * 엔티티의 추가/수정/삭제가 커밋되었다는 스프링 이벤트
+ * 캐시나 미리 가져온 결과처럼 조회 결과를 들고 있는 빈들이 @EventListener 로 받아서 무효화한다.
+ */
+@Value
+public class EntityCommittedEvent {
+    Class<?> entityType;
+}
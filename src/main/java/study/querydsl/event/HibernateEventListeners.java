@@ -0,0 +1,29 @@
+package study.querydsl.event;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * 하이버네이트 이벤트 리스너 등록 유틸리티
+ * JPA 콜백(@PostPersist 등)과 달리 하이버네이트 리스너는 변경 전 상태(oldState)를 받을 수 있고,
+ * POST_COMMIT_* 이벤트를 사용하면 커밋된 변경만 전달받을 수 있다. (롤백된 변경은 전달되지 않는다.)
+ */
+public final class HibernateEventListeners {
+
+    private HibernateEventListeners() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void append(EntityManagerFactory emf, Object listener, EventType<?>... types) {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+
+        for (EventType<?> type : types) {
+            registry.getEventListenerGroup((EventType<Object>) type).appendListener(listener);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package study.querydsl.guard;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 엔드포인트의 동시 실행 한도를 넘은 요청 (429 Too Many Requests)
+ * 기다리는 요청이 쌓여 커넥션 풀과 스레드를 모두 잡아먹기 전에 바로 거절하고, Retry-After 로 잠시 뒤 다시 요청하도록 알린다.
+ */
+public class BulkheadFullException extends ResponseStatusException {
+
+    private final long retryAfterSeconds;
+
+    public BulkheadFullException(String name, int maxConcurrent, long retryAfterSeconds) {
+        super(HttpStatus.TOO_MANY_REQUESTS, name + " is busy (" + maxConcurrent + " concurrent requests). Retry later.");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getResponseHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return headers;
+    }
+}
@@ -0,0 +1,102 @@
+package study.querydsl.guard;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 엔드포인트별 동시 실행 한도 (bulkhead)
+ *
+ * 무거운 검색 하나가 느려져도 그 엔드포인트의 요청만 한도까지 쌓이고, 다른 엔드포인트는 커넥션과 스레드를 계속 쓸 수 있다.
+ * 한도가 찼으면 maxWait 만큼만 기다리고, 그래도 자리가 없으면 BulkheadFullException(429)으로 바로 거절한다.
+ *
+ * 한도는 querydsl.guard.bulkhead.max-concurrent 가 기본값이고, 엔드포인트마다
+ * querydsl.guard.bulkhead.endpoints[이름] 으로 바꿀 수 있다. (프로파일별 설정)
+ */
+@Component
+public class Bulkheads {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Integer> endpointMaxConcurrent;
+    private final int defaultMaxConcurrent;
+    private final Duration maxWait;
+    private final long retryAfterSeconds;
+
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    @Autowired
+    public Bulkheads(Environment environment, MeterRegistry meterRegistry,
+                     @Value("${querydsl.guard.bulkhead.max-concurrent:16}") int defaultMaxConcurrent,
+                     @Value("${querydsl.guard.bulkhead.max-wait:PT0.05S}") Duration maxWait,
+                     @Value("${querydsl.guard.bulkhead.retry-after:PT1S}") Duration retryAfter) {
+        this(meterRegistry, Binder.get(environment) // 엔드포인트 이름에 '/', ':' 가 있으므로 @Value 대신 Map 으로 바인딩
+                        .bind("querydsl.guard.bulkhead.endpoints", Bindable.mapOf(String.class, Integer.class))
+                        .orElse(Map.of()),
+                defaultMaxConcurrent, maxWait, retryAfter);
+    }
+
+    Bulkheads(MeterRegistry meterRegistry, Map<String, Integer> endpointMaxConcurrent,
+              int defaultMaxConcurrent, Duration maxWait, Duration retryAfter) {
+        this.meterRegistry = meterRegistry;
+        this.endpointMaxConcurrent = Map.copyOf(endpointMaxConcurrent);
+        this.defaultMaxConcurrent = defaultMaxConcurrent;
+        this.maxWait = maxWait;
+        this.retryAfterSeconds = Math.max(1, retryAfter.getSeconds());
+    }
+
+    /**
+     * name 엔드포인트의 한도 안에서 task 를 실행한다.
+     */
+    public <T> T call(String name, Supplier<T> task) {
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(name, this::create);
+        if (!bulkhead.tryAcquire(maxWait)) {
+            meterRegistry.counter("querydsl.guard.rejected", "endpoint", name, "reason", "bulkhead").increment();
+            throw new BulkheadFullException(name, bulkhead.maxConcurrent, retryAfterSeconds);
+        }
+        try {
+            return task.get();
+        } finally {
+            bulkhead.semaphore.release();
+        }
+    }
+
+    private Bulkhead create(String name) {
+        int maxConcurrent = endpointMaxConcurrent.getOrDefault(name, defaultMaxConcurrent);
+        Bulkhead bulkhead = new Bulkhead(maxConcurrent);
+        meterRegistry.gauge("querydsl.guard.active", Tags.of("endpoint", name), bulkhead,
+                b -> b.maxConcurrent - b.semaphore.availablePermits());
+        return bulkhead;
+    }
+
+    private static class Bulkhead {
+
+        private final int maxConcurrent;
+        private final Semaphore semaphore;
+
+        Bulkhead(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+            this.semaphore = new Semaphore(maxConcurrent);
+        }
+
+        boolean tryAcquire(Duration wait) {
+            try {
+                return wait.isZero() ? semaphore.tryAcquire() : semaphore.tryAcquire(wait.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
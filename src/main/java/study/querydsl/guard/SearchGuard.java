@@ -0,0 +1,67 @@
+package study.querydsl.guard;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import study.querydsl.repository.support.CountEstimate;
+
+import java.util.function.Supplier;
+
+/**
+ * 페이징 없는 검색(/v1/members)의 결과 건수 제한
+ *
+ * 1. limit 을 지정하지 않으면 defaultLimit 건, 지정해도 maxLimit 건까지만 조회한다. (조건이 모두 null 이어도 테이블 전체를 읽지 않는다.)
+ * 2. 조회하기 전에 결과 건수를 추정해서(CountEstimator) limit 보다 많으면 policy 에 따라 거절하거나, limit 건까지만 응답한다.
+ *
+ * 값은 querydsl.guard.* 로 프로파일마다 다르게 줄 수 있다.
+ */
+@Component
+public class SearchGuard {
+
+    private final MeterRegistry meterRegistry;
+    private final int defaultLimit;
+    private final int maxLimit;
+    private final UnselectivePolicy policy;
+
+    public SearchGuard(MeterRegistry meterRegistry,
+                       @Value("${querydsl.guard.default-limit:1000}") int defaultLimit,
+                       @Value("${querydsl.guard.max-limit:10000}") int maxLimit,
+                       @Value("${querydsl.guard.unselective:TRUNCATE}") UnselectivePolicy policy) {
+        if (defaultLimit < 1 || defaultLimit > maxLimit) {
+            throw new IllegalArgumentException("default-limit must be between 1 and max-limit(" + maxLimit + "): " + defaultLimit);
+        }
+        this.meterRegistry = meterRegistry;
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+        this.policy = policy;
+    }
+
+    /* 요청한 limit (null 이면 기본값). 범위를 벗어나면 400 */
+    public int limit(String endpoint, Integer requested) {
+        if (requested == null) {
+            return defaultLimit;
+        }
+        if (requested < 1 || requested > maxLimit) {
+            meterRegistry.counter("querydsl.guard.rejected", "endpoint", endpoint, "reason", "limit").increment();
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + maxLimit);
+        }
+        return requested;
+    }
+
+    /**
+     * 조회하기 전 비용 검사. REJECT 정책이면 estimate 로 결과 건수를 추정해서 limit 보다 많으면 거절한다.
+     * TRUNCATE 정책은 limit 으로 조회량이 이미 제한되므로 추정 쿼리를 실행하지 않는다.
+     */
+    public void checkCost(String endpoint, int limit, Supplier<CountEstimate> estimate) {
+        if (policy != UnselectivePolicy.REJECT) {
+            return;
+        }
+        CountEstimate rows = estimate.get();
+        if (rows.getCount() - rows.getErrorBound() > limit) { // 오차 범위를 고려해도 확실히 넘을 때만 거절
+            meterRegistry.counter("querydsl.guard.rejected", "endpoint", endpoint, "reason", "cost").increment();
+            throw new UnselectiveSearchException(rows.getCount(), limit);
+        }
+    }
+}
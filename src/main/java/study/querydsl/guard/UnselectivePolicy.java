@@ -0,0 +1,11 @@
+package study.querydsl.guard;
+
+/**
+ * 결과 건수 상한(limit)보다 많은 행에 맞을 것으로 추정되는 (선택도가 낮은) 검색의 처리 방식
+ * REJECT : 조회하기 전에 UnselectiveSearchException 으로 거절한다. (추정에 쿼리 몇 번이 더 든다.)
+ * TRUNCATE : 추정하지 않고 조회해서 limit 건까지만 응답한다. 잘린 응답에는 X-Result-Truncated 헤더가 붙는다.
+ */
+public enum UnselectivePolicy {
+    REJECT,
+    TRUNCATE
+}
@@ -0,0 +1,17 @@
+package study.querydsl.guard;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 결과 건수 상한보다 훨씬 많은 행에 맞는 검색 조건
+ * 조건을 좁히거나 페이징 API(/v2/members)를 쓰도록 안내한다.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnselectiveSearchException extends IllegalArgumentException {
+
+    public UnselectiveSearchException(long estimatedRows, int limit) {
+        super("the search condition matches about " + estimatedRows + " rows, more than the limit of " + limit
+                + ". Narrow the search condition or use the paged API (/v2/members).");
+    }
+}
@@ -0,0 +1,258 @@
+package study.querydsl.prefetch;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.event.EntityCommittedEvent;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 순서대로 페이지를 넘기는 클라이언트(page=0,1,2...)를 위한 다음 페이지 미리 가져오기
+ *
+ * (이름, 검색 조건, 정렬, 페이지 크기) 단위로 마지막 요청 페이지를 기억하고, 연속된 페이지 요청이 minSequential 번 이어지면
+ * 다음 페이지를 백그라운드에서 조회해 키마다 한 페이지짜리 버퍼에 넣어둔다. 다음 요청이 그 페이지면 버퍼에서 바로 꺼내준다.
+ *
+ * 키의 검색 조건은 toString() 이 아니라 equals 로 비교한다. (toString() 은 값을 구분 없이 이어 붙여서 다른 조건이 같은 문자열이 될 수 있다.)
+ *
+ * 메모리 상한 : 키는 maxKeys 개까지(LRU), 키마다 한 페이지, 페이지 크기는 maxPageSize 이하만 미리 가져온다.
+ * 무효화 : 엔티티 변경이 커밋되면 세대(generation)를 올리고 버퍼를 모두 비운다. 이전 세대에 시작된 조회 결과는 쓰지 않는다.
+ * 대기 : 미리 가져오기는 대기열에서 밀려 있을 수 있으므로 awaitTimeout 까지만 기다리고, 넘으면 취소하고 직접 조회한다.
+ */
+@Slf4j
+@Component
+public class PagePrefetcher {
+
+    private final TransactionOperations readOnly;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor executor;
+    private final boolean enabled;
+    private final int maxKeys;
+    private final int maxPageSize;
+    private final int minSequential;
+    private final Duration awaitTimeout;
+
+    private final Map<StreamKey, Stream> streams = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation;
+
+    @Autowired
+    public PagePrefetcher(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                          @Value("${querydsl.prefetch.enabled:true}") boolean enabled,
+                          @Value("${querydsl.prefetch.max-keys:256}") int maxKeys,
+                          @Value("${querydsl.prefetch.max-page-size:200}") int maxPageSize,
+                          @Value("${querydsl.prefetch.min-sequential:1}") int minSequential,
+                          @Value("${querydsl.prefetch.threads:2}") int threads,
+                          @Value("${querydsl.prefetch.await-timeout:PT1S}") Duration awaitTimeout) {
+        this(readOnly(transactionManager), meterRegistry, enabled, maxKeys, maxPageSize, minSequential, threads, awaitTimeout);
+    }
+
+    PagePrefetcher(TransactionOperations readOnly, MeterRegistry meterRegistry,
+                   boolean enabled, int maxKeys, int maxPageSize, int minSequential, int threads, Duration awaitTimeout) {
+        this.readOnly = readOnly;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxKeys = maxKeys;
+        this.maxPageSize = maxPageSize;
+        this.minSequential = minSequential;
+        this.awaitTimeout = awaitTimeout;
+
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxKeys), // 대기열도 키 수만큼만. 넘치면 미리 가져오기를 포기한다.
+                r -> {
+                    Thread thread = new Thread(r, "page-prefetch-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        meterRegistry.gauge("querydsl.prefetch.buffered", streams, s -> buffered());
+    }
+
+    /**
+     * pageable 페이지를 가져온다. 미리 가져온 결과가 있으면 그것을 쓰고, 없으면 loader 로 조회한다.
+     * 연속된 페이지 요청이면 다음 페이지를 백그라운드에서 loader 로 미리 조회해 둔다.
+     * condition 은 필드 값으로 equals, hashCode 를 비교하는 객체여야 한다. (MemberSearchCondition 은 @Data)
+     * loader 는 다른 스레드에서 실행될 수 있으므로 condition 을 바꾸지 않아야 한다.
+     */
+    public <T> T fetch(String name, Object condition, Pageable pageable, Function<Pageable, T> loader) {
+        if (!enabled || pageable.isUnpaged() || pageable.getPageSize() > maxPageSize) {
+            return loader.apply(pageable);
+        }
+
+        StreamKey key = new StreamKey(name, condition, pageable.getSort(), pageable.getPageSize());
+        int page = pageable.getPageNumber();
+        Future<?> buffered;
+        boolean sequential;
+        synchronized (this) {
+            Stream stream = streams.computeIfAbsent(key, k -> new Stream());
+            evictOverflow();
+            buffered = stream.take(page);
+            stream.sequential = stream.lastPage == page - 1 ? stream.sequential + 1 : 0;
+            stream.lastPage = page;
+            sequential = stream.sequential >= minSequential;
+        }
+
+        T result = buffered == null ? null : await(buffered);
+        if (result == null) {
+            meterRegistry.counter("querydsl.prefetch.requests", "result", "miss").increment();
+            result = loader.apply(pageable);
+        } else {
+            meterRegistry.counter("querydsl.prefetch.requests", "result", "hit").increment();
+        }
+
+        if (sequential && !(result instanceof Slice && !((Slice<?>) result).hasNext())) {
+            prefetch(key, pageable.next(), loader);
+        }
+        return result;
+    }
+
+    /* 엔티티 변경이 커밋되면 미리 가져온 페이지는 모두 낡은 결과가 될 수 있다. */
+    @EventListener
+    public synchronized void onEntityCommitted(EntityCommittedEvent event) {
+        generation++;
+        for (Stream stream : streams.values()) {
+            stream.discard("invalidated");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> void prefetch(StreamKey key, Pageable next, Function<Pageable, T> loader) {
+        FutureTask<T> task = new FutureTask<>(() -> readOnly.execute(status -> loader.apply(next)));
+        synchronized (this) {
+            Stream stream = streams.get(key);
+            if (stream == null || stream.isBuffered(next.getPageNumber(), generation)) {
+                return;
+            }
+            stream.discard("unused");
+            stream.buffered = new Prefetch(next.getPageNumber(), generation, task);
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                Stream stream = streams.get(key);
+                if (stream != null && stream.buffered != null && stream.buffered.future == task) {
+                    stream.buffered = null;
+                }
+            }
+            meterRegistry.counter("querydsl.prefetch.discarded", "reason", "rejected").increment();
+        }
+    }
+
+    /* 미리 가져오기가 실패했거나 awaitTimeout 안에 끝나지 않았으면 null. 호출한 쪽에서 직접 다시 조회한다. */
+    @SuppressWarnings("unchecked")
+    private <T> T await(Future<?> future) {
+        try {
+            return (T) future.get(awaitTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.debug("prefetch failed. falling back to direct query", e.getCause());
+            meterRegistry.counter("querydsl.prefetch.discarded", "reason", "failed").increment();
+            return null;
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            meterRegistry.counter("querydsl.prefetch.discarded", "reason", "timeout").increment();
+            return null;
+        }
+    }
+
+    private void evictOverflow() {
+        while (streams.size() > maxKeys) {
+            Map.Entry<StreamKey, Stream> eldest = streams.entrySet().iterator().next();
+            eldest.getValue().discard("evicted");
+            streams.remove(eldest.getKey());
+        }
+    }
+
+    private synchronized int buffered() {
+        int count = 0;
+        for (Stream stream : streams.values()) {
+            count += stream.buffered == null ? 0 : 1;
+        }
+        return count;
+    }
+
+    private static TransactionOperations readOnly(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    /* 미리 가져오기 단위. (이름, 검색 조건, 정렬, 페이지 크기) */
+    @lombok.Value
+    private static class StreamKey {
+        String name;
+        Object condition;
+        Sort sort;
+        int pageSize;
+    }
+
+    /* 키 하나의 접근 이력과 미리 가져온 페이지 (PagePrefetcher 의 락 안에서만 접근) */
+    private class Stream {
+        int lastPage = -2;
+        int sequential;
+        Prefetch buffered;
+
+        /* 요청한 페이지가 현재 세대에 미리 가져온 페이지면 꺼내고, 아니면 버린다. */
+        Future<?> take(int page) {
+            if (isBuffered(page, generation)) {
+                Future<?> future = buffered.future;
+                buffered = null;
+                return future;
+            }
+            discard("unused");
+            return null;
+        }
+
+        boolean isBuffered(int page, long generation) {
+            return buffered != null && buffered.page == page && buffered.generation == generation;
+        }
+
+        void discard(String reason) {
+            if (buffered != null) {
+                buffered.future.cancel(false);
+                buffered = null;
+                meterRegistry.counter("querydsl.prefetch.discarded", "reason", reason).increment();
+            }
+        }
+    }
+
+    private static class Prefetch {
+        final int page;
+        final long generation;
+        final Future<?> future;
+
+        Prefetch(int page, long generation, Future<?> future) {
+            this.page = page;
+            this.generation = generation;
+            this.future = future;
+        }
+    }
+}
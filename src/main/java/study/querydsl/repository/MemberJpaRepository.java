@@ -1,17 +1,29 @@
 package study.querydsl.repository;
 
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.CaseBuilder;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
+import study.querydsl.cache.SearchResultCache;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.ChunkedIdLoader;
+import study.querydsl.search.UsernameTrigramIndex;
+import study.querydsl.writebehind.MemberUpdate;
+import study.querydsl.writebehind.UnknownMemberException;
+import study.querydsl.writebehind.UnknownTeamException;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Supplier;
@@ -26,6 +38,9 @@ public class MemberJpaRepository {
 
     private final EntityManager em;  // 스프링에서 EntityManager는 프록시 사용하여 멀티쓰레드 환경에서 동시성 문제 해결해줌.  책 13.1챕터 참고.
     private final JPAQueryFactory queryFactory;  // JPAQueryFactory의 동시성 문제는 EntityManager에 의존하므로. 역시 문제없음.
+    private final UsernameTrigramIndex usernameIndex;  // username PREFIX, CONTAINS 검색용 trigram 인덱스
+    private final SearchResultCache searchResultCache;  // 검색 결과 캐시 (Member, Team 변경 커밋 시 무효화)
+    private final ChunkedIdLoader chunkedIdLoader;  // id 목록 조회 (IN 절 분할, 병렬 실행)
 
     /* 생성자에서 생성해서 쓰는 방식 외부에서 주입받는 객체가 적으므로, 테스트 시 조금 덜 번거롭다*/
 //    public MemberJpaRepository(EntityManager em) {
@@ -48,11 +63,61 @@ public class MemberJpaRepository {
         return Optional.ofNullable(findMember);
     }
 
+    /**
+     * 회원 나이 수정, 팀 이동을 호출한 쪽 트랜잭션에서 바로 반영한다. (쓰기 버퍼를 거치지 않는 PATCH /v1/members/{id}?direct=true)
+     * 같은 회원을 동시에 바꾼 트랜잭션과 충돌하면 커밋할 때 낙관적 락 예외가 나므로 OptimisticRetry 안에서 호출한다.
+     */
+    public void update(MemberUpdate update) {
+        Member findMember = em.find(Member.class, update.getMemberId());
+        if (findMember == null) {
+            throw new UnknownMemberException(update.getMemberId());
+        }
+        if (update.getTeamId() != null) {
+            Team findTeam = em.find(Team.class, update.getTeamId());
+            if (findTeam == null) {
+                throw new UnknownTeamException(update.getTeamId());
+            }
+            findMember.changeTeam(findTeam);
+        }
+        if (update.getAge() != null) {
+            findMember.setAge(update.getAge());
+        }
+    }
+
     public List<Member> findAll() {
         return em.createQuery("select m from Member m", Member.class)
                 .getResultList();
     }
 
+    /**
+     * id 목록의 회원을 id 순서 그대로 조회한다. (외부 랭킹 순서 등)
+     * findById 를 반복하거나 크기 제한 없는 in() 을 쓰는 대신, 2의 거듭제곱 크기 IN 목록으로 나눠서 조회한다.
+     * 엔티티는 호출한 쪽의 영속성 컨텍스트에서 조회해야 하므로 나눈 조회를 순서대로 실행한다. (병렬 조회는 findAllTeamDtoByIds)
+     */
+    public List<Member> findAllByIds(List<Long> ids) {
+        return chunkedIdLoader.load(ids, chunk -> queryFactory
+                .selectFrom(member)
+                .where(member.id.in(chunk))
+                .fetch(), Member::getId);
+    }
+
+    /**
+     * findAllByIds 의 DTO 버전. DTO 는 영속성 컨텍스트가 필요 없으므로 나눈 조회를 병렬로 실행한다.
+     */
+    public List<MemberTeamDto> findAllTeamDtoByIds(List<Long> ids) {
+        return chunkedIdLoader.loadInParallel(ids, chunk -> queryFactory
+                .select(new QMemberTeamDto(
+                        member.id,
+                        member.username,
+                        member.age,
+                        team.id,
+                        team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.id.in(chunk))
+                .fetch(), MemberTeamDto::getMemberId);
+    }
+
     public List<Member> findAll_Querydsl() {
         return queryFactory
                 .selectFrom(member)
@@ -111,6 +176,20 @@ public class MemberJpaRepository {
      * 동적쿼리 사용한 조회 - Where절 파라미터 사용 (기본 방식)
      */
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return searchResultCache.list("jpaSearch", condition, () -> searchQuery(condition).fetch());
+    }
+
+    /**
+     * search() 와 같지만 최대 limit 건까지만 조회한다. (조건이 모두 null 이어도 테이블 전체를 읽지 않도록)
+     * 결과가 limit 건보다 많은지 알 수 있게 limit + 1 건까지 가져오므로, 호출한 쪽에서 잘라서 쓴다.
+     */
+    public List<MemberTeamDto> search(MemberSearchCondition condition, int limit) {
+        return searchResultCache.list("jpaSearch:limit=" + limit, condition, () -> searchQuery(condition)
+                .limit(limit + 1L)
+                .fetch());
+    }
+
+    private JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition) {
         return queryFactory
                 .select(new QMemberTeamDto(
                         member.id,
@@ -120,12 +199,92 @@ public class MemberJpaRepository {
                         team.name))
                 .from(member)
                 .leftJoin(member.team, team)  // join(조인 대상, 대상의 Q타입)
-                .where(usernameEq(condition.getUsername()),
+                .where(usernameIndex.usernameMatch(condition.getUsername(), condition.getUsernameMatch()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
-                )
+                );
+    }
+
+    /**
+     * 여러 검색 조건을 한 번의 쿼리로 조회한다. 반환 목록의 i 번째는 conditions 의 i 번째 조건의 결과이다.
+     * JPQL 은 UNION ALL 을 지원하지 않으므로, 조건들을 OR 로 묶어서 한 번에 가져오고
+     * 조건마다 case when (조건 i) then 1 else 0 end 컬럼을 함께 조회해서 행이 어느 조건에 해당하는지 나눈다.
+     * 여러 조건에 맞는 행은 한 번만 전송되고, 각 조건의 결과에 모두 들어간다.
+     *
+     * search(condition, limit) 처럼 조건마다 최대 limit + 1 건까지 담으므로, 호출한 쪽에서 limit 건으로 자른다. (limit + 1 건이면 잘린 것)
+     * 쿼리는 조건 수 x (limit + 1) 행까지만 읽는다. 이 상한에 닿지 않았으면 맞는 행을 모두 읽은 것이므로 조건마다 결과가 정확하다.
+     * 상한에 닿았으면 많이 맞는 조건이 상한을 다 써서 다른 조건의 행이 덜 읽혔을 수 있으므로,
+     * limit 건 이하로 모인 조건만 따로 limit + 1 건까지 다시 조회한다.
+     */
+    public List<List<MemberTeamDto>> searchBatch(List<MemberSearchCondition> conditions, int limit) {
+        List<List<MemberTeamDto>> results = new ArrayList<>();
+        if (conditions.isEmpty()) {
+            return results;
+        }
+
+        List<Expression<?>> select = new ArrayList<>(List.of(member.id, member.username, member.age, team.id, team.name));
+        List<Expression<Integer>> matches = new ArrayList<>(); // 조건 i 의 일치 여부 컬럼. 조건이 없으면(모든 행) null
+        BooleanBuilder any = new BooleanBuilder();
+        boolean all = false;
+        for (MemberSearchCondition condition : conditions) {
+            BooleanBuilder predicate = searchPredicate(condition);
+            if (!predicate.hasValue()) {
+                matches.add(null);
+                all = true; // 모든 행이 필요하므로 OR 조건을 걸 수 없다.
+                continue;
+            }
+            Expression<Integer> match = new CaseBuilder().when(predicate).then(1).otherwise(0);
+            matches.add(match);
+            select.add(match);
+            any.or(predicate);
+        }
+
+        long cap = conditions.size() * (limit + 1L);
+        List<Tuple> rows = queryFactory
+                .select(select.toArray(new Expression[0]))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(all ? null : any)
+                .limit(cap)
                 .fetch();
+
+        for (int i = 0; i < conditions.size(); i++) {
+            results.add(new ArrayList<>());
+        }
+        for (Tuple row : rows) {
+            MemberTeamDto dto = null;
+            for (int i = 0; i < matches.size(); i++) {
+                Expression<Integer> match = matches.get(i);
+                if ((match == null || Integer.valueOf(1).equals(row.get(match))) && results.get(i).size() <= limit) {
+                    if (dto == null) {
+                        Integer age = row.get(member.age);
+                        dto = new MemberTeamDto(row.get(member.id), row.get(member.username), age == null ? 0 : age,
+                                row.get(team.id), row.get(team.name));
+                    }
+                    results.get(i).add(dto);
+                }
+            }
+        }
+
+        if (rows.size() >= cap) {
+            for (int i = 0; i < conditions.size(); i++) {
+                if (results.get(i).size() <= limit) { // 상한 때문에 덜 읽혔을 수 있다.
+                    results.set(i, searchQuery(conditions.get(i)).limit(limit + 1L).fetch());
+                }
+            }
+        }
+        return results;
+    }
+
+    /* search() 와 같은 조건. 리액티브 검색(ReactiveMemberRepository)도 이 조건을 SQL 로 바꿔서 쓴다. */
+    public BooleanBuilder searchPredicate(MemberSearchCondition condition) {
+        BooleanBuilder predicate = new BooleanBuilder(); // 빈 BooleanBuilder 를 and 하면 hasValue() 가 true 가 되므로 값만 꺼내서 조립
+        predicate.and(usernameIndex.usernameMatch(condition.getUsername(), condition.getUsernameMatch()).getValue());
+        predicate.and(teamNameEq(condition.getTeamName()).getValue());
+        predicate.and(ageGoe(condition.getAgeGoe()).getValue());
+        predicate.and(ageLoe(condition.getAgeLoe()).getValue());
+        return predicate;
     }
 
     /*
@@ -2,13 +2,22 @@ package study.querydsl.repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.support.CountEstimate;
+import study.querydsl.repository.support.CountMode;
+import study.querydsl.repository.support.QueryPlan;
 
 import java.util.List;
 /* 1. 사용자 정의 인터페이스 작성 */
 public interface MemberRepositoryCustom {
     List<MemberTeamDto> search(MemberSearchCondition condition);
     Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable); // org.springframework.data.pageable
+    Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable, CountMode countMode);
+    Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable); // count 쿼리 없이 다음 페이지 여부만
+    CountEstimate estimateSearch(MemberSearchCondition condition); // 조회하기 전에 결과 건수 추정 (실행 계획, 테이블 통계, 표본)
+    CountEstimate estimateSearchBatch(List<MemberSearchCondition> conditions); // 조건들을 OR 로 묶은 검색의 결과 건수 추정
+    QueryPlan explainSearch(MemberSearchCondition condition); // search 쿼리의 H2 실행 계획 (조건 모양마다 캐시)
 
 }
@@ -1,18 +1,32 @@
 package study.querydsl.repository;
 
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.JPQLQuery;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.jpa.repository.support.QuerydslRepositorySupport;
 import org.springframework.data.support.PageableExecutionUtils;
+import study.querydsl.cache.SearchResultCache;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.dto.UsernameMatchType;
 import study.querydsl.entity.Member;
+import study.querydsl.repository.support.CountEstimate;
+import study.querydsl.repository.support.CountEstimator;
+import study.querydsl.repository.support.CountMode;
+import study.querydsl.repository.support.DirectProjections;
+import study.querydsl.repository.support.EstimatedPage;
+import study.querydsl.repository.support.QueryCostEstimator;
+import study.querydsl.repository.support.QueryPlan;
+import study.querydsl.search.UsernameTrigramIndex;
 
 import java.util.List;
 import java.util.function.Supplier;
@@ -25,14 +39,32 @@ import static study.querydsl.entity.QTeam.team;
  *  */
 public class MemberRepositoryImpl extends QuerydslRepositorySupport implements MemberRepositoryCustom {
 
+    /* QMemberTeamDto 와 같은 프로젝션. 행마다 리플렉션 대신 생성자를 직접 호출한다. */
+    private static final FactoryExpression<MemberTeamDto> MEMBER_TEAM_DTO =
+            DirectProjections.constructor(MemberTeamDto.class, member.id, member.username, member.age, team.id, team.name);
+
     private final JPAQueryFactory queryFactory;
-    public MemberRepositoryImpl(JPAQueryFactory queryFactory) {
+    private final UsernameTrigramIndex usernameIndex;
+    private final CountEstimator countEstimator;
+    private final SearchResultCache searchResultCache;
+    private final QueryCostEstimator queryCostEstimator;
+    public MemberRepositoryImpl(JPAQueryFactory queryFactory, UsernameTrigramIndex usernameIndex, CountEstimator countEstimator,
+                                SearchResultCache searchResultCache, QueryCostEstimator queryCostEstimator) {
         super(Member.class);  /* doaminClass를 인자로 받는 부모, QuerydslRepositorySupport 생성자를 호출하여 부모의 여러 기능을 사용할 수 있음.*/
         this.queryFactory = queryFactory;
+        this.usernameIndex = usernameIndex;
+        this.countEstimator = countEstimator;
+        this.searchResultCache = searchResultCache;
+        this.queryCostEstimator = queryCostEstimator;
     }
 
     @Override
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        // 같은 조건의 검색 결과는 Member, Team 변경이 커밋되기 전까지 캐시해 둔 결과를 쓴다.
+        return searchResultCache.list("search", condition, () -> fetchSearch(condition));
+    }
+
+    private List<MemberTeamDto> fetchSearch(MemberSearchCondition condition) {
         // queryFactory는 querydsl 4 버전에서 나온 개념
         return queryFactory
                 .select(new QMemberTeamDto(
@@ -43,7 +75,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                         team.name))
                 .from(member)
                 .leftJoin(member.team, team)  // join(조인 대상, 대상의 Q타입)
-                .where(usernameEq(condition.getUsername()),
+                .where(usernameMatch(condition.getUsername(), condition.getUsernameMatch()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -59,6 +91,10 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
      */
     @Override
     public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) { // 스프링 데이터 jpa의 pageable 상속
+        return searchResultCache.page("searchPage", condition, pageable, () -> fetchPage(condition, pageable));
+    }
+
+    private Page<MemberTeamDto> fetchPage(MemberSearchCondition condition, Pageable pageable) {
 
         List<MemberTeamDto> content = queryFactory  // ctrl + alt + M으로 추출 가능
                 .select(new QMemberTeamDto(
@@ -69,7 +105,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                         team.name))
                 .from(member)
                 .leftJoin(member.team, team)  // join(조인 대상, 대상의 Q타입)
-                .where(usernameEq(condition.getUsername()),
+                .where(usernameMatch(condition.getUsername(), condition.getUsernameMatch()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -83,7 +119,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                 .select(member.count())
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
+                .where(usernameMatch(condition.getUsername(), condition.getUsernameMatch()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -97,6 +133,74 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
         return PageableExecutionUtils.getPage(content, pageable, countQuery::fetchOne);
     }
 
+    /**
+     * 전체 건수를 구하는 방식을 고를 수 있는 페이징
+     * 결과가 아주 많을 때는 정확한 count 쿼리가 content 쿼리보다 훨씬 비싸므로, 추정값(APPROX)이나 다음 페이지 여부(NONE)만 내려준다.
+     * content 만으로 전체 건수를 알 수 있는 경우(첫 페이지가 덜 찼거나 마지막 페이지)는 어느 방식이든 정확한 값을 쓴다.
+     */
+    @Override
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable, CountMode countMode) {
+        return searchResultCache.page("searchPage:" + countMode, condition, pageable, () -> fetchPage(condition, pageable, countMode));
+    }
+
+    private Page<MemberTeamDto> fetchPage(MemberSearchCondition condition, Pageable pageable, CountMode countMode) {
+        if (pageable.isUnpaged()) {
+            List<MemberTeamDto> content = searchContent(condition).fetch();
+            return new EstimatedPage<>(content, pageable, CountEstimate.exact(content.size()));
+        }
+
+        int pageSize = pageable.getPageSize();
+        long offset = pageable.getOffset();
+        List<MemberTeamDto> content = searchContent(condition)
+                .offset(offset)
+                .limit(countMode == CountMode.NONE ? pageSize + 1 : pageSize) // NONE 은 한 건 더 가져와서 다음 페이지가 있는지 본다.
+                .fetch();
+
+        if (countMode == CountMode.NONE && content.size() > pageSize) {
+            content = content.subList(0, pageSize);
+            return new EstimatedPage<>(content, pageable,
+                    new CountEstimate(offset + pageSize + 1, 0, CountEstimate.Source.LOWER_BOUND));
+        }
+        if ((offset == 0 || !content.isEmpty()) && content.size() < pageSize) {
+            return new EstimatedPage<>(content, pageable, CountEstimate.exact(offset + content.size()));
+        }
+        if (countMode == CountMode.NONE) {
+            if (!content.isEmpty()) { // 한 건 더 가져왔는데 없었으므로 이 페이지가 마지막이다.
+                return new EstimatedPage<>(content, pageable, CountEstimate.exact(offset + content.size()));
+            }
+            // 마지막 페이지를 지나친 빈 페이지. 전체 건수가 offset 보다 작다는 것만 알고 세지는 않았다.
+            return new EstimatedPage<>(content, pageable, new CountEstimate(0, 0, CountEstimate.Source.LOWER_BOUND));
+        }
+
+        // 인덱스로 몇 건만 찾는 조건이면 정확한 count 도 같은 인덱스로 싸게 끝나므로 표본 추정 대신 센다.
+        CountEstimate estimate = countMode == CountMode.EXACT || explainSearch(condition).isLookup()
+                ? CountEstimate.exact(searchCount(condition, null))
+                : countEstimator.estimate(member, member.id, isFiltered(condition), window -> searchCount(condition, window));
+        return new EstimatedPage<>(content, pageable, estimate);
+    }
+
+    /**
+     * count 쿼리 없이 Slice 로 페이징 (무한 스크롤 등 전체 건수가 필요 없는 화면)
+     * limit 을 페이지 크기 + 1 로 걸어서, 한 건이 더 조회되면 다음 페이지가 있다고 본다.
+     */
+    @Override
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(searchContent(condition).fetch(), pageable, false);
+        }
+
+        List<MemberTeamDto> content = searchContent(condition)
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize() + 1)
+                .fetch();
+
+        boolean hasNext = content.size() > pageable.getPageSize();
+        if (hasNext) {
+            content = content.subList(0, pageable.getPageSize());
+        }
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
     /**
      * QuerydslRepositorySupport를 활용한 querydsl 작성.
      * 장점 : 1. 페이징을 조금 편리하게 할 수 있다. 2. EntityManager를 제공한다.
@@ -109,7 +213,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 //      querydsl 3 버전은 from부터 시작했는데, QuerydslRepositorySupport는 그 때 만들어져서 from부터 시작함.
         return from(member)
                 .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
+                .where(usernameMatch(condition.getUsername(), condition.getUsernameMatch()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -132,7 +236,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 
         JPQLQuery<MemberTeamDto> jpqlQuery = from(member)
                 .leftJoin(member.team, team)  // join(조인 대상, 대상의 Q타입)
-                .where(usernameEq(condition.getUsername()),
+                .where(usernameMatch(condition.getUsername(), condition.getUsernameMatch()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -152,7 +256,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
         //카운트를 구하는 쿼리. fetch() 없이 쿼리만 작성해서 PageableExecutionUtils로 넘긴다.
         JPQLQuery<Long> countQuery = from(member)
                 .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
+                .where(usernameMatch(condition.getUsername(), condition.getUsernameMatch()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe()))
@@ -162,8 +266,97 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
     }
 
 
-    private BooleanBuilder usernameEq(String username) {
-        return nullSafeBuilder(() -> member.username.eq(username));
+    /*
+     * 인덱스로 몇 건만 찾는 조건은 실행 계획의 예상 행 수를 그대로 쓴다. (추가 쿼리 없음, 조건 모양마다 캐시)
+     * 그 밖에는 조건 없는 검색은 테이블 통계만, 조건이 있으면 표본 count 로 추정한다. (테이블이 표본 크기보다 작으면 정확히 센다.)
+     */
+    @Override
+    public CountEstimate estimateSearch(MemberSearchCondition condition) {
+        QueryPlan plan = explainSearch(condition);
+        if (plan.isLookup()) {
+            return new CountEstimate(plan.getEstimatedRows(), 0, CountEstimate.Source.QUERY_PLAN);
+        }
+        return countEstimator.estimate(member, member.id, isFiltered(condition), window -> searchCount(condition, window));
+    }
+
+    /*
+     * 여러 조건을 OR 로 묶은 검색(MemberJpaRepository.searchBatch)의 결과 건수를 한 번에 추정한다.
+     * 조건마다 추정하면 조건 수만큼 EXPLAIN, 표본 쿼리가 나가므로 한 쿼리로 묶은 의미가 없다.
+     */
+    @Override
+    public CountEstimate estimateSearchBatch(List<MemberSearchCondition> conditions) {
+        BooleanBuilder any = new BooleanBuilder();
+        for (MemberSearchCondition condition : conditions) {
+            BooleanBuilder predicate = searchPredicate(condition);
+            if (!predicate.hasValue()) { // 조건 없는 검색이 하나라도 있으면 테이블 전체
+                any = new BooleanBuilder();
+                break;
+            }
+            any.or(predicate);
+        }
+        Predicate where = any.getValue();
+        QueryPlan plan = queryCostEstimator.explain(queryFactory
+                .select(MEMBER_TEAM_DTO)
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(where));
+        if (plan.isLookup()) {
+            return new CountEstimate(plan.getEstimatedRows(), 0, CountEstimate.Source.QUERY_PLAN);
+        }
+        return countEstimator.estimate(member, member.id, where != null, window -> searchCount(where, window));
+    }
+
+    /* 검색 쿼리의 실행 계획 (인덱스 사용 여부, 예상 행 수). 쿼리를 실행하지는 않는다. */
+    @Override
+    public QueryPlan explainSearch(MemberSearchCondition condition) {
+        return queryCostEstimator.explain(searchContent(condition));
+    }
+
+    private JPAQuery<MemberTeamDto> searchContent(MemberSearchCondition condition) {
+        return queryFactory
+                .select(MEMBER_TEAM_DTO)
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(usernameMatch(condition.getUsername(), condition.getUsernameMatch()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                );
+    }
+
+    /* window 는 CountEstimator 가 표본으로 고른 id 구간 조건. null 이면 전체를 센다. */
+    private long searchCount(MemberSearchCondition condition, Predicate window) {
+        return searchCount(searchPredicate(condition).getValue(), window);
+    }
+
+    private long searchCount(Predicate where, Predicate window) {
+        Long count = queryFactory
+                .select(member.count())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(where, window)
+                .fetchOne();
+        return count == null ? 0 : count;
+    }
+
+    /* searchContent 의 where 조건 (빈 BooleanBuilder 를 and 하면 hasValue() 가 true 가 되므로 값만 꺼내서 조립) */
+    private BooleanBuilder searchPredicate(MemberSearchCondition condition) {
+        BooleanBuilder predicate = new BooleanBuilder();
+        predicate.and(usernameMatch(condition.getUsername(), condition.getUsernameMatch()).getValue());
+        predicate.and(teamNameEq(condition.getTeamName()).getValue());
+        predicate.and(ageGoe(condition.getAgeGoe()).getValue());
+        predicate.and(ageLoe(condition.getAgeLoe()).getValue());
+        return predicate;
+    }
+
+    private boolean isFiltered(MemberSearchCondition condition) {
+        return condition.getUsername() != null || condition.getTeamName() != null
+                || condition.getAgeGoe() != null || condition.getAgeLoe() != null;
+    }
+
+    /* username 검색 방식(EQ, PREFIX, CONTAINS)에 맞는 조건. PREFIX, CONTAINS 는 trigram 인덱스로 찾은 id 조건으로 바뀐다. */
+    private BooleanBuilder usernameMatch(String username, UsernameMatchType matchType) {
+        return usernameIndex.usernameMatch(username, matchType);
     }
 
     private BooleanBuilder teamNameEq(String teamName) {
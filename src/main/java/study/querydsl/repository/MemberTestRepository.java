@@ -6,11 +6,14 @@ import com.querydsl.jpa.JPQLQuery;
 import com.querydsl.jpa.impl.JPAQuery;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.entity.Member;
 import study.querydsl.repository.support.Querydsl4RepositorySupport;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.function.Supplier;
 
@@ -20,6 +23,7 @@ import static study.querydsl.entity.QTeam.team;
 /**
  * Querydsl 지원 클래스를 직접 만들어 커스텀하여 쓰는 방식
  */
+@Repository
 public class MemberTestRepository extends Querydsl4RepositorySupport {
 
     public MemberTestRepository() {
@@ -37,6 +41,17 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
                 .fetch();
     }
 
+    /* cached() 로 시작한 쿼리는 결과를 캐시한다. Member, Team 변경이 커밋되면 지워진다. */
+    public List<String> usernamesOfTeam(String teamName) {
+        return cached(Duration.ofSeconds(30))
+                .select(member.username)
+                .from(member)
+                .join(member.team, team)
+                .where(team.name.eq(teamName))
+                .orderBy(member.username.asc())
+                .fetch();
+    }
+
     /* applyPage를 활용한 코드*/
     public Page<Member> searchPageByApplyPage(MemberSearchCondition condition, Pageable pageable) {
         JPAQuery<Member> query = selectFrom(member)
@@ -79,6 +94,21 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
         );
     }
 
+    /**
+     * count 쿼리 없이 Slice 로 페이징하는 방식
+     */
+    public Slice<Member> applySlicing(MemberSearchCondition condition, Pageable pageable) {
+        return applySlicing(pageable, contentQuery ->
+                contentQuery.selectFrom(member)
+                        .leftJoin(member.team, team)
+                        .where(usernameEq(condition.getUsername()),
+                                teamNameEq(condition.getTeamName()),
+                                ageGoe(condition.getAgeGoe()),
+                                ageLoe(condition.getAgeLoe())
+                        )
+        );
+    }
+
     /**
      * content 쿼리와 count 쿼리 각각 따로 날려보내는 방식
      */
@@ -0,0 +1,164 @@
+package study.querydsl.repository;
+
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.support.SqlPredicateRenderer;
+import study.querydsl.repository.support.SqlPredicateRenderer.Sql;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * R2DBC 로 회원을 검색한다. (스레드를 붙잡지 않는 검색 경로)
+ *
+ * 검색 조건은 MemberJpaRepository.searchPredicate() 가 만든 querydsl 조건을 SqlPredicateRenderer 로 SQL 로 바꿔서 쓴다.
+ * 그래서 username PREFIX, CONTAINS 의 trigram 인덱스 사용을 포함해 MemberRepositoryCustom.search(), searchPage() 와 같은 행을 돌려준다.
+ * JPA 를 거치지 않으므로 결과 캐시(SearchResultCache)와 영속성 컨텍스트는 쓰지 않고, 커밋된 데이터만 보인다.
+ *
+ * ConnectionFactory 는 빈으로 등록하지 않는다. (ConnectionFactory 빈이 있으면 스프링 부트가 JDBC DataSource 자동 설정을 끈다.)
+ * 동시에 실행되는 쿼리 수는 커넥션 풀 크기(querydsl.r2dbc.pool-size)로 제한되고, 나머지 요청은 스레드 없이 커넥션을 기다린다.
+ */
+@Repository
+public class ReactiveMemberRepository {
+
+    private static final SqlPredicateRenderer RENDERER = new SqlPredicateRenderer(Map.of(
+            member.id, "m.member_id",
+            member.username, "m.username",
+            member.age, "m.age",
+            team.id, "t.id",
+            team.name, "t.name"));
+
+    private static final String FROM = " from member m left outer join team t on m.team_id = t.id";
+    private static final String SELECT = "select m.member_id, m.username, m.age, t.id as team_id, t.name as team_name" + FROM;
+    private static final String COUNT = "select count(m.member_id)" + FROM;
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final ConnectionPool connectionPool;
+    private final DatabaseClient client;
+
+    @Autowired
+    public ReactiveMemberRepository(MemberJpaRepository memberJpaRepository,
+                                    @Value("${spring.datasource.url}") String url,
+                                    @Value("${spring.datasource.username:}") String username,
+                                    @Value("${spring.datasource.password:}") String password,
+                                    @Value("${querydsl.r2dbc.pool-size:10}") int poolSize,
+                                    @Value("${querydsl.r2dbc.max-acquire-time:PT5S}") Duration maxAcquireTime) {
+        this(memberJpaRepository, connectionPool(url, username, password, poolSize, maxAcquireTime));
+    }
+
+    ReactiveMemberRepository(MemberJpaRepository memberJpaRepository, ConnectionPool connectionPool) {
+        this.memberJpaRepository = memberJpaRepository;
+        this.connectionPool = connectionPool;
+        this.client = DatabaseClient.create(connectionPool);
+    }
+
+    /**
+     * search() 와 같은 조건. 결과를 모으지 않고 행 단위로 흘려보낸다.
+     * 구독자가 요청한 만큼만 행을 넘기고, 구독을 취소하면 쿼리 결과 읽기도 멈춘다.
+     */
+    public Flux<MemberTeamDto> search(MemberSearchCondition condition) {
+        Sql where = where(condition);
+        return query(SELECT + where.where(), where.getParams()).map(this::toDto).all();
+    }
+
+    /* 최대 limit 건까지 (sql limit) */
+    public Flux<MemberTeamDto> search(MemberSearchCondition condition, int limit) {
+        Sql where = where(condition);
+        return query(SELECT + where.where() + " limit :limit", where.getParams())
+                .bind("limit", limit)
+                .map(this::toDto)
+                .all();
+    }
+
+    /**
+     * searchPage(condition, pageable) 와 같은 결과.
+     * PageableExecutionUtils 처럼 content 만으로 전체 건수를 알 수 있으면(첫 페이지가 덜 찼거나 마지막 페이지) count 쿼리를 생략한다.
+     */
+    public Mono<Page<MemberTeamDto>> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        Sql where = where(condition);
+        Mono<List<MemberTeamDto>> content = query(SELECT + where.where() + " limit :limit offset :offset", where.getParams())
+                .bind("limit", pageable.getPageSize())
+                .bind("offset", pageable.getOffset())
+                .map(this::toDto)
+                .all()
+                .collectList();
+
+        return content.flatMap(rows -> {
+            if (pageable.getOffset() == 0 && rows.size() < pageable.getPageSize()) {
+                return Mono.just(new PageImpl<>(rows, pageable, rows.size()));
+            }
+            if (!rows.isEmpty() && rows.size() < pageable.getPageSize()) {
+                return Mono.just(new PageImpl<>(rows, pageable, pageable.getOffset() + rows.size()));
+            }
+            return query(COUNT + where.where(), where.getParams())
+                    .map(row -> row.get(0, Long.class))
+                    .one()
+                    .map(total -> new PageImpl<>(rows, pageable, total));
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connectionPool.dispose();
+    }
+
+    /* 조건에 trigram 인덱스 조회가 들어있으므로 구독할 때가 아니라 호출할 때 한 번만 만든다. (인메모리 조회라 블로킹하지 않는다.) */
+    private Sql where(MemberSearchCondition condition) {
+        return RENDERER.render(memberJpaRepository.searchPredicate(condition));
+    }
+
+    private DatabaseClient.GenericExecuteSpec query(String sql, Map<String, Object> params) {
+        DatabaseClient.GenericExecuteSpec spec = client.sql(sql);
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            spec = spec.bind(param.getKey(), param.getValue()); // 컬렉션 값은 in (:p0) 에서 값 개수만큼 펼쳐진다.
+        }
+        return spec;
+    }
+
+    private MemberTeamDto toDto(Row row) {
+        Integer age = row.get("age", Integer.class);
+        return new MemberTeamDto(
+                row.get("member_id", Long.class),
+                row.get("username", String.class),
+                age == null ? 0 : age,
+                row.get("team_id", Long.class),
+                row.get("team_name", String.class));
+    }
+
+    /* spring.datasource.url 과 같은 H2 데이터베이스에 R2DBC 로 연결한다. (jdbc:h2:tcp://... -> tcp://...) */
+    static ConnectionPool connectionPool(String url, String username, String password, int poolSize, Duration maxAcquireTime) {
+        if (!url.startsWith("jdbc:h2:")) {
+            throw new IllegalArgumentException("only H2 urls are supported for R2DBC: " + url);
+        }
+        H2ConnectionFactory connectionFactory = new H2ConnectionFactory(H2ConnectionConfiguration.builder()
+                .url(url.substring("jdbc:h2:".length()))
+                .username(username)
+                .password(password)
+                .build());
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(0)
+                .maxSize(poolSize)
+                .maxAcquireTime(maxAcquireTime)
+                .name("querydsl-r2dbc")
+                .build());
+    }
+}
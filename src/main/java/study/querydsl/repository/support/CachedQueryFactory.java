@@ -0,0 +1,28 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Expression;
+import com.querydsl.jpa.impl.JPAQuery;
+
+import java.util.function.Supplier;
+
+/**
+ * Querydsl4RepositorySupport.cached(Duration) 가 반환하는 select, selectFrom 시작점
+ * 여기서 시작한 쿼리의 fetch(), fetchOne() 결과는 캐시된다.
+ */
+public class CachedQueryFactory {
+
+    private final Supplier<JPAQuery<?>> queries;
+
+    CachedQueryFactory(Supplier<JPAQuery<?>> queries) {
+        this.queries = queries;
+    }
+
+    public <T> JPAQuery<T> select(Expression<T> expr) {
+        return queries.get().select(expr);
+    }
+
+    public <T> JPAQuery<T> selectFrom(EntityPath<T> from) {
+        return select(from).from(from);
+    }
+}
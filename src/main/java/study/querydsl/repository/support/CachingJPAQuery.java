@@ -0,0 +1,148 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.NonUniqueResultException;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.CollectionExpression;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.core.types.TemplateExpression;
+import com.querydsl.core.types.Visitor;
+import com.querydsl.jpa.impl.JPAQuery;
+import study.querydsl.cache.QueryResultCache;
+
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * fetch(), fetchOne() 결과를 QueryResultCache 에 캐시하는 JPAQuery
+ *
+ * 키는 QueryMetadata(프로젝션, 조인, 조건, 정렬, offset/limit, 상수와 파라미터 값)로 만들고, (QueryKeys.ofResult)
+ * 쿼리 어디에든(조인, 조건, 프로젝션, 정렬, 서브쿼리) 나오는 엔티티 타입의 변경이 커밋되면 캐시가 지워진다.
+ * where(member.team.name.eq(..)) 처럼 경로로 따라간 연관 엔티티(암묵적 조인)도 포함한다.
+ * 엔티티를 조회하면 여러 요청이 같은 (준영속) 엔티티 인스턴스를 받게 되므로, 캐시한 결과는 읽기 전용으로만 써야 한다.
+ */
+public class CachingJPAQuery<T> extends JPAQuery<T> {
+
+    private final QueryResultCache cache;
+    private final String region;
+    private final Duration ttl;
+
+    public CachingJPAQuery(EntityManager em, QueryResultCache cache, String region, Duration ttl) {
+        super(em);
+        this.cache = cache;
+        this.region = region;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public List<T> fetch() {
+        return cache.get(region, List.of("fetch", cacheKey()), entityTypes(getMetadata()), ttl,
+                () -> Collections.unmodifiableList(super.fetch()));
+    }
+
+    @Override
+    public T fetchOne() throws NonUniqueResultException {
+        return cache.get(region, List.of("fetchOne", cacheKey()), entityTypes(getMetadata()), ttl, super::fetchOne);
+    }
+
+    QueryKeys.Key cacheKey() {
+        return QueryKeys.ofResult(getMetadata());
+    }
+
+    /* 쿼리가 읽는 엔티티 타입. 조인 대상, 경로를 따라간 연관 엔티티(member.team.name 이면 Member, Team), 서브쿼리의 엔티티 */
+    static Set<Class<?>> entityTypes(QueryMetadata metadata) {
+        Set<Class<?>> types = new HashSet<>();
+        EntityTypeCollector.collect(metadata, types);
+        return Set.copyOf(types);
+    }
+
+    private static class EntityTypeCollector implements Visitor<Void, Set<Class<?>>> {
+
+        static final EntityTypeCollector INSTANCE = new EntityTypeCollector();
+
+        static void collect(QueryMetadata metadata, Set<Class<?>> types) {
+            for (JoinExpression join : metadata.getJoins()) {
+                collect(join.getTarget(), types);
+                collect(join.getCondition(), types);
+            }
+            collect(metadata.getProjection(), types);
+            collect(metadata.getWhere(), types);
+            collect(metadata.getHaving(), types);
+            metadata.getGroupBy().forEach(e -> collect(e, types));
+            metadata.getOrderBy().forEach(order -> collect(order.getTarget(), types));
+        }
+
+        static void collect(Expression<?> expression, Set<Class<?>> types) {
+            if (expression != null) {
+                expression.accept(INSTANCE, types);
+            }
+        }
+
+        @Override
+        public Void visit(Constant<?> expr, Set<Class<?>> types) {
+            return null;
+        }
+
+        @Override
+        public Void visit(FactoryExpression<?> expr, Set<Class<?>> types) {
+            expr.getArgs().forEach(arg -> arg.accept(this, types));
+            return null;
+        }
+
+        @Override
+        public Void visit(Operation<?> expr, Set<Class<?>> types) {
+            expr.getArgs().forEach(arg -> arg.accept(this, types));
+            return null;
+        }
+
+        @Override
+        public Void visit(ParamExpression<?> expr, Set<Class<?>> types) {
+            return null;
+        }
+
+        /* member.team.name 이면 name, member.team, member 를 거슬러 올라가며 엔티티 타입을 모은다. (컬렉션은 원소 타입) */
+        @Override
+        public Void visit(Path<?> expr, Set<Class<?>> types) {
+            for (Path<?> path = expr; path != null; path = path.getMetadata().getParent()) {
+                addIfEntity(path.getType(), types);
+                if (path instanceof CollectionExpression) {
+                    addIfEntity(((CollectionExpression<?, ?>) path).getParameter(0), types);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(SubQueryExpression<?> expr, Set<Class<?>> types) {
+            collect(expr.getMetadata(), types);
+            return null;
+        }
+
+        @Override
+        public Void visit(TemplateExpression<?> expr, Set<Class<?>> types) {
+            expr.getArgs().forEach(arg -> {
+                if (arg instanceof Expression) {
+                    ((Expression<?>) arg).accept(this, types);
+                }
+            });
+            return null;
+        }
+
+        private static void addIfEntity(Class<?> type, Set<Class<?>> types) {
+            if (type != null && type.isAnnotationPresent(Entity.class)) {
+                types.add(type);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package study.querydsl.repository.support;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * id 목록으로 여러 건을 조회한다. (where id in (...))
+ *
+ * 1. 중복 id 를 빼고 chunkSize 개씩 나눈다.
+ * 2. 각 IN 목록을 2의 거듭제곱 크기로 맞춘다. (마지막 id 를 반복) IN 파라미터 개수가 1, 2, 4, 8 ... 만 나오므로
+ *    하이버네이트 쿼리 플랜 캐시에 쌓이는 쿼리 종류가 log2(chunkSize) 개로 제한된다.
+ * 3. load 는 나눈 조회를 호출한 스레드에서 순서대로 실행한다. loadInParallel 은 나눈 조회가 여러 개면 병렬로 실행한다.
+ * 4. 결과를 호출한 쪽의 id 순서대로 다시 정렬한다. 없는 id 는 빠지고, 중복 id 는 같은 결과가 반복된다.
+ *
+ * 병렬 조회는 풀 스레드마다 따로 연 읽기 전용 트랜잭션(영속성 컨텍스트)에서 실행되므로, 엔티티를 조회하면 준영속 엔티티가 돌아오고
+ * 지연 로딩(member.team 등)에서 LazyInitializationException 이 난다. 그래서 loadInParallel 은 DTO 처럼 영속성 컨텍스트가 필요 없는 결과에만 쓴다.
+ */
+@Component
+public class ChunkedIdLoader {
+
+    private final TransactionOperations readOnly;
+    private final ExecutorService executor;
+    private final int chunkSize;
+
+    @Autowired
+    public ChunkedIdLoader(PlatformTransactionManager transactionManager,
+                           @Value("${querydsl.multi-get.chunk-size:512}") int chunkSize,
+                           @Value("${querydsl.multi-get.parallelism:4}") int parallelism) {
+        this(readOnly(transactionManager), chunkSize, parallelism);
+    }
+
+    ChunkedIdLoader(TransactionOperations readOnly, int chunkSize, int parallelism) {
+        if (Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("chunk-size must be a power of two: " + chunkSize);
+        }
+        this.readOnly = readOnly;
+        this.chunkSize = chunkSize;
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "multi-get-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 호출한 스레드(와 그 영속성 컨텍스트)에서 순서대로 조회한다. 엔티티 조회는 이것을 쓴다.
+     *
+     * @param chunkQuery id 목록(IN 절)으로 조회하는 쿼리
+     * @param idOf       조회 결과의 id
+     */
+    public <T> List<T> load(List<Long> ids, Function<List<Long>, List<T>> chunkQuery, Function<T, Long> idOf) {
+        Map<Long, T> found = new HashMap<>();
+        for (List<Long> chunk : chunks(ids, chunkSize)) {
+            chunkQuery.apply(chunk).forEach(row -> found.put(idOf.apply(row), row));
+        }
+        return inCallerOrder(ids, found);
+    }
+
+    /**
+     * 나눈 조회가 여러 개면 병렬로 조회한다. 결과가 영속성 컨텍스트 밖에서 쓰여도 되는 조회(DTO 프로젝션)에만 쓴다.
+     * 호출한 쪽이 트랜잭션 안이면 그 영속성 컨텍스트(와 커밋 전 변경)를 봐야 하므로 load 처럼 순서대로 조회한다.
+     * 조회 중 난 예외는 CompletionException 으로 감싸지 않고 그대로 던진다. (DataAccessException 변환이 그대로 적용되도록)
+     */
+    public <T> List<T> loadInParallel(List<Long> ids, Function<List<Long>, List<T>> chunkQuery, Function<T, Long> idOf) {
+        List<List<Long>> chunks = chunks(ids, chunkSize);
+        if (chunks.size() <= 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return load(ids, chunkQuery, idOf);
+        }
+
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>();
+        for (List<Long> chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> readOnly.execute(status -> chunkQuery.apply(chunk)), executor));
+        }
+        Map<Long, T> found = new HashMap<>();
+        for (CompletableFuture<List<T>> future : futures) {
+            List<T> rows;
+            try {
+                rows = future.join();
+            } catch (CompletionException e) {
+                futures.forEach(f -> f.cancel(false));
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+            rows.forEach(row -> found.put(idOf.apply(row), row));
+        }
+        return inCallerOrder(ids, found);
+    }
+
+    private static <T> List<T> inCallerOrder(List<Long> ids, Map<Long, T> found) {
+        List<T> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            T row = found.get(id);
+            if (row != null) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /* 중복을 뺀 id 를 chunkSize 개씩 나누고, 각 목록을 2의 거듭제곱 크기로 채운다. */
+    static List<List<Long>> chunks(List<Long> ids, int chunkSize) {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        distinct.remove(null);
+
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += chunkSize) {
+            chunks.add(padded(distinct.subList(from, Math.min(from + chunkSize, distinct.size()))));
+        }
+        return chunks;
+    }
+
+    /**
+     * 마지막 id 를 반복해서 목록을 2의 거듭제곱 크기로 채운다. id in (...) 의 파라미터 개수 종류를 줄여 쿼리 플랜 캐시를 아낀다.
+     */
+    public static List<Long> padded(List<Long> ids) {
+        List<Long> padded = new ArrayList<>(ids);
+        if (ids.isEmpty()) {
+            return padded;
+        }
+        int size = Integer.highestOneBit(ids.size()) == ids.size() ? ids.size() : Integer.highestOneBit(ids.size()) << 1;
+        Long last = ids.get(ids.size() - 1);
+        while (padded.size() < size) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    private static TransactionOperations readOnly(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+}
@@ -0,0 +1,31 @@
+package study.querydsl.repository.support;
+
+import lombok.Value;
+
+/**
+ * 전체 건수와 그 오차 범위
+ * 실제 건수는 95% 확률로 [count - errorBound, count + errorBound] 안에 있다. source 가 LOWER_BOUND 이면 count 는 최소 건수이다.
+ */
+@Value
+public class CountEstimate {
+
+    public enum Source {
+        EXACT,             // count 쿼리 또는 content 크기로 정확히 구함
+        TABLE_STATISTICS,  // 조건이 없어서 테이블 통계의 행 수를 사용
+        SAMPLE,            // id 범위 표본에서 구한 선택도 x 테이블 행 수
+        QUERY_PLAN,        // 실행 계획(인덱스 조회)의 예상 행 수. 컬럼 선택도 통계로 계산하므로 오차 범위는 알 수 없다.
+        LOWER_BOUND        // 세지 않음 (CountMode.NONE)
+    }
+
+    long count;
+    long errorBound;
+    Source source;
+
+    public static CountEstimate exact(long count) {
+        return new CountEstimate(count, 0, Source.EXACT);
+    }
+
+    public boolean isExact() {
+        return source == Source.EXACT;
+    }
+}
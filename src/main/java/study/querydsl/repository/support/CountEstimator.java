@@ -0,0 +1,126 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import static com.querydsl.core.types.dsl.Expressions.ONE;
+
+/**
+ * 전체 건수 추정기
+ *
+ * 조건이 없으면 H2 가 관리하는 테이블 행 수(INFORMATION_SCHEMA.TABLES.ROW_COUNT_ESTIMATE)를 그대로 쓰고,
+ * 조건이 있으면 임의의 id 구간 몇 개를 표본으로 골라 조건에 맞는 비율(선택도)을 구한 뒤 테이블 행 수를 곱한다.
+ * id 구간 count 는 pk 인덱스 범위만 읽으므로, 조건이 넓어서 count 쿼리가 테이블 대부분을 읽어야 할 때 훨씬 싸다.
+ * 단, id 와 상관관계가 큰 조건(가입 순서대로 붙은 회원명 등)은 표본이 치우칠 수 있다.
+ */
+@Slf4j
+@Component
+public class CountEstimator {
+
+    private static final double Z_95 = 1.96;
+
+    private final JPAQueryFactory queryFactory;
+    private final EntityManager em;
+    private final int sampleSize;
+    private final int windows;
+
+    public CountEstimator(JPAQueryFactory queryFactory, EntityManager em,
+                          @Value("${querydsl.count.sample-size:10000}") int sampleSize,
+                          @Value("${querydsl.count.sample-windows:4}") int windows) {
+        this.queryFactory = queryFactory;
+        this.em = em;
+        this.sampleSize = sampleSize;
+        this.windows = windows;
+    }
+
+    /**
+     * @param root        count 대상 엔티티 (member)
+     * @param id          root 의 id 경로 (member.id)
+     * @param filtered    검색 조건이 하나라도 있는지
+     * @param countWithin 추가 조건(id 구간, null 이면 조건 없음)을 붙여서 실제 count 쿼리를 실행하는 함수
+     */
+    public CountEstimate estimate(EntityPath<?> root, NumberPath<Long> id, boolean filtered,
+                                  Function<Predicate, Long> countWithin) {
+        long total = tableRows(root);
+        if (!filtered) {
+            return new CountEstimate(total, 0, CountEstimate.Source.TABLE_STATISTICS);
+        }
+        if (total <= sampleSize) {
+            return CountEstimate.exact(countWithin.apply(null)); // 표본이 테이블 전체보다 크면 그냥 센다.
+        }
+
+        Tuple range = queryFactory.select(id.min(), id.max()).from(root).fetchOne();
+        Long min = range == null ? null : range.get(id.min());
+        Long max = range == null ? null : range.get(id.max());
+        if (min == null || max == null) {
+            return CountEstimate.exact(0);
+        }
+
+        long span = max - min + 1;
+        long windowSpan = Math.max(1, Math.min(span, span * (sampleSize / windows) / total));
+        long sampled = 0;
+        long matched = 0;
+        for (int i = 0; i < windows; i++) {
+            long lo = min + ThreadLocalRandom.current().nextLong(Math.max(1, span - windowSpan + 1));
+            Predicate window = id.between(lo, lo + windowSpan - 1);
+
+            Long rows = queryFactory.select(ONE.count()).from(root).where(window).fetchOne();
+            sampled += rows == null ? 0 : rows;
+            matched += countWithin.apply(window);
+        }
+        if (sampled == 0) {
+            return CountEstimate.exact(countWithin.apply(null)); // id 가 듬성듬성해서 표본이 비었다.
+        }
+
+        double selectivity = (double) matched / sampled;
+        double standardError = matched == 0
+                ? 3.0 / sampled / Z_95  // 하나도 맞지 않으면 rule of three (95% 상한 3/n)
+                : Math.sqrt(selectivity * (1 - selectivity) / sampled);
+        long estimate = Math.round(total * selectivity);
+        long errorBound = (long) Math.ceil(Z_95 * standardError * total);
+        return new CountEstimate(estimate, errorBound, CountEstimate.Source.SAMPLE);
+    }
+
+    /*
+     * 테이블 통계의 행 수. 통계를 읽을 수 없으면 count(*) 로 대신한다. (H2 는 조건 없는 count(*) 를 빠르게 처리한다.)
+     * 테이블 이름은 엔티티 이름이 아니라 하이버네이트 매핑(@Table, 네이밍 전략)에서 가져오고, 스키마가 없으면 현재 스키마에서 찾는다.
+     */
+    private long tableRows(EntityPath<?> root) {
+        String table = tableName(root.getType());
+        int dot = table.lastIndexOf('.');
+        String schema = dot < 0 ? null : table.substring(0, dot);
+        String name = table.substring(dot + 1);
+        try {
+            Object rows = em.createNativeQuery("select row_count_estimate from information_schema.tables"
+                            + " where table_schema = coalesce(upper(?1), schema()) and table_name = upper(?2)")
+                    .setParameter(1, schema)
+                    .setParameter(2, name)
+                    .getSingleResult();
+            return ((Number) rows).longValue();
+        } catch (PersistenceException e) {
+            log.debug("table statistics unavailable for {}. falling back to count(*)", table, e);
+            Long rows = queryFactory.select(ONE.count()).from(root).fetchOne();
+            return rows == null ? 0 : rows;
+        }
+    }
+
+    private String tableName(Class<?> entityType) {
+        EntityPersister persister = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getMetamodel().entityPersister(entityType);
+        return ((AbstractEntityPersister) persister).getTableName().replace("`", "").replace("\"", "");
+    }
+}
@@ -0,0 +1,18 @@
+package study.querydsl.repository.support;
+
+/**
+ * 페이지 조회 시 전체 건수(totalElements)를 구하는 방식
+ * EXACT : count 쿼리로 정확히 센다.
+ * APPROX : 테이블 통계 또는 표본 count 로 추정한다. (오차 범위를 함께 반환)
+ * NONE : 세지 않는다. 다음 페이지가 있는지만 알려준다.
+ */
+public enum CountMode {
+    EXACT,
+    APPROX,
+    NONE;
+
+    /* exact, approx, none (대소문자 무시). null 이면 APPROX, 그 밖의 값은 IllegalArgumentException */
+    public static CountMode from(String value) {
+        return value == null ? APPROX : valueOf(value.trim().toUpperCase());
+    }
+}
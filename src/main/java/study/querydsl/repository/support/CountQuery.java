@@ -0,0 +1,299 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.DefaultQueryMetadata;
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.JoinFlag;
+import com.querydsl.core.JoinType;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.CollectionExpression;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Projections;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.core.types.TemplateExpression;
+import com.querydsl.core.types.Visitor;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.JPQLQueryMixin;
+import com.querydsl.jpa.impl.JPAQuery;
+
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.SingularAttribute;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * content 쿼리의 QueryMetadata 로부터 count 쿼리를 만든다.
+ *
+ * fetchCount() 는 content 쿼리를 그대로 count 로 감싸기 때문에 불필요한 조인, 정렬까지 함께 실행하고,
+ * group by 가 여러 개이면 잘못된 JPQL 을 만든다. 여기서는 다음과 같이 count 쿼리를 줄인다.
+ * 1. order by 를 제거한다.
+ * 2. fetch join 을 일반 join 으로 바꾼다. (count 에는 연관 엔티티를 가져올 필요가 없다.)
+ * 3. where, group by, having, 다른 조인 어디에서도 쓰이지 않는 xToOne left join 을 제거한다. (행 수가 변하지 않는다.)
+ * 4. distinct 쿼리이면서 행을 늘리는 조인(컬렉션 조인 등)이 남았을 때만 count(distinct 루트) 를 사용한다.
+ * 5. group by 가 null 이 될 수 없는 키(루트, 루트의 필수 속성) 하나면 count(distinct 그룹키),
+ *    여러 개이거나 having 이 있거나 null 이 될 수 있는 키면 그룹 키만 조회해서 개수를 센다.
+ *    (count(distinct) 는 null 을 세지 않지만 group by 는 null 도 한 그룹으로 묶는다. left join 한 team.name 등)
+ */
+public class CountQuery {
+
+    private static final Set<JoinFlag> FETCH_FLAGS = Set.of(JPQLQueryMixin.FETCH, JPQLQueryMixin.FETCH_ALL_PROPERTIES);
+
+    private final JPAQuery<?> query;
+    private final boolean countRows;
+
+    private CountQuery(JPAQuery<?> query, boolean countRows) {
+        this.query = query;
+        this.countRows = countRows;
+    }
+
+    public static CountQuery derive(EntityManager em, QueryMetadata content) {
+        DefaultQueryMetadata count = new DefaultQueryMetadata();
+        count.setValidate(false);
+
+        Expression<?> root = root(content.getJoins().get(0));
+        Expression<?> projection = content.getProjection();
+        boolean distinctRoot = content.isDistinct() && (projection == null || projection.equals(root));
+
+        List<JoinExpression> joins = requiredJoins(content, distinctRoot);
+        boolean multiplies = false;
+        for (int i = 0; i < joins.size(); i++) {
+            JoinExpression join = joins.get(i);
+            count.addJoin(join.getType(), join.getTarget());
+            if (join.getCondition() != null) {
+                count.addJoinCondition(join.getCondition());
+            }
+            for (JoinFlag flag : join.getFlags()) {
+                if (!FETCH_FLAGS.contains(flag)) {
+                    count.addJoinFlag(flag);
+                }
+            }
+            multiplies |= i > 0 && multipliesRows(join);
+        }
+        if (content.getWhere() != null) {
+            count.addWhere(content.getWhere());
+        }
+        content.getParams().forEach((param, value) -> setParam(count, param, value));
+
+        List<Expression<?>> groupBy = content.getGroupBy();
+        boolean countRows = false;
+        if (!groupBy.isEmpty()) {
+            if (groupBy.size() == 1 && content.getHaving() == null && isNonNull(em, groupBy.get(0), root)) {
+                count.setProjection(countDistinct(groupBy.get(0)));
+            } else {
+                // 그룹 수는 JPQL 로 한 번에 셀 수 없으므로(from 절 서브쿼리 불가), 그룹 키만 가져와서 센다.
+                groupBy.forEach(count::addGroupBy);
+                if (content.getHaving() != null) {
+                    count.addHaving(content.getHaving());
+                }
+                count.setProjection(Projections.tuple(groupBy.toArray(new Expression[0])));
+                countRows = true;
+            }
+        } else if (!content.isDistinct()) {
+            count.setProjection(count(root)); // 루트는 모든 행에서 null 이 아니므로 행 수와 같다.
+        } else if (distinctRoot) {
+            count.setProjection(multiplies ? countDistinct(root) : count(root)); // 행을 늘리는 조인이 남았을 때만 distinct
+        } else if (!(projection instanceof FactoryExpression)) {
+            count.setProjection(countDistinct(projection));
+        } else {
+            // distinct DTO 프로젝션은 count(distinct ...) 로 표현할 수 없으므로 중복 제거한 행을 가져와서 센다.
+            count.setDistinct(true);
+            count.setProjection(projection);
+            countRows = true;
+        }
+        return new CountQuery(new JPAQuery<>(em, count), countRows);
+    }
+
+    public long fetch() {
+        if (countRows) {
+            return query.fetch().size();
+        }
+        Object count = query.fetchOne();
+        return count == null ? 0 : ((Number) count).longValue();
+    }
+
+    @Override
+    public String toString() {
+        return query.toString();
+    }
+
+    /**
+     * 루트와 inner join, 연관관계 없는 조인(theta join), 컬렉션 조인은 항상 남긴다.
+     * xToOne left join 은 where, group by, having, 남은 조인에서 별칭을 쓰는 경우에만 남긴다.
+     */
+    private static List<JoinExpression> requiredJoins(QueryMetadata content, boolean distinctRoot) {
+        List<JoinExpression> joins = content.getJoins();
+
+        Set<String> referenced = new HashSet<>();
+        collect(content.getWhere(), referenced);
+        content.getGroupBy().forEach(e -> collect(e, referenced));
+        collect(content.getHaving(), referenced);
+        if (content.isDistinct()) {
+            collect(content.getProjection(), referenced); // 중복 제거 대상인 프로젝션은 count 에서도 필요하다.
+        }
+
+        boolean[] keep = new boolean[joins.size()];
+        boolean changed = true;
+        while (changed) { // 남긴 조인이 참조하는 별칭의 조인도 남겨야 하므로, 더 이상 바뀌지 않을 때까지 반복
+            changed = false;
+            for (int i = 0; i < joins.size(); i++) {
+                if (keep[i]) {
+                    continue;
+                }
+                JoinExpression join = joins.get(i);
+                if (i == 0 || !isDroppable(join, distinctRoot) || referenced.contains(alias(join))) {
+                    keep[i] = true;
+                    changed = true;
+                    collect(join.getTarget(), referenced);
+                    collect(join.getCondition(), referenced);
+                }
+            }
+        }
+
+        List<JoinExpression> result = new ArrayList<>();
+        for (int i = 0; i < joins.size(); i++) {
+            if (keep[i]) {
+                result.add(joins.get(i));
+            }
+        }
+        return result;
+    }
+
+    /*
+     * 연관관계 left join 은 루트 행을 줄이지 않는다. xToOne 이면 행을 늘리지도 않으므로 제거할 수 있고,
+     * 컬렉션이라도 distinct 루트를 세는 경우라면 제거할 수 있다.
+     */
+    private static boolean isDroppable(JoinExpression join, boolean distinctRoot) {
+        return join.getType() == JoinType.LEFTJOIN && associationPath(join) != null
+                && (distinctRoot || !multipliesRows(join));
+    }
+
+    private static boolean multipliesRows(JoinExpression join) {
+        Path<?> association = associationPath(join);
+        return association == null || association instanceof CollectionExpression; // 연관관계 없는 조인은 행 수를 알 수 없다.
+    }
+
+    /* join(member.team, team) 처럼 연관관계로 조인한 경우 member.team 을 반환한다. */
+    private static Path<?> associationPath(JoinExpression join) {
+        Expression<?> target = join.getTarget();
+        if (target instanceof Operation && ((Operation<?>) target).getOperator() == Ops.ALIAS) {
+            Expression<?> source = ((Operation<?>) target).getArg(0);
+            return source instanceof Path ? (Path<?>) source : null;
+        }
+        return null;
+    }
+
+    private static Expression<?> root(JoinExpression join) {
+        Expression<?> target = join.getTarget();
+        if (target instanceof Operation && ((Operation<?>) target).getOperator() == Ops.ALIAS) {
+            return ((Operation<?>) target).getArg(1);
+        }
+        return target;
+    }
+
+    /* 루트 자체이거나, 루트의 필수(optional=false) 속성이면 null 이 될 수 없다. 모르면 null 이 될 수 있다고 본다. */
+    private static boolean isNonNull(EntityManager em, Expression<?> key, Expression<?> root) {
+        if (key.equals(root)) {
+            return true;
+        }
+        if (!(key instanceof Path) || !root.equals(((Path<?>) key).getMetadata().getParent())) {
+            return false;
+        }
+        try {
+            Attribute<?, ?> attribute = em.getMetamodel().managedType(root.getType())
+                    .getAttribute(((Path<?>) key).getMetadata().getName());
+            return attribute instanceof SingularAttribute && !((SingularAttribute<?, ?>) attribute).isOptional();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String alias(JoinExpression join) {
+        Expression<?> root = root(join);
+        return root instanceof Path ? ((Path<?>) root).getMetadata().getName() : null;
+    }
+
+    private static Expression<Long> count(Expression<?> expr) {
+        return Expressions.numberOperation(Long.class, Ops.AggOps.COUNT_AGG, expr);
+    }
+
+    private static Expression<Long> countDistinct(Expression<?> expr) {
+        return Expressions.numberOperation(Long.class, Ops.AggOps.COUNT_DISTINCT_AGG, expr);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void setParam(DefaultQueryMetadata metadata, ParamExpression<T> param, Object value) {
+        metadata.setParam(param, (T) value);
+    }
+
+    /* 표현식에서 사용된 경로들의 루트 별칭(member, team ...)을 모은다. */
+    private static void collect(Expression<?> expression, Set<String> aliases) {
+        if (expression != null) {
+            expression.accept(AliasCollector.INSTANCE, aliases);
+        }
+    }
+
+    private static class AliasCollector implements Visitor<Void, Set<String>> {
+
+        static final AliasCollector INSTANCE = new AliasCollector();
+
+        @Override
+        public Void visit(Constant<?> expr, Set<String> aliases) {
+            return null;
+        }
+
+        @Override
+        public Void visit(FactoryExpression<?> expr, Set<String> aliases) {
+            expr.getArgs().forEach(arg -> arg.accept(this, aliases));
+            return null;
+        }
+
+        @Override
+        public Void visit(Operation<?> expr, Set<String> aliases) {
+            expr.getArgs().forEach(arg -> arg.accept(this, aliases));
+            return null;
+        }
+
+        @Override
+        public Void visit(ParamExpression<?> expr, Set<String> aliases) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Path<?> expr, Set<String> aliases) {
+            aliases.add(expr.getRoot().getMetadata().getName());
+            return null;
+        }
+
+        @Override
+        public Void visit(SubQueryExpression<?> expr, Set<String> aliases) {
+            QueryMetadata md = expr.getMetadata();
+            collect(md.getProjection(), aliases);
+            collect(md.getWhere(), aliases);
+            collect(md.getHaving(), aliases);
+            md.getGroupBy().forEach(e -> collect(e, aliases));
+            md.getJoins().forEach(j -> {
+                collect(j.getTarget(), aliases);
+                collect(j.getCondition(), aliases);
+            });
+            return null;
+        }
+
+        @Override
+        public Void visit(TemplateExpression<?> expr, Set<String> aliases) {
+            expr.getArgs().forEach(arg -> {
+                if (arg instanceof Expression) {
+                    ((Expression<?>) arg).accept(this, aliases);
+                }
+            });
+            return null;
+        }
+    }
+}
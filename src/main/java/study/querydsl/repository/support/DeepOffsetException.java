@@ -0,0 +1,17 @@
+package study.querydsl.repository.support;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 허용된 최대 offset 을 넘는 페이지 요청
+ * offset 이 크면 DB 는 앞의 행들을 모두 읽고 버려야 하므로, 페이지를 순서대로 넘기거나 검색 조건을 좁히도록 안내한다.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class DeepOffsetException extends IllegalArgumentException {
+
+    public DeepOffsetException(long offset, long maxOffset) {
+        super("page offset " + offset + " exceeds the maximum of " + maxOffset
+                + ". Walk the pages in order or narrow the search condition.");
+    }
+}
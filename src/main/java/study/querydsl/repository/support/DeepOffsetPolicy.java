@@ -0,0 +1,11 @@
+package study.querydsl.repository.support;
+
+/**
+ * 최대 offset 을 넘는 페이지 요청의 처리 방식
+ * REJECT : DeepOffsetException 으로 거절한다.
+ * SEEK : 직전 페이지의 마지막 (정렬키, id) 다음부터 가져오는 seek 쿼리로 바꾼다. 직전 페이지 정보가 없으면 거절한다.
+ */
+public enum DeepOffsetPolicy {
+    REJECT,
+    SEEK
+}
@@ -0,0 +1,225 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.FactoryExpressionBase;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Visitor;
+import com.querydsl.core.util.ConstructorUtils;
+import com.querydsl.core.util.PrimitiveUtils;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 리플렉션 없이 DTO 를 만드는 프로젝션
+ *
+ * Projections.constructor, Projections.bean, @QueryProjection(ConstructorExpression) 은 행마다 Constructor.newInstance,
+ * Method.invoke 로 DTO 를 만든다. 여기서는 프로젝션을 만들 때 한 번 LambdaMetafactory 로 생성자/setter 를 직접 호출하는 람다를 만들어 두고,
+ * 행마다 그 람다를 호출한다. (JIT 가 일반 메서드 호출처럼 인라인할 수 있다.)
+ *
+ * 프로젝션 객체는 한 번 만들어서 재사용해야 효과가 있다. (static final 상수 등)
+ * 사용법은 Projections 와 같다. DirectProjections.constructor(MemberTeamDto.class, member.id, ...)
+ */
+public final class DirectProjections {
+
+    private static final int MAX_CONSTRUCTOR_ARGS = 6;
+
+    private DirectProjections() {
+    }
+
+    /* Projections.constructor 와 같은 방식. 인자 타입이 맞는 public 생성자를 찾는다. (최대 6개) */
+    public static <T> FactoryExpression<T> constructor(Class<? extends T> type, Expression<?>... args) {
+        return new ConstructorProjection<>(type, Arrays.asList(args));
+    }
+
+    /* Projections.bean 과 같은 방식. 기본 생성자로 만들고 (별칭 또는 경로 이름의) setter 로 값을 넣는다. */
+    public static <T> FactoryExpression<T> bean(Class<? extends T> type, Expression<?>... args) {
+        return new BeanProjection<>(type, Arrays.asList(args));
+    }
+
+    @FunctionalInterface
+    interface Args1 { Object apply(Object a); }
+    @FunctionalInterface
+    interface Args2 { Object apply(Object a, Object b); }
+    @FunctionalInterface
+    interface Args3 { Object apply(Object a, Object b, Object c); }
+    @FunctionalInterface
+    interface Args4 { Object apply(Object a, Object b, Object c, Object d); }
+    @FunctionalInterface
+    interface Args5 { Object apply(Object a, Object b, Object c, Object d, Object e); }
+    @FunctionalInterface
+    interface Args6 { Object apply(Object a, Object b, Object c, Object d, Object e, Object f); }
+
+    private static final Class<?>[] ARGS_INTERFACES = {
+            null, Args1.class, Args2.class, Args3.class, Args4.class, Args5.class, Args6.class};
+
+    private static class ConstructorProjection<T> extends FactoryExpressionBase<T> {
+
+        private final List<Expression<?>> args;
+        private final Object factory;
+
+        ConstructorProjection(Class<? extends T> type, List<Expression<?>> args) {
+            super(type);
+            if (args.isEmpty() || args.size() > MAX_CONSTRUCTOR_ARGS) {
+                throw new IllegalArgumentException("1 ~ " + MAX_CONSTRUCTOR_ARGS + " constructor args supported: " + args.size());
+            }
+            this.args = List.copyOf(args);
+            this.factory = constructorFactory(type, args);
+        }
+
+        @Override
+        public List<Expression<?>> getArgs() {
+            return args;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T newInstance(Object... a) {
+            switch (a.length) { // 인자 수마다 다른 함수형 인터페이스를 쓰므로 Object[] 를 펼쳐서 호출
+                case 1: return (T) ((Args1) factory).apply(a[0]);
+                case 2: return (T) ((Args2) factory).apply(a[0], a[1]);
+                case 3: return (T) ((Args3) factory).apply(a[0], a[1], a[2]);
+                case 4: return (T) ((Args4) factory).apply(a[0], a[1], a[2], a[3]);
+                case 5: return (T) ((Args5) factory).apply(a[0], a[1], a[2], a[3], a[4]);
+                default: return (T) ((Args6) factory).apply(a[0], a[1], a[2], a[3], a[4], a[5]);
+            }
+        }
+
+        @Override
+        public <R, C> R accept(Visitor<R, C> v, C context) {
+            return v.visit(this, context);
+        }
+    }
+
+    private static class BeanProjection<T> extends FactoryExpressionBase<T> {
+
+        private final List<Expression<?>> args;
+        private final Supplier<?> create;
+        private final List<BiConsumer<Object, Object>> setters = new ArrayList<>();
+        private final boolean[] primitive;
+
+        BeanProjection(Class<? extends T> type, List<Expression<?>> args) {
+            super(type);
+            this.args = List.copyOf(args);
+            this.create = noArgsFactory(type);
+            this.primitive = new boolean[args.size()];
+            for (int i = 0; i < args.size(); i++) {
+                PropertyDescriptor property = property(type, propertyName(args.get(i)));
+                primitive[i] = property.getPropertyType().isPrimitive();
+                setters.add(setterFactory(type, property));
+            }
+        }
+
+        @Override
+        public List<Expression<?>> getArgs() {
+            return args;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T newInstance(Object... a) {
+            Object bean = create.get();
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != null || !primitive[i]) { // null 을 primitive 필드에 넣을 수는 없으므로 기본값으로 둔다. (QBean 과 같음)
+                    setters.get(i).accept(bean, a[i]);
+                }
+            }
+            return (T) bean;
+        }
+
+        @Override
+        public <R, C> R accept(Visitor<R, C> v, C context) {
+            return v.visit(this, context);
+        }
+    }
+
+    private static Object constructorFactory(Class<?> type, List<Expression<?>> args) {
+        try {
+            Class<?>[] argTypes = args.stream().map(Expression::getType).toArray(Class[]::new);
+            Constructor<?> constructor = ConstructorUtils.getConstructor(type, argTypes);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle target = lookup.unreflectConstructor(constructor);
+
+            Class<?> samType = ARGS_INTERFACES[args.size()];
+            MethodType erased = MethodType.genericMethodType(args.size());
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(samType),
+                    erased, target, boxed(target.type()));
+            return site.getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("cannot create constructor projection for " + type.getName(), e);
+        }
+    }
+
+    private static Supplier<?> noArgsFactory(Class<?> type) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle target = lookup.findConstructor(type, MethodType.methodType(void.class));
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class), target, target.type());
+            return (Supplier<?>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("cannot create bean projection for " + type.getName() + " (public no-args constructor required)", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> setterFactory(Class<?> type, PropertyDescriptor property) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle target = lookup.unreflect(property.getWriteMethod());
+            CallSite site = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class), target, boxed(target.type()));
+            return (BiConsumer<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("cannot create setter for " + type.getName() + "." + property.getName(), e);
+        }
+    }
+
+    /* (int, String)V -> (Integer, String)V. 람다 인터페이스는 Object 를 받으므로 primitive 인자는 래퍼 타입에서 언박싱한다. */
+    private static MethodType boxed(MethodType type) {
+        MethodType result = type;
+        for (int i = 0; i < type.parameterCount(); i++) {
+            result = result.changeParameterType(i, PrimitiveUtils.wrap(type.parameterType(i)));
+        }
+        return result;
+    }
+
+    private static PropertyDescriptor property(Class<?> type, String name) {
+        try {
+            for (PropertyDescriptor property : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+                if (property.getName().equals(name) && property.getWriteMethod() != null) {
+                    return property;
+                }
+            }
+        } catch (IntrospectionException e) {
+            throw new IllegalArgumentException(e);
+        }
+        throw new IllegalArgumentException("no setter for " + type.getName() + "." + name);
+    }
+
+    /* member.username.as("name") 이면 name, member.username 이면 username */
+    private static String propertyName(Expression<?> expr) {
+        if (expr instanceof Operation && ((Operation<?>) expr).getOperator() == Ops.ALIAS) {
+            return propertyName(((Operation<?>) expr).getArg(1));
+        }
+        if (expr instanceof Path) {
+            return ((Path<?>) expr).getMetadata().getName();
+        }
+        throw new IllegalArgumentException("bean projection args must be paths or aliases: " + expr);
+    }
+}
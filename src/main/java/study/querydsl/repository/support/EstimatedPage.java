@@ -0,0 +1,29 @@
+package study.querydsl.repository.support;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * totalElements 가 추정값일 수 있는 Page
+ * 기존 Page 응답 필드는 그대로 두고, 건수를 어떻게 구했는지(countEstimate)를 함께 내려준다.
+ * countEstimate.count 는 항상 totalElements 와 같다. PageImpl 이 content 를 보고 total 을 올리면(추정값이 이 페이지까지의 건수보다 작을 때)
+ * 마지막 페이지면 정확한 건수로, 꽉 찬 페이지면 최소 건수(LOWER_BOUND)로 바꾼다.
+ */
+public class EstimatedPage<T> extends PageImpl<T> {
+
+    private final CountEstimate countEstimate;
+
+    public EstimatedPage(List<T> content, Pageable pageable, CountEstimate countEstimate) {
+        super(content, pageable, countEstimate.getCount());
+        this.countEstimate = getTotalElements() == countEstimate.getCount()
+                ? countEstimate
+                : new CountEstimate(getTotalElements(), 0,
+                        content.size() < pageable.getPageSize() ? CountEstimate.Source.EXACT : CountEstimate.Source.LOWER_BOUND);
+    }
+
+    public CountEstimate getCountEstimate() {
+        return countEstimate;
+    }
+}
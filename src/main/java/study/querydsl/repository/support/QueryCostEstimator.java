@@ -0,0 +1,207 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.JPQLQuery;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 쿼리를 실행하기 전에 H2 EXPLAIN 으로 실행 계획(인덱스를 타는지, 몇 행을 읽을지)을 구한다.
+ *
+ * 동적 쿼리는 조건 조합에 따라 인덱스를 타기도 하고 테이블 전체를 읽기도 한다. 조건 값은 파라미터(?1, ?2 ...)로 바뀌므로
+ * 쿼리의 JPQL 문자열이 곧 조건 조합(모양)이고, 모양마다 한 번만 EXPLAIN 을 실행해서 ttl 동안 캐시한다.
+ *
+ * JPQL -> SQL 변환은 하이버네이트 쿼리 플랜 캐시를 쓰고, EXPLAIN 은 파라미터 값 없이 실행한다. (H2 는 EXPLAIN 에 파라미터 값을 요구하지 않는다.)
+ * H2 EXPLAIN 은 예상 행 수를 보여주지 않으므로, 테이블 행 수와 컬럼 선택도(INFORMATION_SCHEMA)로 H2 옵티마이저와 같은 방식으로 계산한다.
+ * 선택도가 기본값(50)이면 ANALYZE 로 만든 통계가 없는 것이므로 예상 행 수를 -1(모름)로 둔다. (pk 동등 조건은 통계 없이도 1 건)
+ * IN (목록) 조건은 목록 크기에 따라 읽는 행 수가 다른데, 목록 크기와 상관없이 모양마다 캐시하므로 역시 -1 로 둔다.
+ * H2 는 값이 하나인 IN 을 = 로 바꿔서 계획에 보여주므로, 목록 파라미터는 JPQL 에서 찾는다.
+ */
+@Slf4j
+@Component
+public class QueryCostEstimator {
+
+    // FROM "PUBLIC"."MEMBER" "MEMBER0_" /* PUBLIC.PRIMARY_KEY_8: MEMBER_ID = ?1 */
+    private static final Pattern ROOT_ACCESS = Pattern.compile("\\bFROM\\s+(\\S+)\\s+\\S+\\s*/\\*\\s*(.+?)\\s*\\*/",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern CONDITION = Pattern.compile("\"?(\\w+)\"?\\s*(=|>=|<=|>|<|IS|LIKE|BETWEEN|IN)", Pattern.CASE_INSENSITIVE);
+    // member1.id in ?1 (컬렉션 파라미터)
+    private static final Pattern LIST_PARAMETER = Pattern.compile("\\bin\\s*\\(?\\s*\\?\\d", Pattern.CASE_INSENSITIVE);
+    private static final int DEFAULT_SELECTIVITY = 50; // H2 기본 컬럼 선택도 (ANALYZE 전)
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Duration ttl;
+    private final int cacheSize;
+
+    private final Map<String, Entry> plans = new LinkedHashMap<>(16, 0.75f, true);
+
+    public QueryCostEstimator(EntityManagerFactory entityManagerFactory, JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                              @Value("${querydsl.explain.ttl:PT5M}") Duration ttl,
+                              @Value("${querydsl.explain.cache-size:500}") int cacheSize) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.ttl = ttl;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * query 의 실행 계획. 같은 모양의 쿼리는 캐시된 계획을 돌려준다. 쿼리를 실행하지는 않는다.
+     */
+    public QueryPlan explain(JPQLQuery<?> query) {
+        String jpql = query.toString(); // 조건 값은 ?1, ?2 ... 로 바뀐 JPQL
+        long now = System.nanoTime();
+        synchronized (plans) {
+            Entry entry = plans.get(jpql);
+            if (entry != null && now - entry.createdAt < ttl.toNanos()) {
+                meterRegistry.counter("querydsl.explain.requests", "result", "hit").increment();
+                return entry.plan;
+            }
+        }
+
+        meterRegistry.counter("querydsl.explain.requests", "result", "miss").increment();
+        QueryPlan plan = explainSql(toSql(jpql), LIST_PARAMETER.matcher(jpql).find());
+        synchronized (plans) {
+            plans.put(jpql, new Entry(plan, now));
+            if (plans.size() > cacheSize) {
+                plans.remove(plans.keySet().iterator().next());
+            }
+        }
+        return plan;
+    }
+
+    private String toSql(String jpql) {
+        return entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getQueryPlanCache()
+                .getHQLQueryPlan(jpql, false, Collections.emptyMap())
+                .getSqlStrings()[0];
+    }
+
+    private QueryPlan explainSql(String sql, boolean listParameter) {
+        try {
+            String plan = jdbcTemplate.query(con -> con.prepareStatement("EXPLAIN " + sql),
+                    rs -> rs.next() ? rs.getString(1) : null);
+            QueryPlan result = plan == null ? QueryPlan.unknown() : parse(plan, listParameter);
+            log.debug("explain {} -> {} {} rows", sql, result.getScanType(), result.getEstimatedRows());
+            return result;
+        } catch (DataAccessException e) {
+            log.debug("explain unavailable for {}", sql, e);
+            return QueryPlan.unknown();
+        }
+    }
+
+    private QueryPlan parse(String plan, boolean listParameter) {
+        Matcher root = ROOT_ACCESS.matcher(plan);
+        if (!root.find()) {
+            return QueryPlan.unknown();
+        }
+        String table = unquote(root.group(1));
+        String access = root.group(2);
+        long tableRows = tableRows(table);
+
+        if (access.endsWith(".tableScan")) {
+            return new QueryPlan(QueryPlan.ScanType.TABLE_SCAN, null, tableRows, tableRows, plan);
+        }
+
+        // PUBLIC.IDX_NAME: COL1 = ?1 AND COL2 >= ?2
+        int colon = access.indexOf(':');
+        String index = unquote(colon < 0 ? access : access.substring(0, colon));
+        String conditions = colon < 0 ? "" : access.substring(colon + 1);
+        boolean primaryKey = index.toUpperCase().startsWith("PRIMARY_KEY");
+
+        boolean range = false;
+        boolean multiValued = listParameter;
+        boolean estimated = true;
+        long rows = tableRows;
+        Matcher condition = CONDITION.matcher(conditions);
+        while (condition.find()) {
+            String operator = condition.group(2).toUpperCase();
+            if (operator.equals("IN")) {
+                multiValued = true;
+                continue;
+            }
+            if (!operator.equals("=")) {
+                range = true;
+                continue;
+            }
+            Integer selectivity = selectivity(table, condition.group(1));
+            if (selectivity == null) {
+                estimated = false;
+                continue;
+            }
+            // H2 옵티마이저와 같은 계산 : 동등 조건 한 번에 읽는 행 수 = 테이블 행 수 / 고유 값 수(행 수 x 선택도%)
+            long distinct = Math.max(1, tableRows * selectivity / 100);
+            rows = Math.min(rows, Math.max(1, tableRows / distinct));
+        }
+
+        if (multiValued) {
+            return new QueryPlan(QueryPlan.ScanType.INDEX_RANGE, index, -1, tableRows, plan);
+        }
+        if (primaryKey && !range) {
+            return new QueryPlan(QueryPlan.ScanType.PRIMARY_KEY, index, 1, tableRows, plan);
+        }
+        if (!estimated) {
+            return new QueryPlan(range ? QueryPlan.ScanType.INDEX_RANGE : QueryPlan.ScanType.INDEX_LOOKUP, index, -1, tableRows, plan);
+        }
+        if (range && rows == tableRows) {
+            return new QueryPlan(QueryPlan.ScanType.INDEX_RANGE, index, Math.max(1, tableRows / 4), tableRows, plan); // H2 의 범위 조건 추정치
+        }
+        return new QueryPlan(QueryPlan.ScanType.INDEX_LOOKUP, index, rows, tableRows, plan);
+    }
+
+    private long tableRows(String table) {
+        List<Long> rows = jdbcTemplate.queryForList(
+                "select row_count_estimate from information_schema.tables where table_name = ?", Long.class, table);
+        return rows.isEmpty() || rows.get(0) == null ? 0 : rows.get(0);
+    }
+
+    /* ANALYZE 로 구한 컬럼 선택도. 통계가 없으면(기본값 그대로이거나 선택도 컬럼이 없는 H2 버전) null */
+    private Integer selectivity(String table, String column) {
+        try {
+            List<Integer> selectivity = jdbcTemplate.queryForList(
+                    "select selectivity from information_schema.columns where table_name = ? and column_name = ?",
+                    Integer.class, table, column);
+            return selectivity.isEmpty() || selectivity.get(0) == null || selectivity.get(0) == DEFAULT_SELECTIVITY
+                    ? null : selectivity.get(0);
+        } catch (DataAccessException e) {
+            return null;
+        }
+    }
+
+    /* "PUBLIC"."MEMBER" -> MEMBER */
+    private static String unquote(String name) {
+        String unquoted = name.replace("\"", "").trim();
+        return unquoted.substring(unquoted.lastIndexOf('.') + 1);
+    }
+
+    public void clear() {
+        synchronized (plans) {
+            plans.clear();
+        }
+    }
+
+    private static class Entry {
+        final QueryPlan plan;
+        final long createdAt;
+
+        Entry(QueryPlan plan, long createdAt) {
+            this.plan = plan;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.QueryModifiers;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.JPQLTemplates;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * QueryMetadata 로 같은 쿼리인지 판별하기 위한 키를 만든다.
+ * 키는 상수를 ?1, ?2 로 바꾼 JPQL 과 상수 값 목록이다. querydsl 표현식의 toString() 은 상수를 따옴표 없이 출력해서
+ * username.eq("a && member1.age >= 20") 와 username.eq("a").and(age.goe(20)) 가 같은 문자열이 되므로 쓰지 않는다.
+ * of() 는 offset, limit, order by 를 키에서 제외한다. (페이지 번호, 정렬은 호출하는 쪽에서 따로 붙인다.)
+ * 결과 자체를 식별해야 할 때(결과 캐시)는 그것까지 포함하는 ofResult() 를 쓴다.
+ */
+public final class QueryKeys {
+
+    private QueryKeys() {
+    }
+
+    public static Key of(QueryMetadata metadata) {
+        QueryMetadata withoutOrder = metadata.clone();
+        withoutOrder.clearOrderBy();
+        return key(withoutOrder, null);
+    }
+
+    /* 쿼리 결과를 식별하는 키. order by, offset/limit, 파라미터(Param) 값까지 포함한다. */
+    public static Key ofResult(QueryMetadata metadata) {
+        return key(metadata, metadata.getModifiers());
+    }
+
+    private static Key key(QueryMetadata metadata, QueryModifiers modifiers) {
+        JPQLSerializer serializer = new JPQLSerializer(JPQLTemplates.DEFAULT);
+        serializer.serialize(metadata, false, null);
+        return new Key(serializer.toString(), new ArrayList<>(serializer.getConstants()),
+                new HashMap<>(metadata.getParams()), modifiers);
+    }
+
+    /* equals/hashCode 로 비교하는 쿼리 키. modifiers 는 of() 로 만들었으면 null */
+    @Value
+    public static class Key {
+        String jpql;
+        List<Object> constants;
+        Map<ParamExpression<?>, Object> params;
+        QueryModifiers modifiers;
+    }
+}
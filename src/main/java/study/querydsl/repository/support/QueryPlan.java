@@ -0,0 +1,34 @@
+package study.querydsl.repository.support;
+
+import lombok.Value;
+
+/**
+ * H2 EXPLAIN 으로 구한 쿼리 실행 계획 요약 (from 절 첫 번째 테이블 기준)
+ * estimatedRows 는 그 테이블에서 읽을 것으로 추정되는 행 수이다. (TABLE_SCAN 이면 테이블 전체 행 수, 추정할 수 없으면 -1)
+ */
+@Value
+public class QueryPlan {
+
+    public enum ScanType {
+        PRIMARY_KEY,   // pk 동등 조건 조회
+        INDEX_LOOKUP,  // 인덱스 동등 조건 조회
+        INDEX_RANGE,   // 인덱스 범위 조회 (>=, <=, between, like 'a%', in (목록))
+        TABLE_SCAN,    // 테이블 전체 읽기
+        UNKNOWN        // 실행 계획을 구하지 못함 (H2 가 아닌 DB 등)
+    }
+
+    ScanType scanType;
+    String index;
+    long estimatedRows;
+    long tableRows;
+    String plan;
+
+    public static QueryPlan unknown() {
+        return new QueryPlan(ScanType.UNKNOWN, null, -1, -1, null);
+    }
+
+    /* 인덱스로 몇 건만 찾는 조회인지 (count 쿼리도 같은 인덱스로 싸게 끝난다.) 예상 행 수를 모르면 false */
+    public boolean isLookup() {
+        return (scanType == ScanType.PRIMARY_KEY || scanType == ScanType.INDEX_LOOKUP) && estimatedRows >= 0;
+    }
+}
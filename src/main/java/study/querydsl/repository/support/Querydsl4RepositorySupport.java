@@ -1,13 +1,26 @@
 package study.querydsl.repository.support;
 
+import com.querydsl.core.JoinExpression;
 import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.ComparableExpression;
 import com.querydsl.core.types.dsl.PathBuilder;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.PropertyAccessorFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.support.JpaEntityInformation;
 import
         org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
@@ -16,9 +29,12 @@ import org.springframework.data.querydsl.SimpleEntityPathResolver;
 import org.springframework.data.repository.support.PageableExecutionUtils;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.Assert;
+import study.querydsl.cache.QueryResultCache;
+import study.querydsl.repository.support.SeekBoundaryCache.Boundary;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
+import java.time.Duration;
 import java.util.List;
 import java.util.function.Function;
 
@@ -34,6 +50,14 @@ public abstract class Querydsl4RepositorySupport {
     private Querydsl querydsl;
     private EntityManager entityManager;
     private JPAQueryFactory queryFactory;
+    private JpaEntityInformation entityInformation;
+    private PathBuilder<?> builder;
+
+    private long maxOffset = 10_000;
+    private DeepOffsetPolicy deepOffsetPolicy = DeepOffsetPolicy.SEEK;
+    private SeekBoundaryCache boundaryCache = new SeekBoundaryCache(10_000);
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+    private QueryResultCache queryResultCache;
 
     public Querydsl4RepositorySupport(Class<?> domainClass) {
         Assert.notNull(domainClass, "Domain class must not be null!");
@@ -48,11 +72,35 @@ public abstract class Querydsl4RepositorySupport {
         SimpleEntityPathResolver resolver = SimpleEntityPathResolver.INSTANCE;
         EntityPath path = resolver.createPath(entityInformation.getJavaType());
         this.entityManager = entityManager;
-        this.querydsl = new Querydsl(entityManager, new
-                PathBuilder<>(path.getType(), path.getMetadata()));
+        this.entityInformation = entityInformation;
+        this.builder = new PathBuilder<>(path.getType(), path.getMetadata());
+        this.querydsl = new Querydsl(entityManager, builder);
         this.queryFactory = new JPAQueryFactory(entityManager);
     }
 
+    /**
+     * 깊은 offset 방지 설정
+     * offset 이 maxOffset 을 넘는 페이지 요청은 deepOffsetPolicy 에 따라 거절하거나 seek 쿼리로 바꾼다.
+     */
+    @Autowired
+    public void setPaginationProperties(@Value("${querydsl.pagination.max-offset:10000}") long maxOffset,
+                                        @Value("${querydsl.pagination.deep-offset:SEEK}") DeepOffsetPolicy deepOffsetPolicy,
+                                        @Value("${querydsl.pagination.seek-cache-size:10000}") int seekCacheSize) {
+        this.maxOffset = maxOffset;
+        this.deepOffsetPolicy = deepOffsetPolicy;
+        this.boundaryCache = new SeekBoundaryCache(seekCacheSize);
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Autowired(required = false)
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
     @PostConstruct
     public void validate() {
         Assert.notNull(entityManager, "EntityManager must not be null!");
@@ -80,23 +128,179 @@ public abstract class Querydsl4RepositorySupport {
         return getQueryFactory().selectFrom(from);
     }
 
+    /**
+     * 결과를 ttl 동안 캐시하는 쿼리의 시작점. cached(Duration.ofSeconds(30)).selectFrom(member).where(...).fetch()
+     * 조인한 엔티티 타입의 변경이 커밋되면 ttl 전이라도 지워진다. 캐시 빈이 없으면 일반 쿼리와 같다.
+     */
+    protected CachedQueryFactory cached(Duration ttl) {
+        if (queryResultCache == null) {
+            return new CachedQueryFactory(() -> new JPAQuery<>(entityManager));
+        }
+        String region = getClass().getSimpleName();
+        return new CachedQueryFactory(() -> new CachingJPAQuery<>(entityManager, queryResultCache, region, ttl));
+    }
+
     protected <T> Page<T> applyPagination(Pageable pageable,
                                           Function<JPAQueryFactory, JPAQuery> contentQuery) { // 자바 8의 Function을 사용
         JPAQuery jpaQuery = contentQuery.apply(getQueryFactory()); // apply : 파라미터로 넘어온 쿼리를 실행
-        List<T> content = getQuerydsl().applyPagination(pageable,
-                jpaQuery).fetch();
+        // content 쿼리에서 order by, fetch join, 쓰이지 않는 left join 을 뺀 count 쿼리 (deprecated 된 fetchCount 대신 사용)
+        CountQuery countQuery = CountQuery.derive(getEntityManager(), jpaQuery.getMetadata());
+        List<T> content = fetchContent(pageable, jpaQuery, 0);
         return PageableExecutionUtils.getPage(content, pageable,
-                jpaQuery::fetchCount);
+                countQuery::fetch);
     }
 
     protected <T> Page<T> applyPagination(Pageable pageable,
                                           Function<JPAQueryFactory, JPAQuery> contentQuery, Function<JPAQueryFactory,
             JPAQuery> countQuery) {
         JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable,
-                jpaContentQuery).fetch();
+        List<T> content = fetchContent(pageable, jpaContentQuery, 0);
         JPAQuery countResult = countQuery.apply(getQueryFactory());
         return PageableExecutionUtils.getPage(content, pageable,
                 countResult::fetchCount);
     }
+
+    /**
+     * count 쿼리 없이 Slice 로 페이징 (무한 스크롤처럼 전체 건수가 필요 없는 경우)
+     * 페이지 크기보다 한 건 더 가져와서, 남는 행이 있으면 다음 페이지가 있다고 판단한다.
+     */
+    protected <T> Slice<T> applySlicing(Pageable pageable,
+                                        Function<JPAQueryFactory, JPAQuery> contentQuery) {
+        JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<T>(fetchContent(pageable, jpaQuery, 0), pageable, false);
+        }
+        List<T> content = fetchContent(pageable, jpaQuery, 1);
+        boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    /**
+     * content 쿼리에 페이지네이션을 적용해서 실행한다.
+     * offset 이 maxOffset 이하면 그대로 offset, limit 을 걸고,
+     * 넘으면 직전 페이지의 마지막 (정렬키, id) 다음 행부터 limit 만큼 가져오는 seek 쿼리로 바꾼다. (offset 만큼 읽고 버리는 비용이 없다.)
+     * seek 는 도메인 엔티티를 조회하는 쿼리(selectFrom(도메인))에서, 정렬 조건이 하나 이하일 때만 가능하다.
+     * seek 가능한 쿼리는 모든 페이지에 같은 정렬(정렬키, id)을 건다. 페이지마다 정렬이 다르면 정렬키가 같은 행이 페이지 사이에서 겹치거나 빠진다.
+     * 경계 기록은 다음 페이지가 maxOffset 을 넘는 페이지부터만 한다. (얕은 페이지는 캐시 비용 없이 조회)
+     * lookahead 만큼 더 가져온다. (Slice 의 hasNext 판단용, 반환 목록에 포함된다.)
+     */
+    private <T> List<T> fetchContent(Pageable pageable, JPAQuery<T> jpaQuery, int lookahead) {
+        if (pageable.isUnpaged()) {
+            return getQuerydsl().applyPagination(pageable, jpaQuery).fetch();
+        }
+
+        boolean seekable = deepOffsetPolicy == DeepOffsetPolicy.SEEK && isSeekable(pageable.getSort(), jpaQuery);
+        Pageable page = seekable ? withIdTiebreak(pageable) : pageable; // seek 하려면 id 로 순서가 항상 같아야 한다.
+        boolean tracked = seekable && pageable.getOffset() + pageable.getPageSize() > maxOffset; // 이 페이지나 다음 페이지가 seek 대상
+        QueryKeys.Key queryKey = tracked ? QueryKeys.of(jpaQuery.getMetadata()) : null;
+
+        List<T> content;
+        if (pageable.getOffset() <= maxOffset) {
+            countPagination("shallow", pageable);
+            content = getQuerydsl().applyPagination(page, jpaQuery)
+                    .limit(page.getPageSize() + lookahead)
+                    .fetch();
+        } else {
+            Boundary boundary = tracked ? boundaryCache.get(boundaryKey(queryKey, page, page.getPageNumber())) : null;
+            if (boundary == null) {
+                countPagination("deep_rejected", pageable);
+                throw new DeepOffsetException(pageable.getOffset(), maxOffset);
+            }
+            countPagination("deep_seek", pageable);
+            JPAQuery<T> seekQuery = jpaQuery.clone(); // count 쿼리에 seek 조건이 섞이지 않도록 복사해서 사용
+            seekQuery.where(after(page.getSort(), boundary));
+            getQuerydsl().applySorting(page.getSort(), seekQuery);
+            content = seekQuery.limit(page.getPageSize() + lookahead).fetch();
+        }
+
+        if (tracked) {
+            rememberBoundary(queryKey, page, content.subList(0, Math.min(content.size(), page.getPageSize())));
+        }
+        return content;
+    }
+
+    private boolean isSeekable(Sort sort, JPAQuery<?> jpaQuery) {
+        List<JoinExpression> joins = jpaQuery.getMetadata().getJoins();
+        if (joins.isEmpty() || !(joins.get(0).getTarget() instanceof Path)
+                || !((Path<?>) joins.get(0).getTarget()).getMetadata().equals(builder.getMetadata())) {
+            return false; // 도메인 엔티티가 루트인 쿼리가 아니면 id 로 정렬할 수 없다.
+        }
+
+        String idName = idName();
+        int keys = 0;
+        Sort.Direction direction = null;
+        for (Sort.Order order : sort) {
+            if (order.isIgnoreCase() || order.getProperty().contains(".")
+                    || (direction != null && direction != order.getDirection())) {
+                return false;
+            }
+            direction = order.getDirection();
+            if (!order.getProperty().equals(idName)) {
+                keys++;
+            }
+        }
+        return keys <= 1;
+    }
+
+    private Pageable withIdTiebreak(Pageable pageable) {
+        Sort sort = pageable.getSort();
+        if (sort.getOrderFor(idName()) != null) {
+            return pageable;
+        }
+        Sort.Direction direction = sort.isSorted() ? sort.iterator().next().getDirection() : Sort.Direction.ASC;
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort.and(Sort.by(direction, idName())));
+    }
+
+    private static SeekBoundaryCache.Key boundaryKey(QueryKeys.Key queryKey, Pageable pageable, int pageNumber) {
+        return new SeekBoundaryCache.Key(queryKey, pageable.getSort(), pageable.getPageSize(), pageNumber);
+    }
+
+    /* 이번 페이지의 마지막 행을 다음 페이지의 시작 위치로 기억해둔다. */
+    private void rememberBoundary(QueryKeys.Key queryKey, Pageable pageable, List<?> content) {
+        if (content.size() < pageable.getPageSize()) {
+            return; // 마지막 페이지
+        }
+        Object last = content.get(content.size() - 1);
+        if (!domainClass.isInstance(last)) {
+            return;
+        }
+        String property = pageable.getSort().iterator().next().getProperty();
+        Object id = entityInformation.getId(last);
+        Object sortValue = property.equals(idName())
+                ? id
+                : PropertyAccessorFactory.forBeanPropertyAccess(last).getPropertyValue(property);
+        if (id != null && sortValue != null) {
+            boundaryCache.put(boundaryKey(queryKey, pageable, pageable.getPageNumber() + 1), new Boundary(sortValue, id));
+        }
+    }
+
+    /* (정렬키, id) > (boundary 정렬키, boundary id) 조건. 내림차순이면 < */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate after(Sort sort, Boundary boundary) {
+        Sort.Order first = sort.iterator().next();
+        boolean asc = first.isAscending();
+
+        ComparableExpression id = builder.getComparable(idName(), Comparable.class);
+        Comparable boundaryId = (Comparable) boundary.getId();
+        BooleanExpression idAfter = asc ? id.gt(boundaryId) : id.lt(boundaryId);
+        if (first.getProperty().equals(idName())) {
+            return idAfter;
+        }
+
+        ComparableExpression key = builder.getComparable(first.getProperty(), Comparable.class);
+        Comparable boundaryValue = (Comparable) boundary.getSortValue();
+        return (asc ? key.gt(boundaryValue) : key.lt(boundaryValue))
+                .or(key.eq(boundaryValue).and(idAfter));
+    }
+
+    private String idName() {
+        return entityInformation.getIdAttribute().getName();
+    }
+
+    /* 페이지 요청 종류별 횟수(shallow, deep_seek, deep_rejected)와 offset 분포 */
+    private void countPagination(String type, Pageable pageable) {
+        String repository = getClass().getSimpleName();
+        meterRegistry.counter("querydsl.pagination.requests", "repository", repository, "type", type).increment();
+        meterRegistry.summary("querydsl.pagination.offset", "repository", repository).record(pageable.getOffset());
+    }
 }
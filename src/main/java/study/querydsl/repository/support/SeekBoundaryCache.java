@@ -0,0 +1,47 @@
+package study.querydsl.repository.support;
+
+import lombok.Value;
+import org.springframework.data.domain.Sort;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 페이지의 시작 위치((정렬키, id) 하한)를 기억해 두는 LRU 캐시
+ * 키는 (쿼리 키, 정렬, 페이지 크기, 페이지 번호) 이고, 값은 바로 앞 페이지의 마지막 행의 정렬키와 id 이다.
+ */
+class SeekBoundaryCache {
+
+    private final Map<Key, Boundary> boundaries;
+
+    SeekBoundaryCache(int maxSize) {
+        this.boundaries = new LinkedHashMap<Key, Boundary>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Boundary> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized Boundary get(Key key) {
+        return boundaries.get(key);
+    }
+
+    synchronized void put(Key key, Boundary boundary) {
+        boundaries.put(key, boundary);
+    }
+
+    @Value
+    static class Key {
+        QueryKeys.Key query;
+        Sort sort;
+        int pageSize;
+        int pageNumber;
+    }
+
+    @Value
+    static class Boundary {
+        Object sortValue;
+        Object id;
+    }
+}
@@ -0,0 +1,195 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Operator;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * querydsl 조건(Predicate)을 SQL where 절 문자열과 이름 있는 파라미터(:p0, :p1 ...)로 바꾼다.
+ * JPA 를 거치지 않는 경로(R2DBC 등)에서 MemberJpaRepository.searchPredicate() 같은 검색 조건을 그대로 재사용하기 위한 것이다.
+ *
+ * 경로(member.username 등)는 생성자로 받은 컬럼 이름으로 바꾸고, 상수는 모두 파라미터로 뺀다. (컬렉션 상수는 IN 목록 하나의 파라미터)
+ * 검색 조건에서 쓰는 연산(and, or, not, 비교, in, is null, like, startsWith, contains)만 지원하고 나머지는 IllegalArgumentException.
+ */
+public final class SqlPredicateRenderer {
+
+    private static final char ESCAPE = '!'; // querydsl JPQL 의 like escape 문자와 같다.
+
+    private final Map<Path<?>, String> columns;
+
+    public SqlPredicateRenderer(Map<Path<?>, String> columns) {
+        this.columns = Map.copyOf(columns);
+    }
+
+    /* 조건이 없으면(null, 빈 BooleanBuilder) sql 이 빈 문자열이다. */
+    public Sql render(Predicate predicate) {
+        Sql sql = new Sql();
+        Expression<?> value = unwrap(predicate);
+        if (value != null) {
+            render(value, sql);
+        }
+        return sql;
+    }
+
+    private void render(Expression<?> expr, Sql sql) {
+        expr = unwrap(expr);
+        if (expr instanceof Path) {
+            sql.append(column((Path<?>) expr));
+        } else if (expr instanceof Constant) {
+            sql.append(sql.bind(((Constant<?>) expr).getConstant()));
+        } else if (expr instanceof Operation) {
+            operation((Operation<?>) expr, sql);
+        } else {
+            throw new IllegalArgumentException("unsupported expression: " + expr);
+        }
+    }
+
+    private void operation(Operation<?> op, Sql sql) {
+        Operator operator = op.getOperator();
+        if (operator == Ops.AND || operator == Ops.OR) {
+            sql.append("(");
+            render(op.getArg(0), sql);
+            sql.append(operator == Ops.AND ? " and " : " or ");
+            render(op.getArg(1), sql);
+            sql.append(")");
+        } else if (operator == Ops.NOT) {
+            sql.append("not (");
+            render(op.getArg(0), sql);
+            sql.append(")");
+        } else if (operator == Ops.IS_NULL || operator == Ops.IS_NOT_NULL) {
+            render(op.getArg(0), sql);
+            sql.append(operator == Ops.IS_NULL ? " is null" : " is not null");
+        } else if (operator == Ops.IN) {
+            render(op.getArg(0), sql);
+            sql.append(" in (").append(sql.bind(collection(op.getArg(1)))).append(")");
+        } else if (operator == Ops.BETWEEN) {
+            render(op.getArg(0), sql);
+            sql.append(" between ");
+            render(op.getArg(1), sql);
+            sql.append(" and ");
+            render(op.getArg(2), sql);
+        } else if (operator == Ops.STARTS_WITH || operator == Ops.STRING_CONTAINS || operator == Ops.LIKE) {
+            like(op, sql);
+        } else {
+            String symbol = comparison(operator);
+            render(op.getArg(0), sql);
+            sql.append(symbol);
+            render(op.getArg(1), sql);
+        }
+    }
+
+    private void like(Operation<?> op, Sql sql) {
+        Object term = constant(op.getArg(1));
+        String pattern;
+        if (op.getOperator() == Ops.LIKE) {
+            pattern = term.toString();
+        } else {
+            String escaped = escape(term.toString());
+            pattern = op.getOperator() == Ops.STARTS_WITH ? escaped + "%" : "%" + escaped + "%";
+        }
+        render(op.getArg(0), sql);
+        sql.append(" like ").append(sql.bind(pattern));
+        if (op.getOperator() != Ops.LIKE) {
+            sql.append(" escape '" + ESCAPE + "'");
+        }
+    }
+
+    private static String comparison(Operator operator) {
+        if (operator == Ops.EQ) return " = ";
+        if (operator == Ops.NE) return " <> ";
+        if (operator == Ops.GOE) return " >= ";
+        if (operator == Ops.GT) return " > ";
+        if (operator == Ops.LOE) return " <= ";
+        if (operator == Ops.LT) return " < ";
+        throw new IllegalArgumentException("unsupported operator: " + operator);
+    }
+
+    private String column(Path<?> path) {
+        String column = columns.get(path);
+        if (column == null) {
+            throw new IllegalArgumentException("no column mapped for path: " + path);
+        }
+        return column;
+    }
+
+    private static Collection<?> collection(Expression<?> expr) {
+        Object value = constant(expr);
+        if (!(value instanceof Collection) || ((Collection<?>) value).isEmpty()) {
+            throw new IllegalArgumentException("in() needs a non-empty collection: " + expr);
+        }
+        return (Collection<?>) value;
+    }
+
+    private static Object constant(Expression<?> expr) {
+        if (!(expr instanceof Constant)) {
+            throw new IllegalArgumentException("constant expected: " + expr);
+        }
+        return ((Constant<?>) expr).getConstant();
+    }
+
+    private static String escape(String term) {
+        StringBuilder escaped = new StringBuilder(term.length());
+        for (char c : term.toCharArray()) {
+            if (c == '%' || c == '_' || c == ESCAPE) {
+                escaped.append(ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static Expression<?> unwrap(Expression<?> expr) {
+        return expr instanceof BooleanBuilder ? ((BooleanBuilder) expr).getValue() : expr;
+    }
+
+    /**
+     * 렌더링 결과. 파라미터는 :p0, :p1 ... 순서대로 이름이 붙는다.
+     */
+    public static final class Sql {
+
+        private final StringBuilder sql = new StringBuilder();
+        private final Map<String, Object> params = new LinkedHashMap<>();
+
+        private Sql append(String s) {
+            sql.append(s);
+            return this;
+        }
+
+        private String bind(Object value) {
+            String name = "p" + params.size();
+            params.put(name, value);
+            return ":" + name;
+        }
+
+        public boolean isEmpty() {
+            return sql.length() == 0;
+        }
+
+        /* " where ..." 또는 조건이 없으면 빈 문자열 */
+        public String where() {
+            return isEmpty() ? "" : " where " + sql;
+        }
+
+        public String getSql() {
+            return sql.toString();
+        }
+
+        public Map<String, Object> getParams() {
+            return params;
+        }
+
+        @Override
+        public String toString() {
+            return sql + " " + params;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package study.querydsl.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.StaleStateException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.OptimisticLockException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 낙관적 락(@Version) 충돌이 나면 트랜잭션을 처음부터 다시 실행하는 템플릿
+ *
+ * work 는 매번 새 트랜잭션(새 영속성 컨텍스트)에서 실행되므로, 엔티티를 다시 읽어서 최신 값 위에 변경을 적용한다.
+ * 그래서 work 안에서 엔티티를 읽고 바꿔야 하고, 트랜잭션 밖에서 읽은 값을 그대로 쓰면 안 된다.
+ * 이미 트랜잭션 안에서 호출하면 바깥 트랜잭션은 다시 실행할 수 없으므로 IllegalStateException.
+ *
+ * 재시도 사이에는 [0, min(max-backoff, initial-backoff * 2^(시도-1))) 중 임의의 시간만큼 쉰다. (full jitter)
+ * 같은 행을 두고 충돌한 트랜잭션들이 동시에 다시 시작해서 또 충돌하지 않도록 흩어 놓는다.
+ * max-attempts 번 모두 충돌하면 OptimisticRetryExhaustedException(409). 충돌이 아닌 예외는 바로 던진다.
+ *
+ * 메트릭 (name 태그) : querydsl.retry.conflicts (충돌 수), querydsl.retry.retries (다시 시도한 수), querydsl.retry.giveups (포기한 수)
+ */
+@Component
+public class OptimisticRetry {
+
+    private final MeterRegistry meterRegistry;
+    private final TransactionOperations transaction;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    @Autowired
+    public OptimisticRetry(MeterRegistry meterRegistry, PlatformTransactionManager transactionManager,
+                           @Value("${querydsl.retry.max-attempts:5}") int maxAttempts,
+                           @Value("${querydsl.retry.initial-backoff:PT0.005S}") Duration initialBackoff,
+                           @Value("${querydsl.retry.max-backoff:PT0.2S}") Duration maxBackoff) {
+        this(meterRegistry, new TransactionTemplate(transactionManager), maxAttempts, initialBackoff, maxBackoff);
+    }
+
+    OptimisticRetry(MeterRegistry meterRegistry, TransactionOperations transaction,
+                    int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("max-attempts must be at least 1: " + maxAttempts);
+        }
+        this.meterRegistry = meterRegistry;
+        this.transaction = transaction;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+    }
+
+    /**
+     * work 를 새 트랜잭션에서 실행하고, 커밋까지 성공하면 결과를 반환한다.
+     * @param name 메트릭 태그, 예외 메시지에 쓰는 작업 이름 (member.changeTeam 등)
+     */
+    public <T> T execute(String name, Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException(name + ": optimistic retry must start its own transaction");
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transaction.execute(status -> work.get());
+            } catch (RuntimeException e) {
+                if (!isConflict(e)) {
+                    throw e;
+                }
+                meterRegistry.counter("querydsl.retry.conflicts", "name", name).increment();
+                if (attempt >= maxAttempts) {
+                    meterRegistry.counter("querydsl.retry.giveups", "name", name).increment();
+                    throw new OptimisticRetryExhaustedException(name, attempt, e);
+                }
+                meterRegistry.counter("querydsl.retry.retries", "name", name).increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    public void run(String name, Runnable work) {
+        execute(name, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /* 커밋 시점 충돌은 스프링 예외로 바뀌어 나오고, work 안의 flush 에서 난 충돌은 JPA/하이버네이트 예외 그대로 나온다. */
+    public static boolean isConflict(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockingFailureException || t instanceof OptimisticLockException
+                    || t instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* attempt 번째 실패 뒤 쉬는 시간 (full jitter) */
+    long backoffNanos(int attempt) {
+        long ceiling = initialBackoffNanos << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffNanos) {
+            ceiling = maxBackoffNanos;
+        }
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling);
+    }
+
+    private void backoff(int attempt) {
+        long nanos = backoffNanos(attempt);
+        if (nanos == 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while backing off", e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.retry;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 낙관적 락 충돌로 max-attempts 번 모두 실패한 변경 (409 Conflict)
+ * 같은 엔티티를 바꾸는 요청이 계속 몰리고 있으므로 호출한 쪽이 잠시 뒤 다시 시도해야 한다.
+ */
+public class OptimisticRetryExhaustedException extends ResponseStatusException {
+
+    public OptimisticRetryExhaustedException(String name, int attempts, Throwable cause) {
+        super(HttpStatus.CONFLICT, name + " failed after " + attempts + " attempts due to concurrent updates", cause);
+    }
+}
@@ -0,0 +1,108 @@
+package study.querydsl.search;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.event.HibernateEventListeners;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 커밋된 Member 의 추가/수정/삭제를 받아서 UsernameTrigramIndex 를 갱신한다.
+ * 애플리케이션이 뜰 때 DB 의 전체 회원으로 인덱스를 한 번 만들어 둔다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UsernameIndexEventListener implements PostCommitInsertEventListener,
+        PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private final EntityManagerFactory emf;
+    private final JPAQueryFactory queryFactory;
+    private final UsernameTrigramIndex index;
+
+    @PostConstruct
+    public void register() {
+        HibernateEventListeners.append(emf, this,
+                EventType.POST_COMMIT_INSERT, EventType.POST_COMMIT_UPDATE, EventType.POST_COMMIT_DELETE);
+    }
+
+    /**
+     * DB 의 전체 회원으로 인덱스를 다시 만든다.
+     * JDBC 로 직접 넣은 데이터처럼 하이버네이트 이벤트를 거치지 않은 변경이 있을 때도 호출한다.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndex() {
+        long start = System.currentTimeMillis();
+        List<Tuple> rows = queryFactory
+                .select(member.id, member.username)
+                .from(member)
+                .fetch();
+
+        Map<Long, String> all = new HashMap<>(rows.size() * 2);
+        for (Tuple row : rows) {
+            all.put(row.get(member.id), row.get(member.username));
+        }
+        index.rebuild(all);
+        log.info("username trigram index loaded. members={}, elapsed={}ms", all.size(), System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            Member m = (Member) event.getEntity();
+            index.put(m.getId(), m.getUsername());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Member) {
+            Member m = (Member) event.getEntity();
+            index.put(m.getId(), m.getUsername());
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Member) {
+            index.remove((Long) event.getId());
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return Member.class.equals(persister.getMappedClass());
+    }
+}
@@ -0,0 +1,217 @@
+package study.querydsl.search;
+
+import com.querydsl.core.BooleanBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.UsernameMatchType;
+import study.querydsl.repository.support.ChunkedIdLoader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 회원명 trigram(3글자 조각) 인메모리 인덱스
+ *
+ * like '%x%' 는 인덱스를 탈 수 없어 member 테이블 전체를 스캔한다.
+ * 회원명을 3글자 조각으로 쪼개 [조각 -> 회원 id 목록] 역인덱스를 만들어 두고,
+ * 검색어의 조각들이 모두 들어있는 회원 id만 골라서 querydsl 쿼리에 id in (...) 조건으로 넘긴다.
+ * 접두어(prefix) 검색은 회원명 앞에 시작 표시 문자 2개를 붙여서 만든 조각으로 처리한다.
+ *
+ * 인덱스는 UsernameIndexEventListener 가 커밋된 Member 변경을 받아서 갱신한다.
+ * 인덱스를 쓸 수 없는 경우(로딩 전, 검색어가 너무 짧음, 후보가 너무 많음)에는 like 조건으로 대체한다.
+ * id 목록은 ChunkedIdLoader 처럼 2의 거듭제곱 크기로 채워서 넘긴다. 후보 수마다 다른 쿼리가 되어 쿼리 플랜 캐시가 차는 것을 막는다.
+ */
+@Component
+public class UsernameTrigramIndex {
+
+    private static final char START = '\u0000'; // 회원명에 나올 수 없는 시작 표시 문자
+    private static final int GRAM = 3;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, String> usernames = new HashMap<>();
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+    private final int maxIdFilterSize;
+    private volatile boolean ready;
+
+    public UsernameTrigramIndex(@Value("${querydsl.username-index.max-id-filter:1000}") int maxIdFilterSize) {
+        this.maxIdFilterSize = maxIdFilterSize;
+    }
+
+    /**
+     * MemberSearchCondition 의 username, usernameMatch 를 querydsl 조건으로 변환한다.
+     * PREFIX, CONTAINS 는 인덱스로 찾은 id 목록을 조건으로 걸고, 인덱스가 갱신되기 전의 값이 섞여있을 수 있으므로
+     * like 조건도 함께 건다. (id in 으로 걸러진 행에만 like 를 평가하므로 전체 스캔은 일어나지 않는다.)
+     */
+    public BooleanBuilder usernameMatch(String username, UsernameMatchType matchType) {
+        if (username == null) {
+            return new BooleanBuilder();
+        }
+        if (matchType == null || matchType == UsernameMatchType.EQ) {
+            return new BooleanBuilder(member.username.eq(username));
+        }
+        if (!hasText(username)) {
+            return new BooleanBuilder(); // 빈 검색어의 PREFIX, CONTAINS 는 모든 회원과 일치
+        }
+
+        BooleanBuilder like = matchType == UsernameMatchType.PREFIX
+                ? new BooleanBuilder(member.username.startsWith(username))
+                : new BooleanBuilder(member.username.contains(username));
+
+        List<Long> ids = find(username, matchType);
+        if (ids == null) {
+            return like; // 인덱스를 사용할 수 없으면 like 조건으로 대체
+        }
+        if (ids.isEmpty()) {
+            return new BooleanBuilder(member.id.isNull()); // 일치하는 회원이 없음
+        }
+        return new BooleanBuilder(member.id.in(ChunkedIdLoader.padded(ids))).and(like);
+    }
+
+    /**
+     * 검색어와 일치하는 회원 id 목록을 반환한다.
+     * 인덱스를 사용할 수 없으면 null 을 반환한다.
+     */
+    public List<Long> find(String term, UsernameMatchType matchType) {
+        if (!ready || term == null) {
+            return null;
+        }
+        String key = matchType == UsernameMatchType.PREFIX ? pad(term) : term;
+        if (key.length() < GRAM) {
+            return null; // 3글자 미만의 포함 검색은 조각을 만들 수 없다.
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Set<Long>> lists = new ArrayList<>();
+            for (String gram : grams(key)) {
+                Set<Long> ids = postings.get(gram);
+                if (ids == null) {
+                    return Collections.emptyList();
+                }
+                lists.add(ids);
+            }
+            lists.sort(Comparator.comparingInt(Set::size)); // 가장 작은 목록부터 교집합
+
+            List<Long> result = new ArrayList<>();
+            for (Long id : lists.get(0)) {
+                if (containsAll(lists, id) && matches(usernames.get(id), term, matchType)) {
+                    result.add(id);
+                    if (result.size() > maxIdFilterSize) {
+                        return null; // 후보가 너무 많으면 id in 조건이 like 보다 비싸다.
+                    }
+                }
+            }
+            Collections.sort(result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(Long id, String username) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            if (username != null) {
+                usernames.put(id, username);
+                for (String gram : grams(pad(username))) {
+                    postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 인덱스를 전체 회원 정보로 다시 만든다.
+     */
+    public void rebuild(Map<Long, String> all) {
+        lock.writeLock().lock();
+        try {
+            usernames.clear();
+            postings.clear();
+            all.forEach(this::put);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return usernames.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeInternal(Long id) {
+        String old = usernames.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String gram : grams(pad(old))) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static boolean containsAll(List<Set<Long>> lists, Long id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String username, String term, UsernameMatchType matchType) {
+        if (username == null) {
+            return false;
+        }
+        return matchType == UsernameMatchType.PREFIX ? username.startsWith(term) : username.contains(term);
+    }
+
+    private static String pad(String value) {
+        return "" + START + START + value;
+    }
+
+    private static Set<String> grams(String value) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            grams.add(value.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
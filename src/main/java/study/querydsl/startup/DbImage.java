@@ -0,0 +1,91 @@
+package study.querydsl.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 빠른 시작 : 미리 만들어 둔 H2 이미지(스키마 + 데이터를 담은 gzip 스크립트)로 DB 를 복원한다.
+ *
+ * 기본 시작은 ddl-auto: create 로 테이블을 만들고 InitMember 가 회원을 한 건씩 넣으므로, 데이터가 많을수록 늦게 뜬다.
+ * querydsl.db-image.restore=true 이고 이미지 파일이 있으면
+ * 1. 하이버네이트가 뜨기 전에 RUNSCRIPT 로 스키마와 데이터를 한 번에 복원하고 (HibernatePropertiesCustomizer 빈은 EntityManagerFactory 보다 먼저 만들어진다.)
+ * 2. ddl-auto 를 none 으로 바꿔서 복원한 테이블을 지우지 않게 하고
+ * 3. InitMember 의 데이터 입력을 건너뛴다.
+ *
+ * 이미지는 ./gradlew buildDbImage 로 만든다. (DbImageExporter) 어느 방식으로 떴는지와 걸린 시간은 시작이 끝나면 로그로 남긴다.
+ */
+@Slf4j
+@Component
+public class DbImage implements HibernatePropertiesCustomizer {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean restore;
+    private final Path path;
+
+    private boolean restored;
+    private Duration restoreTime = Duration.ZERO;
+    private Duration seedTime = Duration.ZERO;
+
+    public DbImage(DataSource dataSource,
+                   @Value("${querydsl.db-image.restore:false}") boolean restore,
+                   @Value("${querydsl.db-image.path:build/db-image/querydsl.sql.gz}") Path path) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.restore = restore;
+        this.path = path;
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (!restore) {
+            return;
+        }
+        if (!Files.isRegularFile(path)) {
+            log.info("db image {} not found. falling back to ddl-auto and InitMember", path.toAbsolutePath());
+            return;
+        }
+        long start = System.nanoTime();
+        jdbcTemplate.execute("RUNSCRIPT FROM '" + path.toAbsolutePath() + "' COMPRESSION GZIP");
+        restoreTime = Duration.ofNanos(System.nanoTime() - start);
+        restored = true;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        if (restored) {
+            hibernateProperties.put("hibernate.hbm2ddl.auto", "none"); // 복원한 스키마를 그대로 쓴다.
+        }
+    }
+
+    /* 이미지로 복원했으면 InitMember 는 데이터를 넣지 않는다. */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    public void recordSeedTime(Duration seedTime) {
+        this.seedTime = seedTime;
+    }
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        Duration ready = event.getTimeTaken();
+        if (restored) {
+            log.info("startup mode=image ready in {} ms (restore {} ms from {})",
+                    ready == null ? -1 : ready.toMillis(), restoreTime.toMillis(), path);
+        } else {
+            log.info("startup mode=create ready in {} ms (seed {} ms)",
+                    ready == null ? -1 : ready.toMillis(), seedTime.toMillis());
+        }
+    }
+}
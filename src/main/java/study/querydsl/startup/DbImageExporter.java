@@ -0,0 +1,41 @@
+package study.querydsl.startup;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * DB 이미지 만들기 (./gradlew buildDbImage)
+ * 평소처럼 ddl-auto 와 InitMember 로 DB 를 채운 뒤, SCRIPT DROP TO 로 스키마와 데이터를 gzip 스크립트로 내보내고 종료한다.
+ * DROP 옵션으로 만든 스크립트는 기존 테이블을 지우고 다시 만들기 때문에, 이미 테이블이 있는 DB 에도 복원할 수 있다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("querydsl.db-image.export")
+@RequiredArgsConstructor
+public class DbImageExporter implements ApplicationRunner {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationContext context;
+
+    @Value("${querydsl.db-image.export}")
+    private Path target;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        jdbcTemplate.execute("SCRIPT DROP TO '" + target.toAbsolutePath() + "' COMPRESSION GZIP");
+        log.info("db image written to {} ({} bytes)", target.toAbsolutePath(), Files.size(target));
+        System.exit(SpringApplication.exit(context, () -> 0));
+    }
+}
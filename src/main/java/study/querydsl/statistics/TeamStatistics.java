@@ -0,0 +1,176 @@
+package study.querydsl.statistics;
+
+import lombok.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 팀별 회원 수, 나이 합/최소/최대를 매번 group by 로 계산하지 않고 메모리에 유지하는 집계
+ *
+ * 회원이 추가/삭제되거나 나이, 팀이 바뀔 때 TeamStatisticsEventListener 가 변경분만 반영한다.
+ * 최소/최대 나이는 회원이 빠질 때도 다시 구할 수 있도록 팀마다 [나이 -> 회원 수] 를 정렬해서 들고 있는다.
+ * 벌크 연산처럼 이벤트를 거치지 않는 변경은 TeamStatisticsReconciler 가 주기적으로 다시 계산해서 맞춘다.
+ *
+ * 변경은 DB 에 커밋된 뒤에 반영되므로, 커밋과 반영 사이에 재계산 쿼리가 끼면 재계산 결과에 이미 들어간 변경이 한 번 더 반영된다.
+ * 그래서 변경을 DB 에 쓰기 시작할 때 pending(), 반영(또는 롤백)이 끝나면 completed() 를 호출하고,
+ * 아직 끝나지 않은 변경이 있거나 재계산 도중 변경이 시작되었으면 재계산 결과로 교체하지 않는다.
+ */
+@Component
+public class TeamStatistics {
+
+    private final Map<Long, Aggregate> teams = new HashMap<>();
+    private long modifications; // 재계산 도중에 들어온 변경을 감지하기 위한 변경 횟수
+    private long inFlight;      // DB 에 쓰기 시작했지만 아직 반영되지 않은 변경 수
+
+    public synchronized void join(Long teamId, int age) {
+        if (teamId == null) {
+            return;
+        }
+        teams.computeIfAbsent(teamId, id -> new Aggregate()).add(age);
+        modifications++;
+    }
+
+    public synchronized void leave(Long teamId, int age) {
+        if (teamId == null) {
+            return;
+        }
+        Aggregate aggregate = teams.get(teamId);
+        if (aggregate != null) {
+            aggregate.remove(age);
+            if (aggregate.count == 0) {
+                teams.remove(teamId);
+            }
+        }
+        modifications++;
+    }
+
+    /* 팀 이동, 나이 변경 */
+    public synchronized void change(Long oldTeamId, int oldAge, Long newTeamId, int newAge) {
+        if (Objects.equals(oldTeamId, newTeamId) && oldAge == newAge) {
+            return;
+        }
+        leave(oldTeamId, oldAge);
+        join(newTeamId, newAge);
+    }
+
+    /* 변경을 DB 에 쓰기 시작할 때 (하이버네이트 flush, write-behind 트랜잭션 시작) */
+    public synchronized void pending() {
+        inFlight++;
+        modifications++;
+    }
+
+    /* pending() 한 변경을 반영했거나 롤백되었을 때 */
+    public synchronized void completed() {
+        if (inFlight > 0) {
+            inFlight--;
+        }
+        modifications++;
+    }
+
+    public synchronized Snapshot get(Long teamId) {
+        Aggregate aggregate = teams.get(teamId);
+        return aggregate == null ? null : aggregate.snapshot(teamId);
+    }
+
+    public synchronized List<Snapshot> getAll() {
+        List<Snapshot> result = new ArrayList<>();
+        teams.forEach((teamId, aggregate) -> result.add(aggregate.snapshot(teamId)));
+        result.sort((a, b) -> a.getTeamId().compareTo(b.getTeamId()));
+        return result;
+    }
+
+    public synchronized long getModifications() {
+        return modifications;
+    }
+
+    /**
+     * 처음부터 다시 계산한 집계로 교체한다.
+     * 재계산 도중에 변경이 들어왔거나(expectedModifications 와 다르면) 커밋 후 반영을 기다리는 변경이 있으면 교체하지 않고 null 을 반환한다.
+     * (그 변경이 재계산 쿼리 전에 커밋되었다면 재계산 결과에 이미 들어 있어서, 나중에 반영하면 두 번 세게 된다.)
+     *
+     * @param ageCounts 팀 id -> [나이 -> 회원 수]
+     * @return 기존 집계와 값이 달랐던 팀 id 목록
+     */
+    public synchronized Set<Long> replaceAll(Map<Long, Map<Integer, Long>> ageCounts, long expectedModifications) {
+        if (modifications != expectedModifications || inFlight > 0) {
+            return null;
+        }
+
+        Map<Long, Aggregate> rebuilt = new HashMap<>();
+        ageCounts.forEach((teamId, ages) -> {
+            Aggregate aggregate = new Aggregate();
+            ages.forEach((age, count) -> aggregate.add(age, count));
+            rebuilt.put(teamId, aggregate);
+        });
+
+        Set<Long> drifted = new HashSet<>();
+        Set<Long> teamIds = new HashSet<>(teams.keySet());
+        teamIds.addAll(rebuilt.keySet());
+        for (Long teamId : teamIds) {
+            Aggregate before = teams.get(teamId);
+            Aggregate after = rebuilt.get(teamId);
+            if (before == null || after == null || !before.ages.equals(after.ages)) {
+                drifted.add(teamId);
+            }
+        }
+
+        teams.clear();
+        teams.putAll(rebuilt);
+        return drifted;
+    }
+
+    private static class Aggregate {
+        private long count;
+        private long ageSum;
+        private final TreeMap<Integer, Long> ages = new TreeMap<>();
+
+        void add(int age) {
+            add(age, 1);
+        }
+
+        void add(int age, long n) {
+            count += n;
+            ageSum += (long) age * n;
+            ages.merge(age, n, Long::sum);
+        }
+
+        void remove(int age) {
+            Long n = ages.get(age);
+            if (n == null) {
+                return; // 집계가 어긋난 상태. 재계산 때 바로잡힌다.
+            }
+            count--;
+            ageSum -= age;
+            if (n == 1) {
+                ages.remove(age);
+            } else {
+                ages.put(age, n - 1);
+            }
+        }
+
+        Snapshot snapshot(Long teamId) {
+            return new Snapshot(teamId, count, ageSum, ages.firstKey(), ages.lastKey());
+        }
+    }
+
+    @Value
+    public static class Snapshot {
+        Long teamId;
+        long memberCount;
+        long ageSum;
+        int ageMin;
+        int ageMax;
+
+        public double getAgeAvg() {
+            return memberCount == 0 ? 0 : (double) ageSum / memberCount;
+        }
+    }
+}
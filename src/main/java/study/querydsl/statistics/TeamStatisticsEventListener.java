@@ -0,0 +1,145 @@
+package study.querydsl.statistics;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.event.HibernateEventListeners;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * 커밋된 Member 의 추가/삭제, 나이 변경, 팀 이동(changeTeam)을 TeamStatistics 에 반영한다.
+ * 변경 전 값은 하이버네이트가 넘겨주는 oldState(변경 감지용 스냅샷)에서 꺼낸다.
+ * flush 할 때(POST_INSERT 등, 커밋 전) pending() 을, 커밋 후 반영하거나 롤백되면 completed() 를 호출해서
+ * 커밋되었지만 아직 반영되지 않은 변경이 있는 동안 재계산 결과로 교체하지 않게 한다.
+ */
+@Component
+@RequiredArgsConstructor
+public class TeamStatisticsEventListener implements PostCommitInsertEventListener,
+        PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private final EntityManagerFactory emf;
+    private final TeamStatistics teamStatistics;
+
+    @PostConstruct
+    public void register() {
+        HibernateEventListeners.append(emf, this,
+                EventType.POST_COMMIT_INSERT, EventType.POST_COMMIT_UPDATE, EventType.POST_COMMIT_DELETE);
+        HibernateEventListeners.append(emf, new FlushListener(teamStatistics),
+                EventType.POST_INSERT, EventType.POST_UPDATE, EventType.POST_DELETE);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            try {
+                teamStatistics.join(teamId(event.getPersister(), event.getState()), age(event.getPersister(), event.getState()));
+            } finally {
+                teamStatistics.completed();
+            }
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Member) {
+            try {
+                EntityPersister persister = event.getPersister();
+                if (event.getOldState() == null) {
+                    return; // 변경 전 값을 알 수 없음 (준영속 엔티티 update). 재계산 때 바로잡힌다.
+                }
+                teamStatistics.change(teamId(persister, event.getOldState()), age(persister, event.getOldState()),
+                        teamId(persister, event.getState()), age(persister, event.getState()));
+            } finally {
+                teamStatistics.completed();
+            }
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Member) {
+            try {
+                teamStatistics.leave(teamId(event.getPersister(), event.getDeletedState()), age(event.getPersister(), event.getDeletedState()));
+            } finally {
+                teamStatistics.completed();
+            }
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+        teamStatistics.completed();
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        teamStatistics.completed();
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        teamStatistics.completed();
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return Member.class.equals(persister.getMappedClass());
+    }
+
+    /* flush 시점(커밋 전)의 Member 변경. POST_COMMIT_* 리스너는 POST_* 리스너를 상속하므로 따로 등록한다. */
+    @RequiredArgsConstructor
+    private static class FlushListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+        private final TeamStatistics teamStatistics;
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (event.getEntity() instanceof Member) {
+                teamStatistics.pending();
+            }
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            if (event.getEntity() instanceof Member) {
+                teamStatistics.pending();
+            }
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            if (event.getEntity() instanceof Member) {
+                teamStatistics.pending();
+            }
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return false;
+        }
+    }
+
+    private static int age(EntityPersister persister, Object[] state) {
+        Object age = state[persister.getEntityMetamodel().getPropertyIndex("age")];
+        return age == null ? 0 : (Integer) age;
+    }
+
+    private static Long teamId(EntityPersister persister, Object[] state) {
+        Team team = (Team) state[persister.getEntityMetamodel().getPropertyIndex("team")];
+        return team == null ? null : team.getId(); // 프록시여도 id 조회는 초기화하지 않는다.
+    }
+}
@@ -0,0 +1,91 @@
+package study.querydsl.statistics;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * TeamStatistics 를 DB 에서 처음부터 다시 계산해서 맞추는 작업
+ * 애플리케이션이 뜰 때 한 번, 이후 주기적으로 실행하고, 증분 집계와 값이 달랐던 팀(drift)을 로그로 남긴다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TeamStatisticsReconciler {
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_PAUSE_MILLIS = 20; // 반영을 기다리는 변경이 끝날 시간
+
+    private final JPAQueryFactory queryFactory;
+    private final TeamStatistics teamStatistics;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${querydsl.statistics.reconcile-interval:PT5M}",
+            initialDelayString = "${querydsl.statistics.reconcile-interval:PT5M}")
+    public void scheduled() {
+        reconcile();
+    }
+
+    /**
+     * @return 값이 달랐던 팀 id 목록. 재계산 도중 계속 변경이 들어와서 교체하지 못했으면 null
+     */
+    public Set<Long> reconcile() {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (attempt > 1 && !pause()) {
+                break;
+            }
+            long modifications = teamStatistics.getModifications();
+
+            List<Tuple> rows = queryFactory
+                    .select(member.team.id, member.age, member.count())
+                    .from(member)
+                    .where(member.team.isNotNull())
+                    .groupBy(member.team.id, member.age)
+                    .fetch();
+
+            Map<Long, Map<Integer, Long>> ageCounts = new HashMap<>();
+            for (Tuple row : rows) {
+                ageCounts.computeIfAbsent(row.get(member.team.id), id -> new HashMap<>())
+                        .put(row.get(member.age), row.get(member.count()));
+            }
+
+            Set<Long> drifted = teamStatistics.replaceAll(ageCounts, modifications);
+            if (drifted != null) {
+                if (drifted.isEmpty()) {
+                    log.debug("team statistics reconciled. teams={}", ageCounts.size());
+                } else {
+                    log.warn("team statistics drift detected. teams={}, drifted={}", ageCounts.size(), drifted);
+                }
+                return drifted;
+            }
+        }
+        log.warn("team statistics reconcile skipped. members kept changing during {} attempts", MAX_ATTEMPTS);
+        return null;
+    }
+
+    private static boolean pause() {
+        try {
+            Thread.sleep(RETRY_PAUSE_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
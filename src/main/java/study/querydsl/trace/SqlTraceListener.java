@@ -0,0 +1,216 @@
+package study.querydsl.trace;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.JdbcEventListener;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.jdbc.internal.FormatStyle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 표본 추출 SQL 추적 (org.hibernate.SQL debug 로그, p6spy 로그를 대신한다.)
+ *
+ * p6spy 가 모든 JDBC 실행마다 호출하는 리스너이다. 실행 스레드에서는 기록할지 정하고 큐에 넣는 일만 한다.
+ * - 기록 대상 : slowThreshold 이상 걸린 실행, 실패한 실행은 항상, 나머지는 sampleRate 확률로
+ * - 큐 : 락 없는 큐(ConcurrentLinkedQueue). queueCapacity 를 넘으면 버리고 querydsl.sqltrace.dropped 로 센다.
+ * - 포맷 : 바인딩 값 치환은 기록 대상만 실행 스레드에서 한다. (PreparedStatement 가 재사용되면 값이 바뀌므로)
+ *          줄바꿈 포맷(pretty)과 로그 출력은 백그라운드 스레드(sql-trace-appender)가 한다.
+ *
+ * 오버헤드 예산 : 리스너가 실행 스레드에서 쓴 시간 / SQL 실행 시간 비율을 querydsl.sqltrace.overhead.ratio 로 내보낸다.
+ * 이 비율이 overheadBudget 을 넘으면 표본 비율을 절반씩 줄이고, 예산의 절반 아래로 내려가면 설정값까지 다시 늘린다. (느린 SQL 은 계속 기록)
+ */
+@Slf4j
+@Component
+public class SqlTraceListener extends JdbcEventListener {
+
+    private static final int BUDGET_WINDOW = 1024; // 이 횟수마다 오버헤드 비율을 확인한다.
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final long slowThresholdNanos;
+    private final int queueCapacity;
+    private final double overheadBudget;
+    private final boolean pretty;
+    private final Consumer<String> appender;
+
+    private final Queue<Trace> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder traced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong statements = new AtomicLong();
+    private final LongAdder statementNanos = new LongAdder();
+    private final LongAdder overheadNanos = new LongAdder();
+    private final Thread drainer;
+
+    private volatile double effectiveRate;
+    private volatile boolean running = true;
+    private long windowStatementNanos;
+    private long windowOverheadNanos;
+
+    @Autowired
+    public SqlTraceListener(MeterRegistry meterRegistry,
+                            @Value("${querydsl.sql-trace.enabled:true}") boolean enabled,
+                            @Value("${querydsl.sql-trace.sample-rate:0.01}") double sampleRate,
+                            @Value("${querydsl.sql-trace.slow-threshold:PT0.1S}") Duration slowThreshold,
+                            @Value("${querydsl.sql-trace.queue-capacity:10000}") int queueCapacity,
+                            @Value("${querydsl.sql-trace.overhead-budget:0.01}") double overheadBudget,
+                            @Value("${querydsl.sql-trace.pretty:false}") boolean pretty) {
+        this(meterRegistry, enabled, sampleRate, slowThreshold, queueCapacity, overheadBudget, pretty, log::info);
+        if (enabled) {
+            drainer.start();
+        }
+    }
+
+    SqlTraceListener(MeterRegistry meterRegistry, boolean enabled, double sampleRate, Duration slowThreshold,
+                     int queueCapacity, double overheadBudget, boolean pretty, Consumer<String> appender) {
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.effectiveRate = sampleRate;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.queueCapacity = queueCapacity;
+        this.overheadBudget = overheadBudget;
+        this.pretty = pretty;
+        this.appender = appender;
+
+        FunctionCounter.builder("querydsl.sqltrace.traced", traced, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("querydsl.sqltrace.dropped", dropped, LongAdder::sum).register(meterRegistry);
+        meterRegistry.gauge("querydsl.sqltrace.overhead.ratio", this, SqlTraceListener::overheadRatio);
+        meterRegistry.gauge("querydsl.sqltrace.sample.rate", this, l -> l.effectiveRate);
+        meterRegistry.gauge("querydsl.sqltrace.queue.size", pending);
+
+        this.drainer = new Thread(this::drain, "sql-trace-appender");
+        drainer.setDaemon(true); // 테스트에서는 시작하지 않고 drainOnce() 를 직접 호출한다.
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        if (enabled) {
+            trace(statementInformation::getSqlWithValues, timeElapsedNanos, e);
+        }
+    }
+
+    /* 실행 스레드에서 하는 일 : 기록할지 정하고, 기록할 때만 바인딩 값을 치환해서 큐에 넣는다. */
+    void trace(Supplier<String> sqlWithValues, long timeElapsedNanos, SQLException e) {
+        long start = System.nanoTime();
+        boolean slow = timeElapsedNanos >= slowThresholdNanos;
+        if (slow || e != null || ThreadLocalRandom.current().nextDouble() < effectiveRate) {
+            offer(new Trace(sqlWithValues.get(), timeElapsedNanos, slow,
+                    e == null ? null : e.getMessage(), Thread.currentThread().getName()));
+        }
+        account(timeElapsedNanos, System.nanoTime() - start);
+    }
+
+    private void offer(Trace trace) {
+        if (pending.incrementAndGet() > queueCapacity) {
+            pending.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        queue.offer(trace);
+    }
+
+    private void account(long elapsedNanos, long overhead) {
+        statementNanos.add(elapsedNanos);
+        overheadNanos.add(overhead);
+        if (statements.incrementAndGet() % BUDGET_WINDOW == 0) {
+            adjustRate();
+        }
+    }
+
+    /* 마지막 확인 이후 구간의 오버헤드 비율로 표본 비율을 조정한다. */
+    private synchronized void adjustRate() {
+        long totalStatement = statementNanos.sum();
+        long totalOverhead = overheadNanos.sum();
+        double ratio = (double) (totalOverhead - windowOverheadNanos) / Math.max(1, totalStatement - windowStatementNanos);
+        windowStatementNanos = totalStatement;
+        windowOverheadNanos = totalOverhead;
+
+        if (ratio > overheadBudget) {
+            effectiveRate = effectiveRate / 2;
+            log.warn("sql trace overhead {} exceeds the budget {}. sample rate lowered to {}", ratio, overheadBudget, effectiveRate);
+        } else if (ratio < overheadBudget / 2 && effectiveRate < sampleRate) {
+            effectiveRate = Math.min(sampleRate, Math.max(effectiveRate * 2, sampleRate / 1024));
+        }
+    }
+
+    double overheadRatio() {
+        return (double) overheadNanos.sum() / Math.max(1, statementNanos.sum());
+    }
+
+    double effectiveRate() {
+        return effectiveRate;
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            if (!drainOnce()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+            }
+        }
+    }
+
+    /* 큐에 쌓인 기록을 모두 출력한다. 출력한 것이 없으면 false */
+    boolean drainOnce() {
+        boolean drained = false;
+        Trace trace;
+        while ((trace = queue.poll()) != null) {
+            pending.decrementAndGet();
+            traced.increment();
+            appender.accept(trace.format(pretty));
+            drained = true;
+        }
+        return drained;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        drainer.join(TimeUnit.SECONDS.toMillis(1));
+    }
+
+    static class Trace {
+        final String sql;
+        final long elapsedNanos;
+        final boolean slow;
+        final String error;
+        final String thread;
+
+        Trace(String sql, long elapsedNanos, boolean slow, String error, String thread) {
+            this.sql = sql;
+            this.elapsedNanos = elapsedNanos;
+            this.slow = slow;
+            this.error = error;
+            this.thread = thread;
+        }
+
+        String format(boolean pretty) {
+            StringBuilder line = new StringBuilder()
+                    .append(String.format("%.3fms", elapsedNanos / 1_000_000.0))
+                    .append(slow ? " slow" : " sampled")
+                    .append(" [").append(thread).append("]");
+            if (error != null) {
+                line.append(" error=").append(error);
+            }
+            return line.append(" | ")
+                    .append(pretty ? FormatStyle.BASIC.getFormatter().format(sql) : sql)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package study.querydsl.web;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MemberTeamDto 목록(List, Page, Slice)을 열 단위로 쓰는 컨버터
+ *
+ * 행 단위 JSON 은 행마다 필드 이름 5개를 반복하지만, 열 단위는 필드마다 값 배열 하나를 쓰고 팀 이름은 사전(dictionary) + 코드로 쓴다.
+ * {"rowCount":2, "memberId":[1,2], "username":["member1","member2"], "age":[10,20], "teamId":[1,1],
+ *  "teamName":{"dictionary":["teamA"], "codes":[0,0]}, "page":{...}}
+ * 팀이 없는 회원의 teamId 는 null, 팀 이름 코드는 -1 이다.
+ *
+ * 응답 형식은 Accept 헤더로 고른다. 같은 구조를 JSON, CBOR, Smile 로 쓸 수 있다.
+ * 중간 트리(Map, JsonNode)를 만들지 않고 조회 결과에서 바로 JsonGenerator 로 쓴다.
+ */
+@Component
+public class ColumnarMemberMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final String COLUMNAR_JSON_VALUE = "application/vnd.querydsl.columnar+json";
+    public static final String COLUMNAR_CBOR_VALUE = "application/vnd.querydsl.columnar+cbor";
+    public static final String COLUMNAR_SMILE_VALUE = "application/vnd.querydsl.columnar+smile";
+    public static final String CBOR_VALUE = "application/cbor";                // 행 단위 CBOR (스프링 기본 컨버터)
+    public static final String SMILE_VALUE = "application/x-jackson-smile";    // 행 단위 Smile (스프링 기본 컨버터)
+
+    private final JsonFactory json = new JsonFactory();
+    private final JsonFactory cbor = new CBORFactory();
+    private final JsonFactory smile = new SmileFactory();
+
+    public ColumnarMemberMessageConverter() {
+        super(MediaType.parseMediaType(COLUMNAR_JSON_VALUE),
+                MediaType.parseMediaType(COLUMNAR_CBOR_VALUE),
+                MediaType.parseMediaType(COLUMNAR_SMILE_VALUE));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Iterable.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected boolean canRead(@Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType) {
+        if (mediaType == null || mediaType.isWildcardSubtype() || !supports(clazz) || !canWrite(mediaType)) {
+            return false; // Accept 헤더로 열 단위 형식을 직접 요청했을 때만 쓴다. (기본 응답은 행 단위 JSON)
+        }
+        ResolvableType element = ResolvableType.forType(type != null ? type : clazz).as(Iterable.class).getGeneric(0);
+        return MemberTeamDto.class.equals(element.resolve());
+    }
+
+    @Override
+    protected void writeInternal(Object value, @Nullable Type type, HttpOutputMessage outputMessage) throws IOException {
+        try (JsonGenerator generator = factory(outputMessage.getHeaders().getContentType())
+                .createGenerator(outputMessage.getBody(), JsonEncoding.UTF8)) {
+            write(value, generator);
+        }
+    }
+
+    @Override
+    public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("columnar member format is write-only", inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("columnar member format is write-only", inputMessage);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void write(Object value, JsonGenerator g) throws IOException {
+        List<MemberTeamDto> rows = rows((Iterable<MemberTeamDto>) value);
+
+        g.writeStartObject();
+        g.writeNumberField("rowCount", rows.size());
+
+        g.writeArrayFieldStart("memberId");
+        for (MemberTeamDto row : rows) {
+            writeLong(g, row.getMemberId());
+        }
+        g.writeEndArray();
+
+        g.writeArrayFieldStart("username");
+        for (MemberTeamDto row : rows) {
+            g.writeString(row.getUsername());
+        }
+        g.writeEndArray();
+
+        g.writeArrayFieldStart("age");
+        for (MemberTeamDto row : rows) {
+            g.writeNumber(row.getAge());
+        }
+        g.writeEndArray();
+
+        g.writeArrayFieldStart("teamId");
+        for (MemberTeamDto row : rows) {
+            writeLong(g, row.getTeamId());
+        }
+        g.writeEndArray();
+
+        // 팀 이름은 종류가 적으므로 사전 + 코드로 쓴다.
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (MemberTeamDto row : rows) {
+            if (row.getTeamName() != null) {
+                dictionary.putIfAbsent(row.getTeamName(), dictionary.size());
+            }
+        }
+        g.writeObjectFieldStart("teamName");
+        g.writeArrayFieldStart("dictionary");
+        for (String name : dictionary.keySet()) {
+            g.writeString(name);
+        }
+        g.writeEndArray();
+        g.writeArrayFieldStart("codes");
+        for (MemberTeamDto row : rows) {
+            g.writeNumber(row.getTeamName() == null ? -1 : dictionary.get(row.getTeamName()));
+        }
+        g.writeEndArray();
+        g.writeEndObject();
+
+        if (value instanceof Slice) {
+            writePage((Slice<?>) value, g);
+        }
+        g.writeEndObject();
+    }
+
+    private static void writePage(Slice<?> slice, JsonGenerator g) throws IOException {
+        g.writeObjectFieldStart("page");
+        g.writeNumberField("number", slice.getNumber());
+        g.writeNumberField("size", slice.getSize());
+        g.writeBooleanField("hasNext", slice.hasNext());
+        if (slice instanceof Page) {
+            g.writeNumberField("totalElements", ((Page<?>) slice).getTotalElements());
+            g.writeNumberField("totalPages", ((Page<?>) slice).getTotalPages());
+        }
+        g.writeEndObject();
+    }
+
+    private static void writeLong(JsonGenerator g, Long value) throws IOException {
+        if (value == null) {
+            g.writeNull();
+        } else {
+            g.writeNumber(value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<MemberTeamDto> rows(Iterable<MemberTeamDto> value) {
+        if (value instanceof Slice) {
+            return ((Slice<MemberTeamDto>) value).getContent();
+        }
+        if (value instanceof List) {
+            return (List<MemberTeamDto>) value;
+        }
+        List<MemberTeamDto> rows = new ArrayList<>();
+        value.forEach(rows::add);
+        return rows;
+    }
+
+    private JsonFactory factory(@Nullable MediaType contentType) {
+        if (contentType != null && contentType.getSubtype().endsWith("+cbor")) {
+            return cbor;
+        }
+        if (contentType != null && contentType.getSubtype().endsWith("+smile")) {
+            return smile;
+        }
+        return json;
+    }
+}
@@ -0,0 +1,201 @@
+package study.querydsl.web;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청별 메모리 할당량, CPU 시간 측정
+ *
+ * 요청을 처리한 스레드의 할당 바이트 수와 CPU 시간(com.sun.management.ThreadMXBean)을 요청 전후로 읽어서 차이를
+ * (엔드포인트, 조건 모양) 별 히스토그램에 기록한다.
+ * - querydsl.request.allocated : 할당 바이트 (DistributionSummary)
+ * - querydsl.request.cpu       : CPU 시간 (Timer)
+ * 조건 모양은 값이 있는 요청 파라미터 이름을 정렬한 것이다. (ageGoe,teamName) 엔드포인트마다 maxShapes 개까지만 따로 세고 나머지는 other 로 모은다.
+ *
+ * serverTiming 이 켜져 있으면 Server-Timing 헤더로도 내려준다. 헤더는 본문보다 먼저 나가야 하므로 이때는 응답 본문을 버퍼에 모았다가
+ * 측정이 끝난 뒤에 보낸다. (측정값에는 직렬화가 포함되고, 버퍼 복사는 포함되지 않는다.)
+ * 그래서 스트리밍 응답(Accept: application/x-ndjson, text/event-stream)은 버퍼에 모으지 않고 헤더도 붙이지 않는다.
+ *
+ * 비동기 요청(Callable, DeferredResult, Flux 등)은 첫 디스패치와 비동기 디스패치에서 서블릿 스레드가 쓴 값을 더해서
+ * 마지막 디스패치가 끝날 때 한 번 기록하고, 버퍼에 모은 본문도 그때 보낸다. (ShallowEtagHeaderFilter 와 같은 방식)
+ * 디스패치 사이에 다른 스레드(R2DBC, 작업 executor)가 쓴 값은 포함되지 않는다.
+ * 스레드가 측정을 지원하지 않으면(가상 스레드 등 MXBean 이 -1 을 돌려주는 경우) 기록하지 않는다.
+ * enabled=false 면 요청마다 설정값 하나만 확인하고 그대로 넘긴다.
+ */
+@Component
+public class RequestCostFilter extends OncePerRequestFilter {
+
+    private static final String SERVER_TIMING = "Server-Timing";
+    private static final String OTHER = "other";
+    private static final String COST_ATTRIBUTE = RequestCostFilter.class.getName() + ".COST";
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final double sampleRate;
+    private final boolean serverTiming;
+    private final int maxShapes;
+
+    private final Map<String, Set<String>> shapes = new ConcurrentHashMap<>();
+
+    public RequestCostFilter(MeterRegistry meterRegistry,
+                             @Value("${querydsl.request-cost.enabled:true}") boolean enabled,
+                             @Value("${querydsl.request-cost.sample-rate:1.0}") double sampleRate,
+                             @Value("${querydsl.request-cost.server-timing:false}") boolean serverTiming,
+                             @Value("${querydsl.request-cost.max-shapes:20}") int maxShapes) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled && threads.isThreadAllocatedMemorySupported() && threads.isThreadCpuTimeSupported();
+        this.sampleRate = sampleRate;
+        this.serverTiming = serverTiming;
+        this.maxShapes = maxShapes;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (isAsyncDispatch(request)) {
+            return request.getAttribute(COST_ATTRIBUTE) == null; // 첫 디스패치에서 표본으로 뽑힌 요청만 이어서 잰다.
+        }
+        return !enabled || sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Cost cost;
+        HttpServletResponse responseToUse = response;
+        if (isAsyncDispatch(request)) {
+            cost = (Cost) request.getAttribute(COST_ATTRIBUTE); // 응답은 첫 디스패치에서 감싼 것이 그대로 넘어온다.
+        } else {
+            cost = new Cost(System.nanoTime());
+            if (serverTiming && !isStreaming(request)) {
+                responseToUse = new ContentCachingResponseWrapper(response);
+            }
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long allocatedStart = threads.getThreadAllocatedBytes(threadId);
+        try {
+            filterChain.doFilter(request, responseToUse);
+        } finally {
+            cost.add(threads.getThreadAllocatedBytes(threadId), allocatedStart,
+                    threads.getCurrentThreadCpuTime(), cpuStart);
+
+            if (isAsyncStarted(request)) {
+                request.setAttribute(COST_ATTRIBUTE, cost); // 본문은 아직 없다. 마지막 디스패치에서 기록하고 보낸다.
+            } else {
+                request.removeAttribute(COST_ATTRIBUTE);
+                finish(request, responseToUse, cost);
+            }
+        }
+    }
+
+    private void finish(HttpServletRequest request, HttpServletResponse response, Cost cost) throws IOException {
+        if (cost.supported) {
+            record(request, cost.allocated, cost.cpu);
+        }
+        ContentCachingResponseWrapper buffered = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+        if (buffered != null) {
+            if (cost.supported && !buffered.isCommitted()) {
+                buffered.setHeader(SERVER_TIMING, String.format("app;dur=%.3f, cpu;dur=%.3f, alloc;desc=\"%d bytes\"",
+                        (System.nanoTime() - cost.wallStart) / 1e6, cost.cpu / 1e6, cost.allocated));
+            }
+            buffered.copyBodyToResponse();
+        }
+    }
+
+    private static boolean isStreaming(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept != null && (accept.contains(MediaType.APPLICATION_NDJSON_VALUE) || accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE));
+    }
+
+    private void record(HttpServletRequest request, long allocated, long cpu) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String endpoint = request.getMethod() + " " + (pattern == null ? "unmapped" : pattern);
+        String shape = shape(endpoint, request);
+
+        DistributionSummary.builder("querydsl.request.allocated")
+                .baseUnit("bytes")
+                .tags("endpoint", endpoint, "shape", shape)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(allocated);
+        Timer.builder("querydsl.request.cpu")
+                .tags("endpoint", endpoint, "shape", shape)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(cpu, TimeUnit.NANOSECONDS);
+    }
+
+    /* 값이 있는 파라미터 이름 (page, size, sort 는 모양이 아니므로 뺀다.) 엔드포인트별 태그 수를 제한한다. */
+    private String shape(String endpoint, HttpServletRequest request) {
+        Set<String> names = new TreeSet<>();
+        request.getParameterMap().forEach((name, values) -> {
+            if (values.length > 0 && !values[0].isEmpty() && !name.equals("page") && !name.equals("size") && !name.equals("sort")) {
+                names.add(name);
+            }
+        });
+        String shape = names.isEmpty() ? "none" : String.join(",", names);
+
+        Set<String> known = shapes.computeIfAbsent(endpoint, e -> ConcurrentHashMap.newKeySet());
+        if (known.contains(shape)) {
+            return shape;
+        }
+        synchronized (known) {
+            if (known.size() < maxShapes) {
+                known.add(shape);
+                return shape;
+            }
+        }
+        return OTHER;
+    }
+
+    /* 요청 하나의 누적 측정값. 비동기 요청은 디스패치마다 더한다. */
+    private static class Cost {
+        final long wallStart;
+        long allocated;
+        long cpu;
+        boolean supported = true;
+
+        Cost(long wallStart) {
+            this.wallStart = wallStart;
+        }
+
+        void add(long allocatedEnd, long allocatedStart, long cpuEnd, long cpuStart) {
+            if (allocatedStart < 0 || allocatedEnd < 0 || cpuStart < 0 || cpuEnd < 0) {
+                supported = false;
+                return;
+            }
+            allocated += allocatedEnd - allocatedStart;
+            cpu += cpuEnd - cpuStart;
+        }
+    }
+}
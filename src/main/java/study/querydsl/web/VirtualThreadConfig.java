@@ -0,0 +1,56 @@
+package study.querydsl.web;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 가상 스레드 요청 처리 (querydsl.virtual-threads.enabled=true, JDK 21 이상에서 실행할 때)
+ *
+ * 톰캣 요청 스레드 풀(server.tomcat.threads.max) 대신 요청마다 가상 스레드에서 컨트롤러와 리포지토리 호출을 실행한다.
+ * H2 응답을 기다리는 동안 플랫폼 스레드를 잡고 있지 않으므로, 동시 요청 수는 스레드 풀 크기가 아니라
+ * 커넥션 풀(spring.datasource.hikari.maximum-pool-size)과 Bulkheads 한도로 정해진다.
+ * 커넥션을 얻지 못한 요청은 hikari connection-timeout 만큼 기다린 뒤 실패한다.
+ *
+ * JDK 21 에서는 synchronized 블록 안에서 블로킹하면 가상 스레드가 캐리어 스레드를 붙잡는다.(pinning) H2 드라이버가 그런 경우이므로
+ * -Djdk.tracePinnedThreads=short 로 확인하고, 필요하면 -Djdk.virtualThreadScheduler.parallelism 을 늘린다.
+ * JDK 21 미만에서 켜거나 가상 스레드 executor 를 만들지 못하면 경고만 남기고 기존 스레드 풀을 쓴다.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "querydsl.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private ExecutorService executor;
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (!VirtualThreads.isSupported()) {
+                log.warn("querydsl.virtual-threads.enabled is set but JDK {} has no virtual threads. using the tomcat thread pool", Runtime.version());
+                return;
+            }
+            try {
+                executor = VirtualThreads.newPerTaskExecutor();
+            } catch (IllegalStateException e) {
+                log.warn("querydsl.virtual-threads.enabled is set but virtual threads are unavailable. using the tomcat thread pool", e);
+                return;
+            }
+            protocolHandler.setExecutor(executor);
+            log.info("tomcat requests run on virtual threads");
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
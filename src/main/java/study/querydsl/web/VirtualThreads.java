@@ -0,0 +1,53 @@
+package study.querydsl.web;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 가상 스레드(JDK 21+) 를 리플렉션으로 쓴다.
+ * 프로젝트는 Java 11 로 컴파일하므로 Thread.ofVirtual(), Executors.newVirtualThreadPerTaskExecutor() 를 직접 호출할 수 없다.
+ * JDK 21 이상에서 실행하면 가상 스레드를 쓰고, 그 아래 버전에서는 isSupported() 가 false 이다.
+ * JDK 19, 20 에도 메서드는 있지만 preview API 라서 --enable-preview 없이 호출하면 UnsupportedOperationException 이므로 버전으로 판단한다.
+ */
+public final class VirtualThreads {
+
+    private static final boolean FINAL_API = Runtime.version().feature() >= 21;
+    private static final Method NEW_PER_TASK_EXECUTOR = method(Executors.class, "newVirtualThreadPerTaskExecutor");
+    private static final Method IS_VIRTUAL = method(Thread.class, "isVirtual");
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return FINAL_API && NEW_PER_TASK_EXECUTOR != null;
+    }
+
+    /* 작업마다 새 가상 스레드를 만드는 executor. 지원하지 않는 JDK 면 IllegalStateException */
+    public static ExecutorService newPerTaskExecutor() {
+        if (!isSupported()) {
+            throw new IllegalStateException("virtual threads require JDK 21+ (running " + Runtime.version() + ")");
+        }
+        try {
+            return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("cannot create a virtual thread executor", e);
+        }
+    }
+
+    public static boolean isVirtual(Thread thread) {
+        try {
+            return IS_VIRTUAL != null && (boolean) IS_VIRTUAL.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static Method method(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
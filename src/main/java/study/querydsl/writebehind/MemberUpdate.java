@@ -0,0 +1,37 @@
+package study.querydsl.writebehind;
+
+import lombok.Value;
+
+/**
+ * 회원 한 명에 대한 변경 명령. null 인 필드는 바꾸지 않는다.
+ * 같은 회원의 명령이 여러 개 쌓이면 필드별로 나중 값이 이긴다. (MemberWriteBehind 가 합친다.)
+ */
+@Value
+public class MemberUpdate {
+
+    Long memberId;
+    Integer age;
+    Long teamId;
+
+    public MemberUpdate(Long memberId, Integer age, Long teamId) {
+        if (memberId == null) {
+            throw new IllegalArgumentException("memberId is required");
+        }
+        if (age == null && teamId == null) {
+            throw new IllegalArgumentException("nothing to update for member " + memberId);
+        }
+        this.memberId = memberId;
+        this.age = age;
+        this.teamId = teamId;
+    }
+
+    /* 나이 수정 */
+    public static MemberUpdate age(Long memberId, int age) {
+        return new MemberUpdate(memberId, age, null);
+    }
+
+    /* 팀 이동 (Member.changeTeam 과 같은 변경) */
+    public static MemberUpdate changeTeam(Long memberId, Long teamId) {
+        return new MemberUpdate(memberId, null, teamId);
+    }
+}
@@ -0,0 +1,530 @@
+package study.querydsl.writebehind;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.event.EntityCommittedEvent;
+import study.querydsl.statistics.TeamStatistics;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 회원 나이 수정, 팀 이동(changeTeam) 을 모아서 반영하는 쓰기 버퍼 (write-behind)
+ *
+ * 같은 회원에게 짧은 시간에 여러 번 들어오는 변경을 건마다 트랜잭션 하나, UPDATE 하나로 반영하지 않고,
+ * 회원 id 별로 하나로 합쳐 두었다가(필드별로 나중 값이 이긴다) batch-size 건이 쌓이거나 flush-interval 이 지나면
+ * 트랜잭션 하나에서 JDBC batch update 로 한 번에 반영한다.
+ *
+ * - 버퍼는 id 로 나눈 stripes 개의 (락, HashMap) 이다. 서로 다른 줄무늬의 회원은 동시에 쌓이고, 비울 때는 모든 줄무늬를 잠깐 잠그고 통째로 바꾼다.
+ * - 버퍼에 담을 수 있는 회원 수는 max-pending 이다. (반영 중인 회원 포함) 가득 차면 바로 반영을 요청하고 offer-timeout 만큼 기다린 뒤
+ *   그래도 자리가 없으면 WriteBehindFullException(429)으로 거절한다.
+ * - durability 가 JOURNAL 이면 받은 명령을 먼저 로컬 저널에 쓰고, 시작할 때 남아 있는 저널을 다시 반영한다. (WriteBehindDurability)
+ * - 없는 팀으로 옮기는 명령은 받을 때 UnknownTeamException(400)으로, 없는 회원의 명령은 UnknownMemberException(404)으로 거절한다.
+ *   받은 뒤 반영 전에 회원이 삭제되면 future 를 UnknownMemberException 으로 실패시킨다.
+ * - batch 가 실패하면 회원마다 따로 트랜잭션을 열어 다시 반영한다. 그래서 한 회원의 잘못된 변경이 다른 회원의 변경을 실패시키지 않는다.
+ * - 반영에 실패한 회원은 버퍼에 되돌려서 다음 반영 때 다시 시도하고, max-attempts 번 실패하면 포기하고 future 를 실패로 완료한다.
+ *
+ * JDBC 로 직접 UPDATE 하므로 하이버네이트 이벤트가 발생하지 않는다. 그래서 커밋된 뒤에 TeamStatistics 에 변경을 반영하고
+ * EntityCommittedEvent(Member) 를 발행해서 검색 캐시를 비운다. (변경 전 값은 같은 트랜잭션에서 select ... for update 로 읽는다.)
+ *
+ * 메트릭
+ * - querydsl.write-behind.submitted : 받은 변경 명령 수
+ * - querydsl.write-behind.flushed : 실제로 실행한 UPDATE 행 수
+ * - querydsl.write-behind.coalescing.ratio : submitted / flushed (하나의 UPDATE 로 합쳐진 평균 명령 수)
+ * - querydsl.write-behind.batch.size, querydsl.write-behind.flush : 반영 한 번의 회원 수, 걸린 시간
+ * - querydsl.write-behind.pending : 버퍼에 쌓여 있는 회원 수
+ * - querydsl.write-behind.rejected, querydsl.write-behind.failed : 버퍼가 가득 차서 거절한 명령 수, 포기한 회원 수
+ */
+@Slf4j
+@Component
+public class MemberWriteBehind {
+
+    // version 도 올려서, 같은 회원을 읽어 둔 JPA 트랜잭션이 이 변경을 덮어쓰지 않고 낙관적 락 충돌로 실패하게 한다.
+    private static final String UPDATE_SQL = "update member set age = coalesce(?, age), team_id = coalesce(?, team_id), version = version + 1 where member_id = ?";
+
+    private final JdbcOperations jdbc;
+    private final TransactionOperations transaction;
+    private final TeamStatistics teamStatistics;
+    private final ApplicationEventPublisher publisher;
+
+    private final Stripe[] stripes;
+    private final int batchSize;
+    private final int maxPending;
+    private final Duration flushInterval;
+    private final Duration offerTimeout;
+    private final int maxAttempts;
+    private final long retryAfterSeconds;
+    private final WriteBehindJournal journal; // durability 가 MEMORY 면 null
+    private final ScheduledExecutorService flusher; // 테스트에서는 null (flush() 를 직접 호출)
+
+    private final Semaphore permits;
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Counter submitted;
+    private final Counter flushed;
+    private final Counter rejected;
+    private final Counter failed;
+    private final DistributionSummary batchSizes;
+    private final Timer flushTimer;
+
+    @Autowired
+    public MemberWriteBehind(JdbcOperations jdbc, PlatformTransactionManager transactionManager,
+                             TeamStatistics teamStatistics, ApplicationEventPublisher publisher, MeterRegistry meterRegistry,
+                             @Value("${querydsl.write-behind.stripes:16}") int stripes,
+                             @Value("${querydsl.write-behind.batch-size:500}") int batchSize,
+                             @Value("${querydsl.write-behind.max-pending:10000}") int maxPending,
+                             @Value("${querydsl.write-behind.flush-interval:PT0.2S}") Duration flushInterval,
+                             @Value("${querydsl.write-behind.offer-timeout:PT0.05S}") Duration offerTimeout,
+                             @Value("${querydsl.write-behind.max-attempts:3}") int maxAttempts,
+                             @Value("${querydsl.write-behind.durability:MEMORY}") WriteBehindDurability durability,
+                             @Value("${querydsl.write-behind.journal-dir:build/write-behind}") String journalDir) {
+        this(jdbc, new TransactionTemplate(transactionManager), teamStatistics, publisher, meterRegistry,
+                stripes, batchSize, maxPending, flushInterval, offerTimeout, maxAttempts, durability, Paths.get(journalDir),
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "member-write-behind");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    MemberWriteBehind(JdbcOperations jdbc, TransactionOperations transaction, TeamStatistics teamStatistics,
+                      ApplicationEventPublisher publisher, MeterRegistry meterRegistry,
+                      int stripes, int batchSize, int maxPending, Duration flushInterval, Duration offerTimeout,
+                      int maxAttempts, WriteBehindDurability durability, Path journalDir, ScheduledExecutorService flusher) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("stripes must be a power of two: " + stripes);
+        }
+        this.jdbc = jdbc;
+        this.transaction = transaction;
+        this.teamStatistics = teamStatistics;
+        this.publisher = publisher;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.flushInterval = flushInterval;
+        this.offerTimeout = offerTimeout;
+        this.maxAttempts = maxAttempts;
+        this.retryAfterSeconds = Math.max(1, flushInterval.getSeconds());
+        this.journal = durability == WriteBehindDurability.MEMORY ? null
+                : new WriteBehindJournal(journalDir, durability == WriteBehindDurability.JOURNAL_FSYNC);
+        this.flusher = flusher;
+        this.permits = new Semaphore(maxPending);
+
+        this.submitted = meterRegistry.counter("querydsl.write-behind.submitted");
+        this.flushed = meterRegistry.counter("querydsl.write-behind.flushed");
+        this.rejected = meterRegistry.counter("querydsl.write-behind.rejected");
+        this.failed = meterRegistry.counter("querydsl.write-behind.failed");
+        this.batchSizes = meterRegistry.summary("querydsl.write-behind.batch.size");
+        this.flushTimer = meterRegistry.timer("querydsl.write-behind.flush");
+        meterRegistry.gauge("querydsl.write-behind.pending", buffered);
+        meterRegistry.gauge("querydsl.write-behind.coalescing.ratio", this, MemberWriteBehind::getCoalescingRatio);
+    }
+
+    /* 이전 실행에서 반영하지 못한 저널을 다시 반영하고, 주기적인 반영을 시작한다. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        replay();
+        long interval = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 변경 명령을 버퍼에 넣는다. 같은 회원의 명령이 버퍼에 있으면 하나로 합친다.
+     * 반환하는 future 는 이 변경(또는 합쳐진 변경)이 DB 에 커밋되면 완료된다.
+     * @throws UnknownMemberException  회원이 없을 때
+     * @throws UnknownTeamException    옮길 팀이 없을 때
+     * @throws WriteBehindFullException 버퍼가 가득 차서 offer-timeout 안에 자리가 나지 않을 때
+     */
+    public CompletableFuture<Void> submit(MemberUpdate update) {
+        if (!memberExists(update.getMemberId())) {
+            throw new UnknownMemberException(update.getMemberId());
+        }
+        if (update.getTeamId() != null && !teamExists(update.getTeamId())) {
+            throw new UnknownTeamException(update.getTeamId());
+        }
+        submitted.increment();
+        Stripe stripe = stripeOf(update.getMemberId());
+        boolean hasPermit = false;
+        while (true) {
+            stripe.lock.lock();
+            try {
+                Pending pending = stripe.updates.get(update.getMemberId());
+                if (pending != null || hasPermit || permits.tryAcquire()) {
+                    appendJournal(update);
+                    if (pending != null) {
+                        pending.merge(update);
+                        if (hasPermit) {
+                            permits.release(); // 기다리는 동안 다른 명령이 먼저 자리를 만들었다.
+                        }
+                        return pending.committed;
+                    }
+                    pending = new Pending(update);
+                    stripe.updates.put(update.getMemberId(), pending);
+                    if (buffered.incrementAndGet() >= batchSize) {
+                        requestFlush();
+                    }
+                    return pending.committed;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+
+            requestFlush(); // 가득 찼으면 바로 비워서 자리를 만든다.
+            if (!tryAcquire(offerTimeout)) {
+                rejected.increment();
+                throw new WriteBehindFullException(maxPending, retryAfterSeconds);
+            }
+            hasPermit = true;
+        }
+    }
+
+    /**
+     * 버퍼를 비우고 트랜잭션 하나에서 반영한다. 반영은 한 번에 하나씩만 실행된다.
+     * @return 반영한 회원 수
+     */
+    public synchronized int flush() {
+        Drained drained = drain();
+        if (drained.updates.isEmpty()) {
+            journalDelete(drained.segment);
+            return 0;
+        }
+
+        teamStatistics.pending(); // 커밋부터 통계 반영까지 재계산 결과로 교체되지 않도록
+        try {
+            return flush(drained);
+        } finally {
+            teamStatistics.completed();
+        }
+    }
+
+    private int flush(Drained drained) {
+        List<Long> ids = new ArrayList<>(drained.updates.keySet());
+        Collections.sort(ids); // 행 잠금 순서를 고정해서 다른 트랜잭션과의 교착을 줄인다.
+        long start = System.nanoTime();
+        List<Change> changes = new ArrayList<>();
+        List<Long> committedIds = ids;
+        Set<Long> missing = new HashSet<>(); // 받은 뒤에 삭제된 회원
+        try {
+            changes = transaction.execute(status -> write(ids, drained.updates, missing));
+        } catch (RuntimeException e) {
+            if (ids.size() == 1) {
+                log.warn("member write-behind update of member {} failed", ids.get(0), e);
+                requeue(drained.updates, e);
+                journalDelete(drained.segment); // 되돌린 변경은 지금 조각에 다시 썼다.
+                return 0;
+            }
+            // 한 행 때문에 batch 전체가 되돌려졌을 수 있으므로, 회원마다 따로 반영해서 실패한 회원만 되돌린다.
+            log.warn("member write-behind flush of {} members failed, retrying one by one", ids.size(), e);
+            committedIds = new ArrayList<>();
+            missing.clear();
+            for (Long id : ids) {
+                try {
+                    changes.addAll(transaction.execute(status -> write(List.of(id), drained.updates, missing)));
+                    committedIds.add(id);
+                } catch (RuntimeException rowFailure) {
+                    log.warn("member write-behind update of member {} failed", id, rowFailure);
+                    requeue(Map.of(id, drained.updates.get(id)), rowFailure);
+                }
+            }
+        }
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSizes.record(ids.size());
+        if (committedIds.isEmpty()) {
+            journalDelete(drained.segment);
+            return 0;
+        }
+        flushed.increment(changes.size());
+
+        for (Change change : changes) {
+            teamStatistics.change(change.oldTeamId, change.oldAge, change.newTeamId, change.newAge);
+        }
+        publisher.publishEvent(new EntityCommittedEvent(Member.class));
+
+        for (Long id : committedIds) {
+            permits.release();
+            if (missing.contains(id)) {
+                drained.updates.get(id).committed.completeExceptionally(new UnknownMemberException(id));
+            } else {
+                drained.updates.get(id).committed.complete(null);
+            }
+        }
+        journalDelete(drained.segment);
+        return committedIds.size();
+    }
+
+    public int getPendingCount() {
+        return buffered.get();
+    }
+
+    /* 지금까지 받은 명령 수 / 실행한 UPDATE 행 수 */
+    public double getCoalescingRatio() {
+        double rows = flushed.count();
+        return rows == 0 ? 0 : submitted.count() / rows;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flushQuietly(); // 남은 변경을 마지막으로 반영한다. 실패하면 저널(있으면)에 남는다.
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    void replay() {
+        if (journal == null) {
+            return;
+        }
+        journal.replay(update -> {
+            while (true) {
+                try {
+                    submit(update);
+                    return;
+                } catch (UnknownMemberException | UnknownTeamException e) {
+                    log.warn("dropping journaled update of member {}: {}", update.getMemberId(), e.getReason());
+                    return;
+                } catch (WriteBehindFullException e) {
+                    flush(); // 시작 전이라 반영 스레드가 없으므로 직접 비운다.
+                }
+            }
+        });
+    }
+
+    private boolean memberExists(Long memberId) {
+        return jdbc.queryForObject("select count(*) from member where member_id = ?", Integer.class, memberId) > 0;
+    }
+
+    private boolean teamExists(Long teamId) {
+        return jdbc.queryForObject("select count(*) from team where id = ?", Integer.class, teamId) > 0;
+    }
+
+    private List<Change> write(List<Long> ids, Map<Long, Pending> updates, Set<Long> missing) {
+        Map<Long, Change> before = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            String in = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbc.query("select member_id, age, team_id from member where member_id in (" + in + ") for update",
+                    rs -> {
+                        long memberId = rs.getLong("member_id");
+                        int age = rs.getInt("age");
+                        long teamId = rs.getLong("team_id");
+                        before.put(memberId, new Change(rs.getWasNull() ? null : teamId, age));
+                    },
+                    chunk.toArray());
+        }
+
+        List<Object[]> args = new ArrayList<>(ids.size());
+        List<Change> changes = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Change change = before.get(id);
+            if (change == null) {
+                missing.add(id); // 삭제된 회원
+                continue;
+            }
+            Pending pending = updates.get(id);
+            change.newAge = pending.age != null ? pending.age : change.oldAge;
+            change.newTeamId = pending.teamId != null ? pending.teamId : change.oldTeamId;
+            args.add(new Object[]{pending.age, pending.teamId, id});
+            changes.add(change);
+        }
+        jdbc.batchUpdate(UPDATE_SQL, args); // 같은 SQL 이므로 JDBC batch 하나로 나간다.
+        return changes;
+    }
+
+    /* 실패한 변경을 버퍼에 되돌린다. 그 사이에 들어온 같은 회원의 변경이 있으면 그 값이 이긴다. */
+    private void requeue(Map<Long, Pending> updates, RuntimeException cause) {
+        for (Map.Entry<Long, Pending> entry : updates.entrySet()) {
+            Pending failedUpdate = entry.getValue();
+            if (++failedUpdate.attempts >= maxAttempts) {
+                failed.increment();
+                permits.release();
+                failedUpdate.committed.completeExceptionally(cause);
+                continue;
+            }
+            Stripe stripe = stripeOf(entry.getKey());
+            stripe.lock.lock();
+            try {
+                appendJournal(failedUpdate.toUpdate(entry.getKey()));
+                Pending newer = stripe.updates.get(entry.getKey());
+                if (newer == null) {
+                    stripe.updates.put(entry.getKey(), failedUpdate); // 자리(permit)는 그대로 쓴다.
+                    buffered.incrementAndGet();
+                } else {
+                    newer.mergeOlder(failedUpdate);
+                    permits.release();
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /* 모든 줄무늬를 잠근 상태에서 버퍼를 바꾸고 저널 조각을 넘긴다. 그래서 비운 변경은 모두 넘긴 조각에 있고, 이후 변경은 새 조각에 쓰인다. */
+    private Drained drain() {
+        Map<Long, Pending> all = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+        try {
+            for (Stripe stripe : stripes) {
+                all.putAll(stripe.updates);
+                stripe.updates = new HashMap<>();
+            }
+            buffered.addAndGet(-all.size());
+            return new Drained(all, journal == null ? null : journal.rotate());
+        } finally {
+            for (Stripe stripe : stripes) {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    private void requestFlush() {
+        if (flusher != null && !flusher.isShutdown() && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("member write-behind flush failed", e);
+        }
+    }
+
+    private boolean tryAcquire(Duration timeout) {
+        try {
+            return permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void appendJournal(MemberUpdate update) {
+        if (journal != null) {
+            journal.append(update);
+        }
+    }
+
+    private void journalDelete(Path segment) {
+        if (journal != null) {
+            journal.delete(segment);
+        }
+    }
+
+    private Stripe stripeOf(Long memberId) {
+        int h = Long.hashCode(memberId);
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        Map<Long, Pending> updates = new HashMap<>();
+    }
+
+    /* 한 회원에 대해 합쳐진 변경. 줄무늬 락을 잡은 상태에서만 바꾼다. */
+    private static class Pending {
+        Integer age;
+        Long teamId;
+        int attempts;
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        Pending(MemberUpdate update) {
+            merge(update);
+        }
+
+        void merge(MemberUpdate newer) {
+            if (newer.getAge() != null) {
+                age = newer.getAge();
+            }
+            if (newer.getTeamId() != null) {
+                teamId = newer.getTeamId();
+            }
+        }
+
+        /* 더 오래된 변경은 비어 있는 필드만 채운다. 오래된 변경을 기다리는 쪽은 이 변경이 커밋될 때 함께 완료된다. */
+        void mergeOlder(Pending older) {
+            if (age == null) {
+                age = older.age;
+            }
+            if (teamId == null) {
+                teamId = older.teamId;
+            }
+            committed.whenComplete((v, e) -> {
+                if (e == null) {
+                    older.committed.complete(null);
+                } else {
+                    older.committed.completeExceptionally(e);
+                }
+            });
+        }
+
+        MemberUpdate toUpdate(Long memberId) {
+            return new MemberUpdate(memberId, age, teamId);
+        }
+    }
+
+    private static class Drained {
+        final Map<Long, Pending> updates;
+        final Path segment;
+
+        Drained(Map<Long, Pending> updates, Path segment) {
+            this.updates = updates;
+            this.segment = segment;
+        }
+    }
+
+    private static class Change {
+        final Long oldTeamId;
+        final int oldAge;
+        Long newTeamId;
+        int newAge;
+
+        Change(Long oldTeamId, int oldAge) {
+            this.oldTeamId = oldTeamId;
+            this.oldAge = oldAge;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.writebehind;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 없는 회원의 변경 명령 (404 Not Found)
+ * UPDATE 가 0 건이어도 성공으로 보이지 않도록 받을 때 거절하고, 받은 뒤 삭제된 회원이면 반영할 때 future 를 이 예외로 실패시킨다.
+ */
+public class UnknownMemberException extends ResponseStatusException {
+
+    public UnknownMemberException(Long memberId) {
+        super(HttpStatus.NOT_FOUND, "member " + memberId + " does not exist");
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.writebehind;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 없는 팀으로 옮기는 변경 명령 (400 Bad Request)
+ * 버퍼에 넣은 뒤에 FK 위반으로 실패하면 같은 batch 의 다른 회원 변경까지 되돌려지므로, 받을 때 거절한다.
+ */
+public class UnknownTeamException extends ResponseStatusException {
+
+    public UnknownTeamException(Long teamId) {
+        super(HttpStatus.BAD_REQUEST, "team " + teamId + " does not exist");
+    }
+}
@@ -0,0 +1,11 @@
+package study.querydsl.writebehind;
+
+/**
+ * MemberWriteBehind 가 변경 명령을 받았다고 응답하기 전에 어디까지 남겨두는지
+ * 어느 쪽이든 submit() 이 돌려주는 future 는 DB 에 커밋된 뒤에 완료되므로, 커밋까지 기다려야 하는 호출자는 future 를 기다린다.
+ */
+public enum WriteBehindDurability {
+    MEMORY,        // 메모리 버퍼에만. 프로세스가 죽으면 아직 반영하지 않은 변경은 잃는다.
+    JOURNAL,       // 로컬 저널 파일에 쓴 뒤 (OS 버퍼까지). 프로세스가 죽어도 다음 시작 때 다시 반영한다.
+    JOURNAL_FSYNC  // 저널에 쓰고 fsync 한 뒤. 장비가 꺼져도 남는다. 명령마다 디스크 쓰기를 기다린다.
+}
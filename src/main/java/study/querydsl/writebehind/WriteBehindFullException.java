@@ -0,0 +1,26 @@
+package study.querydsl.writebehind;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 쓰기 버퍼가 가득 차서 받을 수 없는 변경 명령 (429 Too Many Requests)
+ * 반영 속도보다 빠르게 들어오는 변경을 메모리에 계속 쌓지 않고, Retry-After 로 잠시 뒤 다시 보내도록 알린다.
+ */
+public class WriteBehindFullException extends ResponseStatusException {
+
+    private final long retryAfterSeconds;
+
+    public WriteBehindFullException(int maxPending, long retryAfterSeconds) {
+        super(HttpStatus.TOO_MANY_REQUESTS, "member update buffer is full (" + maxPending + " members pending). Retry later.");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getResponseHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return headers;
+    }
+}
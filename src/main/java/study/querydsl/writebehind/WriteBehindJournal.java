@@ -0,0 +1,165 @@
+package study.querydsl.writebehind;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 아직 DB 에 반영하지 않은 변경 명령을 남겨두는 로컬 파일 (한 줄에 "memberId,age,teamId", null 은 빈 값)
+ *
+ * 파일은 조각(segment) 단위로 쓴다. MemberWriteBehind 가 버퍼를 비울 때 rotate() 로 지금 조각을 닫고,
+ * 그 조각의 변경이 커밋되면 delete() 로 지운다. 시작할 때 남아 있는 조각은 반영되지 못한 변경이므로 replay() 로 다시 읽는다.
+ */
+@Slf4j
+class WriteBehindJournal {
+
+    private static final String PREFIX = "members-";
+    private static final String SUFFIX = ".journal";
+
+    private final Path dir;
+    private final boolean fsync;
+    private final List<Path> recovered;
+
+    private long sequence;
+    private Path current;
+    private FileChannel channel;
+
+    WriteBehindJournal(Path dir, boolean fsync) {
+        this.dir = dir;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> files = Files.list(dir)) {
+                this.recovered = files.filter(f -> f.getFileName().toString().startsWith(PREFIX)
+                                && f.getFileName().toString().endsWith(SUFFIX))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open write-behind journal " + dir, e);
+        }
+        for (Path segment : recovered) {
+            sequence = Math.max(sequence, sequenceOf(segment));
+        }
+    }
+
+    synchronized void append(MemberUpdate update) {
+        String line = update.getMemberId() + "," + nullToEmpty(update.getAge()) + "," + nullToEmpty(update.getTeamId()) + "\n";
+        try {
+            if (channel == null) {
+                current = dir.resolve(String.format("%s%019d%s", PREFIX, ++sequence, SUFFIX));
+                channel = FileChannel.open(current, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write to write-behind journal " + current, e);
+        }
+    }
+
+    /* 지금 조각을 닫고 반환한다. 이후 append() 는 새 조각에 쓴다. 쓴 것이 없으면 null */
+    synchronized Path rotate() {
+        if (channel == null) {
+            return null;
+        }
+        Path closed = current;
+        close();
+        return closed;
+    }
+
+    void delete(Path segment) {
+        if (segment == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            log.warn("cannot delete write-behind journal segment {}", segment, e); // 다음 시작 때 한 번 더 반영될 뿐이다. (같은 값으로 덮어쓰기)
+        }
+    }
+
+    /**
+     * 시작 전에 남아 있던 조각의 변경을 순서대로 넘기고, 조각을 지운다.
+     * consumer 는 받은 변경을 새 조각에 다시 써야 한다. (지운 뒤에 죽어도 잃지 않도록)
+     * 마지막 줄이 쓰다 만 줄이면 건너뛴다.
+     */
+    void replay(Consumer<MemberUpdate> consumer) {
+        List<Path> segments = new ArrayList<>(recovered);
+        recovered.clear();
+        for (Path segment : segments) {
+            int count = 0;
+            try {
+                for (String line : Files.readAllLines(segment, StandardCharsets.UTF_8)) {
+                    MemberUpdate update = parse(line);
+                    if (update != null) {
+                        consumer.accept(update);
+                        count++;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("cannot read write-behind journal segment " + segment, e);
+            }
+            log.info("replayed {} member updates from {}", count, segment);
+            delete(segment);
+        }
+    }
+
+    synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("cannot close write-behind journal segment {}", current, e);
+        }
+        channel = null;
+        current = null;
+    }
+
+    private static MemberUpdate parse(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 3) {
+            log.warn("skipping malformed write-behind journal line: {}", line);
+            return null;
+        }
+        try {
+            return new MemberUpdate(Long.valueOf(fields[0]),
+                    fields[1].isEmpty() ? null : Integer.valueOf(fields[1]),
+                    fields[2].isEmpty() ? null : Long.valueOf(fields[2]));
+        } catch (IllegalArgumentException e) {
+            log.warn("skipping malformed write-behind journal line: {}", line);
+            return null;
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String nullToEmpty(Object value) {
+        return value == null ? "" : value.toString();
+    }
+}
@@ -4,6 +4,7 @@ import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.QueryResults;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.FactoryExpression;
 import com.querydsl.core.types.Projections;
 import com.querydsl.core.types.dsl.CaseBuilder;
 import com.querydsl.core.types.dsl.Expressions;
@@ -21,6 +22,7 @@ import study.querydsl.dto.UserDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.Team;
+import study.querydsl.repository.support.DirectProjections;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
@@ -796,6 +798,30 @@ public class QuerydslBasicTest {
         }
     }
 
+    /**
+     * DirectProjections : Projections.bean, constructor 와 사용법은 같지만, 리플렉션 대신 LambdaMetafactory 로 만든 람다로
+     * 생성자와 setter 를 직접 호출한다. 프로젝션은 한 번 만들어 두고 재사용한다.
+     */
+    @Test
+    public void findDtoByDirectProjection() throws Exception {
+        FactoryExpression<MemberDto> memberDto = DirectProjections.constructor(MemberDto.class, member.username, member.age);
+        FactoryExpression<UserDto> userDto = DirectProjections.bean(UserDto.class, member.username.as("name"), member.age);
+
+        List<MemberDto> result = queryFactory
+                .select(memberDto)
+                .from(member)
+                .where(member.username.eq("member1"))
+                .fetch();
+        List<UserDto> users = queryFactory
+                .select(userDto)
+                .from(member)
+                .where(member.username.eq("member1"))
+                .fetch();
+
+        assertThat(result).containsExactly(new MemberDto("member1", 10));
+        assertThat(users).containsExactly(new UserDto("member1", 10));
+    }
+
     /**
      * 동적 쿼리 - BooleanBuilder 사용
      */
@@ -0,0 +1,82 @@
+package study.querydsl.benchmark;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * 벤치마크 테스트 공통 유틸리티
+ * ./gradlew benchmark -Dbenchmark.members=1000000 처럼 실행한다. (일반 test 태스크에서는 제외된다.)
+ */
+public final class BenchmarkSupport {
+
+    public static final long SEED_ID_BASE = 1_000_000_000L; // 하이버네이트 시퀀스와 겹치지 않도록 큰 값부터 id 를 준다.
+    public static final int SEED_TEAMS = 10;
+
+    private BenchmarkSupport() {
+    }
+
+    public static int members(int defaultValue) {
+        return Integer.getInteger("benchmark.members", defaultValue);
+    }
+
+    public static int iterations(int defaultValue) {
+        return Integer.getInteger("benchmark.iterations", defaultValue);
+    }
+
+    /**
+     * 대량의 회원 데이터를 JDBC 로 한 번에 넣는다. (JPA 로 한 건씩 persist 하면 너무 느리다.)
+     * 회원명은 user1, user2 ... 이고, 나이는 0 ~ 99, 팀은 benchTeam1 ~ benchTeam10 에 고르게 나뉜다.
+     * 하이버네이트 이벤트를 거치지 않으므로, 인메모리 인덱스 등은 따로 다시 만들어야 한다.
+     */
+    public static void seedMembers(JdbcTemplate jdbcTemplate, int count) {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.update("insert into team (id, name) select ? + x, concat('benchTeam', x) from system_range(1, ?)",
+                SEED_ID_BASE, SEED_TEAMS);
+        jdbcTemplate.update("insert into member (member_id, username, age, team_id)" +
+                        " select ? + x, concat('user', x), mod(x, 100), ? + 1 + mod(x, ?) from system_range(1, ?)",
+                SEED_ID_BASE, SEED_ID_BASE, SEED_TEAMS, count);
+        System.out.printf("[benchmark] seeded %d members in %dms%n", count, System.currentTimeMillis() - start);
+    }
+
+    public static void deleteSeeded(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("delete from member where member_id > ?", SEED_ID_BASE);
+        jdbcTemplate.update("delete from team where id > ?", SEED_ID_BASE);
+    }
+
+    /**
+     * warmup 횟수만큼 먼저 실행한 뒤 iterations 번 실행 시간을 재서 평균, p50, p99 를 출력한다.
+     * @return 평균 실행 시간(ms)
+     */
+    public static double measure(String name, int warmup, int iterations, Supplier<?> task) {
+        for (int i = 0; i < warmup; i++) {
+            task.get();
+        }
+
+        long[] elapsed = new long[iterations];
+        Object last = null;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            last = task.get();
+            elapsed[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(elapsed);
+
+        double avg = Arrays.stream(elapsed).average().orElse(0) / 1_000_000.0;
+        System.out.printf("[benchmark] %-40s avg=%.3fms p50=%.3fms p99=%.3fms result=%s%n",
+                name, avg,
+                elapsed[iterations / 2] / 1_000_000.0,
+                elapsed[Math.min(iterations - 1, (int) (iterations * 0.99))] / 1_000_000.0,
+                summary(last));
+        return avg;
+    }
+
+    private static String summary(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size() + " rows";
+        }
+        return String.valueOf(result);
+    }
+}
@@ -0,0 +1,59 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.support.CountQuery;
+
+import javax.persistence.EntityManager;
+
+import static study.querydsl.benchmark.BenchmarkSupport.*;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * fetchCount() vs CountQuery 로 만든 count 쿼리
+ * MemberTestRepository.applyPagination 과 같은 content 쿼리 (teamName 조건 없음 -> team 조인이 필요 없음)
+ */
+@Tag("benchmark")
+@SpringBootTest
+class CountQueryBenchmark {
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired JPAQueryFactory queryFactory;
+    @Autowired EntityManager em;
+
+    @BeforeEach
+    public void before() {
+        seedMembers(jdbcTemplate, members(1_000_000));
+    }
+
+    @AfterEach
+    public void after() {
+        deleteSeeded(jdbcTemplate);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void count() throws Exception {
+        int iterations = iterations(20);
+
+        measure("count - fetchCount()", 3, iterations, () -> contentQuery().fetchCount());
+        measure("count - CountQuery.derive()", 3, iterations, () -> CountQuery.derive(em, contentQuery().getMetadata()).fetch());
+    }
+
+    private JPAQuery<Member> contentQuery() {
+        return queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team) // fetch join 이 있으면 fetchCount() 는 실패하므로 일반 left join 으로 비교
+                .where(member.age.goe(20), member.age.loe(80))
+                .orderBy(member.username.asc());
+    }
+}
@@ -0,0 +1,125 @@
+package study.querydsl.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.retry.OptimisticRetry;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static study.querydsl.benchmark.BenchmarkSupport.*;
+
+/**
+ * 같은 회원들을 동시에 바꿀 때 - 낙관적 락(@Version) + 재시도 vs 비관적 락(select ... for update)
+ *
+ * writer 스레드 N 개가 hot-members 명 중 임의의 회원을 임의의 팀으로 옮기고(changeTeam) 나이를 바꾼다.
+ * hot-members 가 작을수록 같은 회원을 두고 충돌이 잦아진다.
+ * - optimistic : OptimisticRetry 로 실행. 충돌하면 jitter 를 준 backoff 뒤 다시 읽어서 적용한다.
+ * - pessimistic : 회원을 PESSIMISTIC_WRITE 로 읽는다. 같은 회원을 바꾸는 트랜잭션은 행 락을 기다리며 순서대로 실행된다.
+ * 방식마다 처리량, 지연 시간 분포, 충돌/재시도/포기 수(querydsl.retry.*)를 출력한다.
+ *
+ * -Dbenchmark.writers=8 -Dbenchmark.hot-members=10,100,10000 -Dbenchmark.duration=PT10S
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "querydsl.cache.enabled=false")
+class OptimisticLockingBenchmark {
+
+    private static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired EntityManager em;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired OptimisticRetry optimisticRetry;
+    @Autowired MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void before() {
+        seedMembers(jdbcTemplate, members(10_000));
+    }
+
+    @AfterEach
+    public void after() {
+        deleteSeeded(jdbcTemplate);
+    }
+
+    @Test
+    public void optimisticVsPessimistic() throws Exception {
+        int writers = Integer.getInteger("benchmark.writers", 8);
+        Duration duration = Duration.parse(System.getProperty("benchmark.duration", "PT10S"));
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+
+        for (String hot : System.getProperty("benchmark.hot-members", "10,100,10000").split(",")) {
+            int hotMembers = Integer.parseInt(hot.trim());
+            String name = "optimistic hot=" + hotMembers;
+            run(name, writers, duration,
+                    () -> optimisticRetry.run(name, () -> moveRandomMember(hotMembers, LockModeType.NONE)));
+            System.out.printf("[benchmark] %-45s conflicts=%.0f retries=%.0f giveups=%.0f%n", name,
+                    count("querydsl.retry.conflicts", name), count("querydsl.retry.retries", name),
+                    count("querydsl.retry.giveups", name));
+
+            run("pessimistic hot=" + hotMembers, writers, duration,
+                    () -> tx.executeWithoutResult(status -> moveRandomMember(hotMembers, LockModeType.PESSIMISTIC_WRITE)));
+        }
+    }
+
+    private void run(String name, int writers, Duration duration, Runnable task) throws InterruptedException {
+        Recorder latency = new Recorder(HIGHEST_NANOS, 3);
+        LongAdder committed = new LongAdder();
+        LongAdder failed = new LongAdder();
+
+        long end = System.nanoTime() + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        for (int i = 0; i < writers; i++) {
+            executor.execute(() -> {
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        task.run();
+                        committed.increment();
+                    } catch (RuntimeException e) {
+                        failed.increment(); // 포기(409) 또는 락 타임아웃
+                    }
+                    latency.recordValue(Math.min(System.nanoTime() - start, HIGHEST_NANOS));
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(duration.toMillis() + 60_000, TimeUnit.MILLISECONDS);
+
+        Histogram h = latency.getIntervalHistogram();
+        double seconds = duration.toNanos() / 1e9;
+        System.out.printf("[benchmark] %-45s %8.1f tx/s p50=%.2fms p99=%.2fms max=%.2fms failed=%d%n",
+                name, committed.sum() / seconds,
+                h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(99) / 1e6, h.getMaxValue() / 1e6, failed.sum());
+    }
+
+    private void moveRandomMember(int hotMembers, LockModeType lockMode) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Member member = em.find(Member.class, SEED_ID_BASE + 1 + random.nextInt(hotMembers), lockMode);
+        Team team = em.getReference(Team.class, SEED_ID_BASE + 1 + random.nextInt(SEED_TEAMS));
+        member.setTeam(team); // changeTeam() 은 팀의 회원 컬렉션 전체를 읽으므로 락 비교에서는 연관관계만 바꾼다.
+        member.setAge(random.nextInt(100));
+    }
+
+    private double count(String meter, String name) {
+        return meterRegistry.counter(meter, "name", name).count();
+    }
+}
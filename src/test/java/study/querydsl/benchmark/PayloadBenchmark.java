@@ -0,0 +1,78 @@
+package study.querydsl.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.web.ColumnarMemberMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static study.querydsl.benchmark.BenchmarkSupport.*;
+
+/**
+ * 회원 검색 결과(MemberTeamDto 목록)의 응답 형식별 크기와 직렬화 시간
+ * 행 단위 JSON/CBOR/Smile (ObjectMapper) 과 열 단위 JSON/CBOR/Smile (ColumnarMemberMessageConverter) 을 비교한다.
+ * 행 수는 benchmark.members 로 바꿀 수 있다. (검색 API 한 페이지 크기 정도가 기본값)
+ */
+@Tag("benchmark")
+class PayloadBenchmark {
+
+    ColumnarMemberMessageConverter converter = new ColumnarMemberMessageConverter();
+
+    @Test
+    public void memberTeamDtoPayload() throws Exception {
+        List<MemberTeamDto> rows = new ArrayList<>();
+        for (int i = 0; i < members(1_000); i++) {
+            rows.add(new MemberTeamDto((long) i, "member" + i, i % 100, (long) (i % SEED_TEAMS), "team" + (i % SEED_TEAMS)));
+        }
+
+        row("row json", rows, new ObjectMapper());
+        row("row cbor", rows, new CBORMapper());
+        row("row smile", rows, new SmileMapper());
+        columnar("columnar json", rows, new JsonFactory());
+        columnar("columnar cbor", rows, new CBORFactory());
+        columnar("columnar smile", rows, new SmileFactory());
+    }
+
+    private static void row(String name, List<MemberTeamDto> rows, ObjectMapper mapper) throws IOException {
+        report(name, rows.size(), mapper.writeValueAsBytes(rows).length,
+                measure(name, 5, iterations(50), () -> {
+                    try {
+                        return mapper.writeValueAsBytes(rows).length;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+    }
+
+    private void columnar(String name, List<MemberTeamDto> rows, JsonFactory factory) {
+        report(name, rows.size(), writeColumnar(rows, factory),
+                measure(name, 5, iterations(50), () -> writeColumnar(rows, factory)));
+    }
+
+    private int writeColumnar(List<MemberTeamDto> rows, JsonFactory factory) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            converter.write(rows, generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.size();
+    }
+
+    private static void report(String name, int rowCount, int bytes, double avgMs) {
+        System.out.printf("[benchmark] %-15s %,9d bytes (%.1f bytes/row), %.3f ms%n",
+                name, bytes, (double) bytes / rowCount, avgMs);
+    }
+}
@@ -0,0 +1,78 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Projections;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.dto.UserDto;
+import study.querydsl.repository.support.DirectProjections;
+
+import java.lang.management.ManagementFactory;
+
+import static study.querydsl.benchmark.BenchmarkSupport.*;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * DTO 프로젝션 방식별 행 생성 비용 (FactoryExpression.newInstance)
+ * 쿼리 실행 비용을 빼고, 결과 행 -> DTO 변환만 비교한다. 행 수는 benchmark.members 로 바꿀 수 있다.
+ */
+@Tag("benchmark")
+class ProjectionBenchmark {
+
+    @Test
+    public void memberTeamDto() throws Exception {
+        Object[][] rows = new Object[members(1_000_000)][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{(long) i, "user" + i, i % 100, (long) (i % 10), "team" + (i % 10)};
+        }
+
+        run("MemberTeamDto - Projections.constructor", rows,
+                Projections.constructor(MemberTeamDto.class, member.id, member.username, member.age, team.id, team.name));
+        run("MemberTeamDto - @QueryProjection", rows,
+                new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name));
+        run("MemberTeamDto - DirectProjections.constructor", rows,
+                DirectProjections.constructor(MemberTeamDto.class, member.id, member.username, member.age, team.id, team.name));
+    }
+
+    @Test
+    public void memberDtoAndUserDto() throws Exception {
+        Object[][] rows = new Object[members(1_000_000)][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{"user" + i, i % 100};
+        }
+
+        run("MemberDto - Projections.bean", rows, Projections.bean(MemberDto.class, member.username, member.age));
+        run("MemberDto - Projections.fields", rows, Projections.fields(MemberDto.class, member.username, member.age));
+        run("MemberDto - @QueryProjection", rows, new QMemberDto(member.username, member.age));
+        run("MemberDto - DirectProjections.bean", rows, DirectProjections.bean(MemberDto.class, member.username, member.age));
+        run("MemberDto - DirectProjections.constructor", rows, DirectProjections.constructor(MemberDto.class, member.username, member.age));
+        run("UserDto - Projections.constructor", rows, Projections.constructor(UserDto.class, member.username, member.age));
+        run("UserDto - DirectProjections.constructor", rows, DirectProjections.constructor(UserDto.class, member.username, member.age));
+    }
+
+    private static void run(String name, Object[][] rows, FactoryExpression<?> projection) {
+        double avgMs = measure(name, 3, iterations(10), () -> convert(rows, projection));
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        convert(rows, projection);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        System.out.printf("[benchmark] %-40s %.1fM rows/s, %.1f bytes/row%n",
+                name, rows.length / avgMs / 1000.0, (double) allocated / rows.length);
+    }
+
+    private static Object convert(Object[][] rows, FactoryExpression<?> projection) {
+        Object last = null;
+        for (Object[] row : rows) {
+            last = projection.newInstance(row);
+        }
+        return last;
+    }
+}
@@ -0,0 +1,118 @@
+package study.querydsl.benchmark;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import reactor.core.publisher.Flux;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.ReactiveMemberRepository;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static study.querydsl.benchmark.BenchmarkSupport.*;
+
+/**
+ * 서블릿 + JPA 검색 vs R2DBC 검색
+ * 1. 한 건씩 순서대로 실행했을 때의 응답 시간
+ * 2. 동시에 많은 검색을 실행했을 때의 처리량과 사용한 스레드 수.
+ *    JPA 는 실행 중인 검색마다 스레드가 하나씩 필요하므로 서블릿 스레드 풀처럼 고정 크기 풀(benchmark.threads)에서 실행하고,
+ *    R2DBC 는 스레드 없이 동시에 benchmark.concurrency 개를 구독한다. 두 경로 모두 DB 커넥션 풀은 10개이다.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "querydsl.cache.enabled=false") // 같은 조건을 반복 조회하므로 결과 캐시를 끄고 측정
+class ReactiveSearchBenchmark {
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired MemberJpaRepository memberJpaRepository;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ReactiveMemberRepository reactiveMemberRepository;
+
+    @BeforeEach
+    public void before() {
+        seedMembers(jdbcTemplate, members(100_000));
+    }
+
+    @AfterEach
+    public void after() {
+        deleteSeeded(jdbcTemplate);
+    }
+
+    @Test
+    public void latency() throws Exception {
+        int iterations = iterations(50);
+        MemberSearchCondition condition = condition();
+        PageRequest pageRequest = PageRequest.of(3, 20);
+
+        measure("search - jpa", 5, iterations, () -> memberJpaRepository.search(condition, 1000));
+        measure("search - r2dbc", 5, iterations, () -> reactiveMemberRepository.search(condition, 1000).collectList().block());
+        measure("searchPage - jpa", 5, iterations, () -> memberRepository.searchPage(condition, pageRequest));
+        measure("searchPage - r2dbc", 5, iterations, () -> reactiveMemberRepository.searchPage(condition, pageRequest).block());
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        int requests = Integer.getInteger("benchmark.requests", 2000);
+        int threads = Integer.getInteger("benchmark.threads", 50);
+        int concurrency = Integer.getInteger("benchmark.concurrency", 500);
+        MemberSearchCondition condition = condition();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        // 워밍업
+        memberJpaRepository.search(condition, 100);
+        reactiveMemberRepository.search(condition, 100).collectList().block();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            threadMXBean.resetPeakThreadCount();
+            int baseThreads = threadMXBean.getThreadCount();
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                futures.add(executor.submit(() -> memberJpaRepository.search(condition, 100)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            report("concurrent - jpa (" + threads + " threads)", requests, System.nanoTime() - start,
+                    threadMXBean.getPeakThreadCount() - baseThreads);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        threadMXBean.resetPeakThreadCount();
+        int baseThreads = threadMXBean.getThreadCount();
+        long start = System.nanoTime();
+        Flux.range(0, requests)
+                .flatMap(i -> reactiveMemberRepository.search(condition, 100).collectList(), concurrency)
+                .blockLast();
+        report("concurrent - r2dbc (" + concurrency + " in flight)", requests, System.nanoTime() - start,
+                threadMXBean.getPeakThreadCount() - baseThreads);
+    }
+
+    private static void report(String name, int requests, long elapsedNanos, int extraThreads) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        System.out.printf("[benchmark] %-40s %d requests in %.2fs (%.0f req/s), extra threads=%d%n",
+                name, requests, seconds, requests / seconds, extraThreads);
+    }
+
+    private static MemberSearchCondition condition() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("benchTeam3");
+        condition.setAgeGoe(20);
+        condition.setAgeLoe(40);
+        return condition;
+    }
+}
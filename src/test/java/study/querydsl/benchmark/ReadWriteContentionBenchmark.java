@@ -0,0 +1,208 @@
+package study.querydsl.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.CountMode;
+import study.querydsl.retry.OptimisticRetry;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockTimeoutException;
+import javax.persistence.PessimisticLockException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static study.querydsl.benchmark.BenchmarkSupport.*;
+
+/**
+ * 팀 이동/나이 변경(짧은 쓰기 트랜잭션)과 페이지 검색이 동시에 일어날 때의 경합
+ *
+ * writer 스레드 N 개가 임의의 회원을 임의의 팀으로 옮기고(changeTeam) 나이를 바꾸고, reader 스레드 M 개가 searchPage 를 반복한다.
+ * H2 LOCK_MODE 와 트랜잭션 격리 수준 조합마다 처리량, 지연 시간 분포(p50 ~ max), 락 타임아웃, 데드락/직렬화 실패, 낙관적 락 충돌, 재시도 횟수를 출력한다.
+ * 실패한 시도에 쓴 시간(재시도 전까지)을 락 대기 시간으로 본다.
+ *
+ * -Dbenchmark.writers=4 -Dbenchmark.readers=8 -Dbenchmark.duration=PT10S
+ * -Dbenchmark.isolations=READ_COMMITTED,REPEATABLE_READ,SERIALIZABLE -Dbenchmark.lock-modes=3,0
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "querydsl.cache.enabled=false") // 쓰기마다 캐시가 비워지므로 캐시 없이 측정
+class ReadWriteContentionBenchmark {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired EntityManager em;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired MemberRepository memberRepository;
+
+    int members;
+
+    @BeforeEach
+    public void before() {
+        members = members(10_000); // changeTeam 은 팀의 members 컬렉션을 읽으므로 팀당 회원 수가 쓰기 비용이 된다.
+        seedMembers(jdbcTemplate, members);
+    }
+
+    @AfterEach
+    public void after() {
+        jdbcTemplate.execute("SET LOCK_MODE 3");
+        deleteSeeded(jdbcTemplate);
+    }
+
+    @Test
+    public void changeTeamWhileSearching() throws Exception {
+        int writers = Integer.getInteger("benchmark.writers", 4);
+        int readers = Integer.getInteger("benchmark.readers", 8);
+        Duration duration = Duration.parse(System.getProperty("benchmark.duration", "PT10S"));
+
+        for (String lockMode : System.getProperty("benchmark.lock-modes", "3,0").split(",")) {
+            for (String isolation : System.getProperty("benchmark.isolations", "READ_COMMITTED,REPEATABLE_READ,SERIALIZABLE").split(",")) {
+                jdbcTemplate.execute("SET LOCK_MODE " + lockMode.trim());
+                run("lock_mode=" + lockMode.trim() + " " + isolation.trim(), isolationLevel(isolation.trim()), writers, readers, duration);
+            }
+        }
+    }
+
+    private void run(String name, int isolation, int writers, int readers, Duration duration) throws InterruptedException {
+        Stats write = new Stats();
+        Stats read = new Stats();
+
+        TransactionTemplate writeTx = new TransactionTemplate(transactionManager);
+        writeTx.setIsolationLevel(isolation);
+        TransactionTemplate readTx = new TransactionTemplate(transactionManager);
+        readTx.setIsolationLevel(isolation);
+        readTx.setReadOnly(true);
+
+        long end = System.nanoTime() + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        for (int i = 0; i < writers; i++) {
+            executor.execute(() -> loop(end, write, () -> writeTx.executeWithoutResult(status -> moveRandomMember())));
+        }
+        for (int i = 0; i < readers; i++) {
+            executor.execute(() -> loop(end, read, () -> readTx.executeWithoutResult(status -> searchRandomPage())));
+        }
+        executor.shutdown();
+        executor.awaitTermination(duration.toMillis() + 60_000, TimeUnit.MILLISECONDS);
+
+        double seconds = duration.toNanos() / 1e9;
+        write.print(name + " write", seconds);
+        read.print(name + " read", seconds);
+    }
+
+    private void moveRandomMember() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Member member = em.find(Member.class, SEED_ID_BASE + 1 + random.nextInt(members));
+        Team team = em.find(Team.class, SEED_ID_BASE + 1 + random.nextInt(SEED_TEAMS));
+        member.changeTeam(team);
+        member.setAge(random.nextInt(100));
+    }
+
+    private void searchRandomPage() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("benchTeam" + (1 + random.nextInt(SEED_TEAMS)));
+        condition.setAgeGoe(random.nextInt(50));
+        memberRepository.searchPage(condition, PageRequest.of(random.nextInt(5), 20), CountMode.EXACT);
+    }
+
+    /* end 까지 task 를 반복한다. 락 타임아웃, 데드락/직렬화 실패, 낙관적 락(@Version) 충돌은 MAX_ATTEMPTS 번까지 다시 시도한다. 지연 시간은 재시도를 포함한다. */
+    private void loop(long end, Stats stats, Runnable task) {
+        while (System.nanoTime() < end) {
+            long start = System.nanoTime();
+            for (int attempt = 1; ; attempt++) {
+                long attemptStart = System.nanoTime();
+                try {
+                    task.run();
+                    stats.committed.increment();
+                    break;
+                } catch (RuntimeException e) {
+                    String kind = classify(e);
+                    stats.waitNanos.add(System.nanoTime() - attemptStart);
+                    (kind.equals("deadlock") ? stats.deadlocks : kind.equals("lock-timeout") ? stats.lockTimeouts
+                            : kind.equals("conflict") ? stats.conflicts : stats.errors).increment();
+                    if (kind.equals("error") || attempt == MAX_ATTEMPTS) {
+                        stats.failed.increment();
+                        break;
+                    }
+                    stats.retries.increment();
+                }
+            }
+            stats.latency.recordValue(Math.min(System.nanoTime() - start, HIGHEST_NANOS));
+        }
+    }
+
+    /* H2 : 40001 데드락/직렬화 실패, 50200 락 타임아웃 */
+    private static String classify(Throwable e) {
+        if (OptimisticRetry.isConflict(e)) {
+            return "conflict";
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                SQLException sql = (SQLException) t;
+                if ("40001".equals(sql.getSQLState())) {
+                    return "deadlock";
+                }
+                if (sql.getErrorCode() == 50200) {
+                    return "lock-timeout";
+                }
+            }
+            if (t instanceof PessimisticLockException || t instanceof LockTimeoutException) {
+                return "lock-timeout";
+            }
+        }
+        return "error";
+    }
+
+    private static int isolationLevel(String name) {
+        switch (name) {
+            case "READ_UNCOMMITTED": return TransactionDefinition.ISOLATION_READ_UNCOMMITTED;
+            case "READ_COMMITTED": return TransactionDefinition.ISOLATION_READ_COMMITTED;
+            case "REPEATABLE_READ": return TransactionDefinition.ISOLATION_REPEATABLE_READ;
+            case "SERIALIZABLE": return TransactionDefinition.ISOLATION_SERIALIZABLE;
+            default: throw new IllegalArgumentException("unknown isolation level: " + name);
+        }
+    }
+
+    private static class Stats {
+        final Recorder latency = new Recorder(HIGHEST_NANOS, 3);
+        final LongAdder committed = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder lockTimeouts = new LongAdder();
+        final LongAdder deadlocks = new LongAdder();
+        final LongAdder conflicts = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+
+        void print(String name, double seconds) {
+            Histogram h = latency.getIntervalHistogram();
+            System.out.printf("[benchmark] %-45s %8.1f tx/s p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms"
+                            + " lock-timeouts=%d deadlocks=%d conflicts=%d retries=%d failed=%d errors=%d lock-wait=%dms%n",
+                    name, committed.sum() / seconds,
+                    h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(99) / 1e6,
+                    h.getValueAtPercentile(99.9) / 1e6, h.getMaxValue() / 1e6,
+                    lockTimeouts.sum(), deadlocks.sum(), conflicts.sum(), retries.sum(), failed.sum(), errors.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package study.querydsl.benchmark;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.CountMode;
+
+import static study.querydsl.benchmark.BenchmarkSupport.*;
+
+/**
+ * 페이지 하나를 가져올 때 - Page(content + count 쿼리) vs Slice(content 쿼리만, limit + 1)
+ * 조건이 넓을수록 count 쿼리가 읽는 행이 많아지므로 차이가 커진다.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "querydsl.cache.enabled=false") // 같은 조건을 반복 조회하므로 결과 캐시를 끄고 측정
+class SlicePaginationBenchmark {
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired MemberRepository memberRepository;
+
+    @BeforeEach
+    public void before() {
+        seedMembers(jdbcTemplate, members(1_000_000));
+    }
+
+    @AfterEach
+    public void after() {
+        deleteSeeded(jdbcTemplate);
+    }
+
+    @Test
+    public void page() throws Exception {
+        int iterations = iterations(20);
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+        condition.setAgeLoe(80);
+        PageRequest pageRequest = PageRequest.of(10, 20);
+
+        measure("page - searchPage(count=exact)", 3, iterations, () -> memberRepository.searchPage(condition, pageRequest, CountMode.EXACT));
+        measure("page - searchSlice()", 3, iterations, () -> memberRepository.searchSlice(condition, pageRequest));
+    }
+}
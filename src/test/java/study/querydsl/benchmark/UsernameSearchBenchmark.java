@@ -0,0 +1,78 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.dto.UsernameMatchType;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.search.UsernameIndexEventListener;
+
+import static study.querydsl.benchmark.BenchmarkSupport.*;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 회원명 접두어/포함 검색 - like 전체 스캔 vs trigram 인덱스로 찾은 id 조건
+ * 기본 1,000,000명의 회원으로 측정한다.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "querydsl.cache.enabled=false") // 같은 조건을 반복 조회하므로 결과 캐시를 끄고 측정
+class UsernameSearchBenchmark {
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired JPAQueryFactory queryFactory;
+    @Autowired MemberRepository memberRepository;
+    @Autowired UsernameIndexEventListener usernameIndexEventListener;
+
+    @BeforeEach
+    public void before() {
+        seedMembers(jdbcTemplate, members(1_000_000));
+        usernameIndexEventListener.loadIndex(); // JDBC 로 넣은 데이터는 이벤트를 거치지 않으므로 인덱스를 다시 만든다.
+    }
+
+    @AfterEach
+    public void after() {
+        deleteSeeded(jdbcTemplate);
+        usernameIndexEventListener.loadIndex();
+    }
+
+    @Test
+    public void prefix() throws Exception {
+        int iterations = iterations(20);
+
+        measure("prefix - like 'user12345%'", 3, iterations, () -> likeQuery(member.username.startsWith("user12345")));
+        measure("prefix - trigram index", 3, iterations, () -> memberRepository.search(condition("user12345", UsernameMatchType.PREFIX)));
+    }
+
+    @Test
+    public void contains() throws Exception {
+        int iterations = iterations(20);
+
+        measure("contains - like '%er98765%'", 3, iterations, () -> likeQuery(member.username.contains("er98765")));
+        measure("contains - trigram index", 3, iterations, () -> memberRepository.search(condition("er98765", UsernameMatchType.CONTAINS)));
+    }
+
+    private Object likeQuery(Predicate predicate) {
+        return queryFactory
+                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(predicate)
+                .fetch();
+    }
+
+    private MemberSearchCondition condition(String username, UsernameMatchType matchType) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setUsernameMatch(matchType);
+        return condition;
+    }
+}
@@ -0,0 +1,69 @@
+package study.querydsl.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.event.EntityCommittedEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryResultCacheTest {
+
+    static final Duration TTL = Duration.ofMinutes(1);
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    QueryResultCache cache;
+    AtomicInteger loads = new AtomicInteger();
+    Supplier<List<String>> loader = () -> List.of("row" + loads.incrementAndGet());
+
+    @BeforeEach
+    public void before() {
+        cache = new QueryResultCache(meterRegistry, true, 2, 100, 200);
+    }
+
+    @Test
+    public void hit() throws Exception {
+        List<String> first = cache.get("member.search", "cond", Set.of(Member.class), TTL, loader);
+        List<String> second = cache.get("member.search", "cond", Set.of(Member.class), TTL, loader);
+
+        assertThat(second).isSameAs(first);
+        assertThat(loads).hasValue(1);
+        assertThat(meterRegistry.get("querydsl.cache.hit.ratio").gauge().value()).isEqualTo(0.5);
+    }
+
+    /**
+     * 의존하는 엔티티 타입의 변경이 커밋된 결과만 지워진다.
+     */
+    @Test
+    public void invalidatedByEntityType() throws Exception {
+        cache.get("member.search", "member", Set.of(Member.class, Team.class), TTL, loader);
+        cache.get("team.search", "team", Set.of(Team.class), TTL, loader);
+
+        cache.onEntityCommitted(new EntityCommittedEvent(Member.class));
+
+        assertThat(cache.get("member.search", "member", Set.of(Member.class, Team.class), TTL, loader)).containsExactly("row3");
+        assertThat(cache.get("team.search", "team", Set.of(Team.class), TTL, loader)).containsExactly("row2");
+    }
+
+    /**
+     * 결과 수가 max-entries 를 넘으면 가장 오래 쓰이지 않은 결과부터 버린다.
+     */
+    @Test
+    public void lruEviction() throws Exception {
+        cache.get("member.search", "a", Set.of(Member.class), TTL, loader);
+        cache.get("member.search", "b", Set.of(Member.class), TTL, loader);
+        cache.get("member.search", "a", Set.of(Member.class), TTL, loader);  // a 를 최근에 사용
+        cache.get("member.search", "c", Set.of(Member.class), TTL, loader);  // b 가 밀려난다.
+
+        assertThat(cache.get("member.search", "a", Set.of(Member.class), TTL, loader)).containsExactly("row1");
+        assertThat(cache.get("member.search", "b", Set.of(Member.class), TTL, loader)).containsExactly("row4");
+    }
+}
@@ -0,0 +1,56 @@
+package study.querydsl.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchResultCacheTest {
+
+    SearchResultCache cache = new SearchResultCache(
+            new QueryResultCache(new SimpleMeterRegistry(), true, 100, 1000, 200), Duration.ofMinutes(1));
+
+    /**
+     * toString() 이 같은 문자열이 되는 서로 다른 조건은 서로의 결과를 받지 않는다.
+     */
+    @Test
+    public void conditionsWithSameToStringDoNotCollide() throws Exception {
+        MemberSearchCondition first = new MemberSearchCondition();
+        first.setUsername("a, usernameMatch=null, teamName=b");
+        first.setTeamName("c");
+        MemberSearchCondition second = new MemberSearchCondition();
+        second.setUsername("a");
+        second.setTeamName("b, usernameMatch=null, teamName=c");
+        assertThat(first.toString()).isEqualTo(second.toString());
+
+        cache.list("search", first, () -> List.of(dto("first")));
+        List<MemberTeamDto> result = cache.list("search", second, () -> List.of(dto("second")));
+
+        assertThat(result).extracting("username").containsExactly("second");
+    }
+
+    /**
+     * 같은 값의 조건은 다른 인스턴스여도 캐시된 결과를 받는다.
+     */
+    @Test
+    public void equalConditionsHit() throws Exception {
+        MemberSearchCondition first = new MemberSearchCondition();
+        first.setTeamName("teamA");
+        MemberSearchCondition second = new MemberSearchCondition();
+        second.setTeamName("teamA");
+
+        cache.list("search", first, () -> List.of(dto("first")));
+        List<MemberTeamDto> result = cache.list("search", second, () -> List.of(dto("second")));
+
+        assertThat(result).extracting("username").containsExactly("first");
+    }
+
+    private static MemberTeamDto dto(String username) {
+        return new MemberTeamDto(1L, username, 10, 1L, "teamA");
+    }
+}
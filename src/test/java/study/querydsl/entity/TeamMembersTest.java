@@ -0,0 +1,99 @@
+package study.querydsl.entity;
+
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Team.members 는 extra lazy 이므로 회원 수를 세거나 changeTeam 할 때 팀의 회원 컬렉션을 읽지 않는다.
+ * 컬렉션을 읽은 횟수는 하이버네이트 통계(collection load count)로 확인한다.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class TeamMembersTest {
+
+    @Autowired EntityManager em;
+    @Autowired EntityManagerFactory emf;
+
+    Statistics statistics;
+    Long teamAId;
+    Long teamBId;
+    Long memberId;
+
+    @BeforeEach
+    public void before() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 50; i++) {
+            em.persist(new Member("member" + i, i, i % 2 == 0 ? teamA : teamB));
+        }
+        em.flush();
+        em.clear();
+
+        teamAId = teamA.getId();
+        teamBId = teamB.getId();
+        memberId = teamA.getMembers().get(0).getId();
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void changeTeamDoesNotLoadMembers() throws Exception {
+        Member member = em.find(Member.class, memberId);
+        Team teamB = em.find(Team.class, teamBId);
+
+        member.changeTeam(teamB);
+        em.flush();
+
+        assertThat(Hibernate.isInitialized(teamB.getMembers())).isFalse();
+        assertThat(Hibernate.isInitialized(member.getTeam())).isTrue();
+        assertThat(statistics.getCollectionLoadCount()).isZero();
+
+        em.clear();
+        assertThat(em.find(Member.class, memberId).getTeam().getId()).isEqualTo(teamBId);
+    }
+
+    @Test
+    public void memberCountDoesNotLoadMembers() throws Exception {
+        Team teamA = em.find(Team.class, teamAId);
+        Team teamB = em.find(Team.class, teamBId);
+        Member member = em.find(Member.class, memberId);
+
+        member.changeTeam(teamB); // 초기화 전의 add 는 쌓아두었다가, 그 컬렉션의 count 전에 flush 된다.
+
+        assertThat(teamB.getMemberCount()).isEqualTo(26);
+        assertThat(teamA.getMemberCount()).isEqualTo(24);
+        assertThat(Hibernate.isInitialized(teamA.getMembers())).isFalse();
+        assertThat(Hibernate.isInitialized(teamB.getMembers())).isFalse();
+        assertThat(statistics.getCollectionLoadCount()).isZero();
+    }
+
+    /**
+     * 이미 읽은 컬렉션은 changeTeam 때 이전 팀에서 빠지고 새 팀에 들어간다.
+     */
+    @Test
+    public void initializedCollectionsStayInSync() throws Exception {
+        Team teamA = em.find(Team.class, teamAId);
+        Team teamB = em.find(Team.class, teamBId);
+        Member member = em.find(Member.class, memberId);
+        Hibernate.initialize(teamA.getMembers());
+        Hibernate.initialize(teamB.getMembers());
+
+        member.changeTeam(teamB);
+
+        assertThat(teamA.getMembers()).hasSize(24).doesNotContain(member);
+        assertThat(teamB.getMembers()).hasSize(26).contains(member);
+    }
+}
@@ -0,0 +1,46 @@
+package study.querydsl.guard;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BulkheadsTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    Bulkheads bulkheads = new Bulkheads(meterRegistry, Map.of("v1/members", 1), 16, Duration.ZERO, Duration.ofSeconds(2));
+
+    /**
+     * 한도가 찬 엔드포인트는 429 로 거절하고, 다른 엔드포인트와 한도가 풀린 뒤의 요청은 실행된다.
+     */
+    @Test
+    public void rejectWhenSaturated() {
+        String result = bulkheads.call("v1/members", () -> {
+            assertThatThrownBy(() -> bulkheads.call("v1/members", () -> "second"))
+                    .isInstanceOfSatisfying(BulkheadFullException.class, e -> {
+                        assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+                        assertThat(e.getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+                    });
+            return bulkheads.call("v2/members", () -> "other endpoint");
+        });
+
+        assertThat(result).isEqualTo("other endpoint");
+        assertThat(bulkheads.call("v1/members", () -> "after release")).isEqualTo("after release");
+        assertThat(meterRegistry.counter("querydsl.guard.rejected", "endpoint", "v1/members", "reason", "bulkhead").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void releaseOnFailure() {
+        assertThatThrownBy(() -> bulkheads.call("v1/members", () -> {
+            throw new IllegalStateException("query failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(bulkheads.call("v1/members", () -> "ok")).isEqualTo("ok");
+    }
+}
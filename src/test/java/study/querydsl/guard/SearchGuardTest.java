@@ -0,0 +1,39 @@
+package study.querydsl.guard;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import study.querydsl.repository.support.CountEstimate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchGuardTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void limit() {
+        SearchGuard guard = new SearchGuard(meterRegistry, 100, 1000, UnselectivePolicy.TRUNCATE);
+
+        assertThat(guard.limit("v1/members", null)).isEqualTo(100);
+        assertThat(guard.limit("v1/members", 500)).isEqualTo(500);
+        assertThatThrownBy(() -> guard.limit("v1/members", 1001)).hasMessageContaining("limit must be between 1 and 1000");
+        assertThatThrownBy(() -> guard.limit("v1/members", 0)).hasMessageContaining("limit must be between 1 and 1000");
+    }
+
+    /**
+     * REJECT 정책은 오차 범위를 빼고도 limit 을 넘는 검색만 거절한다. TRUNCATE 정책은 추정하지 않는다.
+     */
+    @Test
+    public void cost() {
+        SearchGuard reject = new SearchGuard(meterRegistry, 100, 1000, UnselectivePolicy.REJECT);
+        reject.checkCost("v1/members", 100, () -> new CountEstimate(150, 60, CountEstimate.Source.SAMPLE));
+        assertThatThrownBy(() -> reject.checkCost("v1/members", 100, () -> new CountEstimate(150, 10, CountEstimate.Source.SAMPLE)))
+                .isInstanceOf(UnselectiveSearchException.class);
+
+        SearchGuard truncate = new SearchGuard(meterRegistry, 100, 1000, UnselectivePolicy.TRUNCATE);
+        truncate.checkCost("v1/members", 100, () -> {
+            throw new AssertionError("TRUNCATE must not estimate");
+        });
+    }
+}
@@ -0,0 +1,103 @@
+package study.querydsl.prefetch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionOperations;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.event.EntityCommittedEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PagePrefetcherTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    PagePrefetcher prefetcher;
+    List<Integer> loaded = new CopyOnWriteArrayList<>();
+    Function<Pageable, String> loader = pageable -> {
+        loaded.add(pageable.getPageNumber());
+        return "page" + pageable.getPageNumber();
+    };
+
+    @BeforeEach
+    public void before() {
+        prefetcher = new PagePrefetcher(TransactionOperations.withoutTransaction(), meterRegistry, true, 16, 100, 1, 1, Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    public void after() {
+        prefetcher.shutdown();
+    }
+
+    /**
+     * 0, 1 페이지를 연속으로 요청하면 2 페이지를 미리 가져오고, 2 페이지 요청은 미리 가져온 결과로 응답한다.
+     */
+    @Test
+    public void sequentialHit() throws Exception {
+        prefetcher.fetch("members", "cond", PageRequest.of(0, 10), loader);
+        prefetcher.fetch("members", "cond", PageRequest.of(1, 10), loader);
+        String page2 = prefetcher.fetch("members", "cond", PageRequest.of(2, 10), loader);
+
+        assertThat(page2).isEqualTo("page2");
+        assertThat(loaded).startsWith(0, 1, 2).containsOnlyOnce(2);
+        assertThat(meterRegistry.counter("querydsl.prefetch.requests", "result", "hit").count()).isEqualTo(1);
+    }
+
+    /**
+     * 엔티티 변경이 커밋되면 미리 가져온 페이지를 버리고 다시 조회한다.
+     */
+    @Test
+    public void invalidatedOnCommit() throws Exception {
+        prefetcher.fetch("members", "cond", PageRequest.of(0, 10), loader);
+        prefetcher.fetch("members", "cond", PageRequest.of(1, 10), loader);
+
+        prefetcher.onEntityCommitted(new EntityCommittedEvent(Member.class));
+        prefetcher.fetch("members", "cond", PageRequest.of(2, 10), loader);
+
+        assertThat(meterRegistry.counter("querydsl.prefetch.requests", "result", "hit").count()).isZero();
+        assertThat(meterRegistry.counter("querydsl.prefetch.discarded", "reason", "invalidated").count()).isEqualTo(1);
+    }
+
+    /**
+     * toString() 이 같은 문자열이 되는 서로 다른 조건은 서로의 미리 가져온 페이지를 받지 않는다.
+     */
+    @Test
+    public void conditionsWithSameToStringDoNotShare() throws Exception {
+        MemberSearchCondition first = new MemberSearchCondition();
+        first.setUsername("x, usernameMatch=null, teamName=teamA");
+        first.setTeamName("teamB");
+        MemberSearchCondition second = new MemberSearchCondition();
+        second.setUsername("x");
+        second.setTeamName("teamA, usernameMatch=null, teamName=teamB");
+        assertThat(first.toString()).isEqualTo(second.toString());
+
+        Function<Pageable, String> firstLoader = pageable -> "first" + pageable.getPageNumber();
+        Function<Pageable, String> secondLoader = pageable -> "second" + pageable.getPageNumber();
+        prefetcher.fetch("members", first, PageRequest.of(0, 10), firstLoader);
+        prefetcher.fetch("members", first, PageRequest.of(1, 10), firstLoader); // first 의 2 페이지를 미리 가져온다.
+
+        assertThat(prefetcher.fetch("members", second, PageRequest.of(2, 10), secondLoader)).isEqualTo("second2");
+    }
+
+    /**
+     * 순서대로가 아닌 요청이나 max-page-size 를 넘는 페이지는 미리 가져오지 않는다.
+     */
+    @Test
+    public void randomAccessNotPrefetched() throws Exception {
+        prefetcher.fetch("members", "cond", PageRequest.of(0, 10), loader);
+        prefetcher.fetch("members", "cond", PageRequest.of(5, 10), loader);
+        prefetcher.fetch("members", "cond", PageRequest.of(0, 500), loader);
+        prefetcher.fetch("members", "cond", PageRequest.of(1, 500), loader);
+
+        assertThat(loaded).containsExactly(0, 5, 0, 1);
+    }
+}
@@ -9,6 +9,9 @@ import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.writebehind.MemberUpdate;
+import study.querydsl.writebehind.UnknownMemberException;
+import study.querydsl.writebehind.UnknownTeamException;
 
 import javax.persistence.EntityManager;
 
@@ -72,4 +75,106 @@ class MemberJpaRepositoryTest {
         }
 //        assertThat(result).extracting("username").containsExactly("member4");
     }
-}
\ No newline at end of file
+
+    /**
+     * 여러 조건을 한 번에 조회해도 조건별 search() 결과와 같아야 한다.
+     */
+    @Test
+    public void searchBatchTest() throws Exception{
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+
+        MemberSearchCondition teamBCondition = new MemberSearchCondition();
+        teamBCondition.setTeamName("teamB");
+        MemberSearchCondition ageCondition = new MemberSearchCondition();
+        ageCondition.setAgeGoe(20);
+        ageCondition.setAgeLoe(30);
+        MemberSearchCondition noMatch = new MemberSearchCondition();
+        noMatch.setUsername("member9");
+
+        List<List<MemberTeamDto>> result = memberJpaRepository.searchBatch(List.of(teamBCondition, ageCondition, noMatch), 10);
+
+        assertThat(result).hasSize(3);
+        assertThat(result.get(0)).extracting("username").containsExactlyInAnyOrder("member3", "member4");
+        assertThat(result.get(1)).extracting("username").containsExactlyInAnyOrder("member2", "member3");
+        assertThat(result.get(2)).isEmpty();
+
+        // 조건마다 limit + 1 건까지만 담는다. (limit 건보다 많다는 것을 알 수 있게)
+        MemberSearchCondition everyone = new MemberSearchCondition();
+        everyone.setAgeGoe(0);
+        List<List<MemberTeamDto>> limited = memberJpaRepository.searchBatch(List.of(everyone, teamBCondition), 1);
+        assertThat(limited.get(0)).hasSize(2);
+        assertThat(limited.get(1)).hasSize(2);
+    }
+
+    /**
+     * 많이 맞는 조건이 쿼리 전체 상한을 다 써도, 적게 맞는 조건의 결과가 덜 찬 채로 완전한 것처럼 보이지 않는다.
+     */
+    @Test
+    public void searchBatchCapPerCondition() throws Exception{
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 1; i <= 8; i++) {
+            em.persist(new Member("member" + i, i * 10, teamA));
+        }
+        em.persist(new Member("member9", 90, teamB)); // 가장 나중에 저장되어 상한 안에 들어오지 않는다.
+        em.persist(new Member("member10", 100, teamB));
+
+        MemberSearchCondition everyone = new MemberSearchCondition();
+        everyone.setAgeGoe(0);
+        MemberSearchCondition teamBCondition = new MemberSearchCondition();
+        teamBCondition.setTeamName("teamB");
+
+        List<List<MemberTeamDto>> result = memberJpaRepository.searchBatch(List.of(everyone, teamBCondition), 1);
+
+        assertThat(result.get(0)).hasSize(2); // limit + 1 건 : 잘림
+        assertThat(result.get(1)).extracting("username").containsExactlyInAnyOrder("member9", "member10");
+    }
+
+    @Test
+    public void updateTest() throws Exception{
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        Member member1 = new Member("member1", 10, teamA);
+        em.persist(member1);
+
+        memberJpaRepository.update(new MemberUpdate(member1.getId(), 11, teamB.getId()));
+        em.flush();
+        em.clear();
+
+        Member findMember = em.find(Member.class, member1.getId());
+        assertThat(findMember.getAge()).isEqualTo(11);
+        assertThat(findMember.getTeam().getName()).isEqualTo("teamB");
+        assertThat(findMember.getVersion()).isEqualTo(1);
+        assertThatThrownBy(() -> memberJpaRepository.update(MemberUpdate.age(-1L, 20))).isInstanceOf(UnknownMemberException.class);
+        assertThatThrownBy(() -> memberJpaRepository.update(MemberUpdate.changeTeam(member1.getId(), -1L))).isInstanceOf(UnknownTeamException.class);
+    }
+
+    @Test
+    public void findAllByIdsTest() throws Exception{
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30, teamA);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+
+        List<Long> ids = List.of(member3.getId(), member1.getId(), -1L, member2.getId()); // -1 은 없는 id
+
+        assertThat(memberJpaRepository.findAllByIds(ids)).containsExactly(member3, member1, member2);
+        assertThat(memberJpaRepository.findAllTeamDtoByIds(ids)).extracting("username").containsExactly("member3", "member1", "member2");
+    }
+}
@@ -11,6 +11,9 @@ import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.Team;
+import study.querydsl.repository.support.CountEstimate;
+import study.querydsl.repository.support.CountMode;
+import study.querydsl.repository.support.EstimatedPage;
 
 import javax.persistence.EntityManager;
 import java.util.List;
@@ -103,6 +106,38 @@ class MemberRepositoryTest {
         assertThat(result.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
     }
 
+    /**
+     * count 방식별 페이징
+     * NONE 은 count 쿼리 없이 다음 페이지가 있는지만 알려주고, 테이블이 표본 크기보다 작으면 APPROX 도 정확히 센다.
+     */
+    @Test
+    public void searchPageCountModeTest() throws Exception{
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 1; i <= 5; i++) {
+            em.persist(new Member("member" + i, i * 10, teamA));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+        PageRequest pageRequest = PageRequest.of(0, 2);
+
+        EstimatedPage<MemberTeamDto> none = (EstimatedPage<MemberTeamDto>) memberRepository.searchPage(condition, pageRequest, CountMode.NONE);
+        EstimatedPage<MemberTeamDto> approx = (EstimatedPage<MemberTeamDto>) memberRepository.searchPage(condition, pageRequest, CountMode.APPROX);
+        EstimatedPage<MemberTeamDto> exact = (EstimatedPage<MemberTeamDto>) memberRepository.searchPage(condition, pageRequest, CountMode.EXACT);
+
+        assertThat(none.getContent()).extracting("username").containsExactly("member2", "member3");
+        assertThat(none.hasNext()).isTrue();
+        assertThat(none.getCountEstimate().getSource()).isEqualTo(CountEstimate.Source.LOWER_BOUND);
+        assertThat(approx.getCountEstimate()).isEqualTo(CountEstimate.exact(4));
+        assertThat(exact.getTotalElements()).isEqualTo(4);
+
+        // 마지막 페이지를 지나친 빈 페이지는 세지 않았으므로 정확한 건수라고 하지 않는다.
+        EstimatedPage<MemberTeamDto> pastEnd = (EstimatedPage<MemberTeamDto>) memberRepository.searchPage(condition, PageRequest.of(5, 2), CountMode.NONE);
+        assertThat(pastEnd.getContent()).isEmpty();
+        assertThat(pastEnd.getCountEstimate().getSource()).isEqualTo(CountEstimate.Source.LOWER_BOUND);
+    }
+
     /**
      * 스프링데이터JPA의 QuerydslPredicateExecutor의 한계점.
      * 조인X (묵시적 조인은 가능하지만 left join이 불가능하다.)
@@ -0,0 +1,145 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.DeepOffsetException;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "querydsl.pagination.max-offset=1") // offset 1 까지만 일반 페이징
+@Transactional
+class MemberTestRepositoryTest {
+
+    @Autowired EntityManager em;
+    @Autowired MemberTestRepository memberTestRepository;
+
+    MemberSearchCondition condition = new MemberSearchCondition();
+
+    @BeforeEach
+    public void before() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+
+        condition.setAgeGoe(10);
+        condition.setAgeLoe(40);
+    }
+
+    /**
+     * 페이지를 순서대로 넘기면, offset 이 최대값을 넘는 페이지는 직전 페이지의 마지막 행 다음부터 seek 으로 가져온다.
+     */
+    @Test
+    public void deepOffsetSeek() throws Exception {
+        Sort sort = Sort.by(Sort.Direction.DESC, "age");
+
+        Page<Member> page0 = memberTestRepository.applyPagination(condition, PageRequest.of(0, 2, sort));
+        Page<Member> page1 = memberTestRepository.applyPagination(condition, PageRequest.of(1, 2, sort)); // offset 2 -> seek
+
+        assertThat(page0.getContent()).extracting("username").containsExactly("member4", "member3");
+        assertThat(page1.getContent()).extracting("username").containsExactly("member2", "member1");
+        assertThat(page1.getTotalElements()).isEqualTo(4);  // count 쿼리에는 seek 조건이 들어가지 않는다.
+    }
+
+    /**
+     * 경계는 다음 페이지가 최대 offset 을 넘는 페이지에서만 기록하므로, 얕은 페이지를 거쳐 깊은 페이지까지 이어서 넘길 수 있다.
+     */
+    @Test
+    public void boundaryRecordedBeforeDeepPage() throws Exception {
+        Sort sort = Sort.by(Sort.Direction.ASC, "age");
+
+        Page<Member> page0 = memberTestRepository.applyPagination(condition, PageRequest.of(0, 1, sort)); // 다음 페이지도 얕은 페이지
+        Page<Member> page1 = memberTestRepository.applyPagination(condition, PageRequest.of(1, 1, sort)); // 다음 페이지의 경계 기록
+        Page<Member> page2 = memberTestRepository.applyPagination(condition, PageRequest.of(2, 1, sort)); // offset 2 -> seek
+        Page<Member> page3 = memberTestRepository.applyPagination(condition, PageRequest.of(3, 1, sort));
+
+        assertThat(page0.getContent()).extracting("username").containsExactly("member1");
+        assertThat(page1.getContent()).extracting("username").containsExactly("member2");
+        assertThat(page2.getContent()).extracting("username").containsExactly("member3");
+        assertThat(page3.getContent()).extracting("username").containsExactly("member4");
+    }
+
+    /**
+     * 정렬키가 같은 행이 있어도 얕은 페이지와 seek 페이지가 같은 정렬(정렬키, id)을 쓰므로 겹치거나 빠지는 행이 없다.
+     */
+    @Test
+    public void tiedSortKeysAcrossDeepOffset() throws Exception {
+        Team teamC = new Team("teamC");
+        em.persist(teamC);
+        em.persist(new Member("member5", 20, teamC));
+        em.persist(new Member("member6", 20, teamC));
+        Sort sort = Sort.by(Sort.Direction.ASC, "age");
+
+        List<String> usernames = new ArrayList<>();
+        for (int page = 0; page < 6; page++) {
+            for (Member member : memberTestRepository.applyPagination(condition, PageRequest.of(page, 1, sort))) {
+                usernames.add(member.getUsername());
+            }
+        }
+
+        assertThat(usernames).containsExactlyInAnyOrder("member1", "member2", "member5", "member6", "member3", "member4");
+    }
+
+    /**
+     * seek 경계는 조건 값까지 같은 쿼리끼리만 쓴다. 모양만 같은 다른 조건의 경계로 깊은 페이지를 조회하지 않는다.
+     */
+    @Test
+    public void boundaryNotSharedBetweenConditions() throws Exception {
+        Sort sort = Sort.by(Sort.Direction.ASC, "age");
+        MemberSearchCondition teamA = new MemberSearchCondition();
+        teamA.setTeamName("teamA");
+        MemberSearchCondition teamB = new MemberSearchCondition();
+        teamB.setTeamName("teamB");
+
+        memberTestRepository.applyPagination(teamA, PageRequest.of(0, 1, sort)); // teamA 의 1 페이지 경계 기록
+        memberTestRepository.applyPagination(teamA, PageRequest.of(1, 1, sort)); // teamA 의 2 페이지 경계 기록
+
+        assertThatThrownBy(() -> memberTestRepository.applyPagination(teamB, PageRequest.of(2, 1, sort)))
+                .isInstanceOf(DeepOffsetException.class);
+    }
+
+    /**
+     * 직전 페이지를 조회한 적 없이 바로 깊은 페이지를 요청하면 거절한다.
+     */
+    @Test
+    public void deepOffsetRejected() throws Exception {
+        assertThatThrownBy(() -> memberTestRepository.applyPagination(condition, PageRequest.of(5, 1, Sort.by("username"))))
+                .isInstanceOf(DeepOffsetException.class);
+    }
+
+    /**
+     * Slice 는 한 건 더 조회해서 다음 페이지 여부를 판단하고, 반환하는 content 는 페이지 크기만큼만 담는다.
+     */
+    @Test
+    public void slice() throws Exception {
+        Sort sort = Sort.by(Sort.Direction.ASC, "age");
+
+        Slice<Member> first = memberTestRepository.applySlicing(condition, PageRequest.of(0, 3, sort));
+        Slice<Member> last = memberTestRepository.applySlicing(condition, PageRequest.of(0, 4, sort));
+
+        assertThat(first.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
+        assertThat(first.hasNext()).isTrue();
+        assertThat(last.getContent()).hasSize(4);
+        assertThat(last.hasNext()).isFalse();
+    }
+}
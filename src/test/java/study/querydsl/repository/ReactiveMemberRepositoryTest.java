@@ -0,0 +1,108 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.UsernameMatchType;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.benchmark.BenchmarkSupport.deleteSeeded;
+import static study.querydsl.benchmark.BenchmarkSupport.seedMembers;
+
+/**
+ * R2DBC 검색이 JPA 검색과 같은 결과를 주는지 확인한다.
+ * R2DBC 는 커밋된 데이터만 보므로 @Transactional 없이 JDBC 로 넣고 지운다.
+ */
+@SpringBootTest(properties = "querydsl.cache.enabled=false")
+class ReactiveMemberRepositoryTest {
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired ReactiveMemberRepository reactiveMemberRepository;
+    @Autowired MemberJpaRepository memberJpaRepository;
+    @Autowired MemberRepository memberRepository;
+
+    @BeforeEach
+    public void before() {
+        seedMembers(jdbcTemplate, 300); // user1 ~ user300, 나이 0 ~ 99, benchTeam1 ~ benchTeam10
+    }
+
+    @AfterEach
+    public void after() {
+        deleteSeeded(jdbcTemplate);
+    }
+
+    @Test
+    public void sameResultAsJpaSearch() throws Exception {
+        for (MemberSearchCondition condition : List.of(
+                condition(null, null, "benchTeam3", 20, 60),
+                condition("user12", UsernameMatchType.EQ, null, null, null),
+                condition("user1", UsernameMatchType.PREFIX, null, null, 50),
+                condition("ser2", UsernameMatchType.CONTAINS, "benchTeam1", null, null),
+                condition("nobody", UsernameMatchType.EQ, null, null, null))) {
+
+            List<MemberTeamDto> reactive = reactiveMemberRepository.search(condition).collectList().block();
+
+            assertThat(sorted(reactive)).isEqualTo(sorted(memberJpaRepository.search(condition)));
+        }
+    }
+
+    @Test
+    public void limit() throws Exception {
+        List<MemberTeamDto> result = reactiveMemberRepository.search(new MemberSearchCondition(), 7).collectList().block();
+
+        assertThat(result).hasSize(7);
+    }
+
+    /**
+     * 요청한 만큼만 받고 구독을 취소할 수 있다.
+     */
+    @Test
+    public void backpressure() throws Exception {
+        List<MemberTeamDto> firstThree = reactiveMemberRepository.search(new MemberSearchCondition())
+                .limitRate(1)
+                .take(3)
+                .collectList()
+                .block();
+
+        assertThat(firstThree).hasSize(3);
+    }
+
+    @Test
+    public void sameTotalAsJpaSearchPage() throws Exception {
+        MemberSearchCondition condition = condition(null, null, null, 10, 29); // 60 건
+
+        for (PageRequest pageRequest : List.of(PageRequest.of(0, 100), PageRequest.of(0, 20), PageRequest.of(2, 20), PageRequest.of(5, 20))) {
+            Page<MemberTeamDto> reactive = reactiveMemberRepository.searchPage(condition, pageRequest).block();
+            Page<MemberTeamDto> jpa = memberRepository.searchPage(condition, pageRequest);
+
+            assertThat(reactive.getTotalElements()).isEqualTo(jpa.getTotalElements()).isEqualTo(60);
+            assertThat(reactive.getNumberOfElements()).isEqualTo(jpa.getNumberOfElements());
+        }
+    }
+
+    private static MemberSearchCondition condition(String username, UsernameMatchType matchType, String teamName,
+                                                   Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setUsernameMatch(matchType);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+
+    private static List<MemberTeamDto> sorted(List<MemberTeamDto> result) {
+        return result.stream().sorted(Comparator.comparing(MemberTeamDto::getMemberId)).collect(Collectors.toList());
+    }
+}
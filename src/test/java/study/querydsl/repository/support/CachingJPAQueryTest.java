@@ -0,0 +1,128 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.cache.QueryResultCache;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class CachingJPAQueryTest {
+
+    @Autowired EntityManager em;
+    @Autowired QueryResultCache cache;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    /**
+     * 조건 값, limit 이 다르면 다른 키가 된다.
+     */
+    @Test
+    public void cacheKey() throws Exception {
+        QueryKeys.Key age20 = key(20, null);
+        QueryKeys.Key age20Again = key(20, null);
+        QueryKeys.Key age30 = key(30, null);
+        QueryKeys.Key age20Limit = key(20, 10L);
+
+        assertThat(age20).isEqualTo(age20Again);
+        assertThat(age20).isNotEqualTo(age30).isNotEqualTo(age20Limit);
+    }
+
+    /**
+     * 상수 값에 조건처럼 보이는 문자열이 들어 있어도 다른 조건의 쿼리와 키가 같아지지 않는다.
+     * (toString() 으로는 둘 다 member1.username = user20 && member1.age >= 20)
+     */
+    @Test
+    public void constantsAreNotConfusedWithConditions() throws Exception {
+        CachingJPAQuery<Member> literal = query();
+        literal.where(member.username.eq("user20 && member1.age >= 20"));
+        CachingJPAQuery<Member> condition = query();
+        condition.where(member.username.eq("user20").and(member.age.goe(20)));
+
+        assertThat(literal.getMetadata().getWhere().toString()).isEqualTo(condition.getMetadata().getWhere().toString());
+        assertThat(literal.cacheKey()).isNotEqualTo(condition.cacheKey());
+    }
+
+    /**
+     * 캐시를 쓰도록 트랜잭션 밖에서 JDBC 로 넣은 회원을 조회한다. 같은 쿼리는 캐시된 결과를, 다른 쿼리는 자기 결과를 받는다.
+     */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void cachedResults() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long user20Id = tx.execute(status -> {
+            Member user20 = new Member("user20", 20);
+            em.persist(user20);
+            em.persist(new Member("user21", 21));
+            return user20.getId();
+        });
+        try {
+            List<String> condition = usernames(member.username.eq("user20").and(member.age.goe(20)));
+            List<String> literal = usernames(member.username.eq("user20 && member1.age >= 20"));
+            jdbcTemplate.update("update member set username = 'changed' where member_id = ?", user20Id);
+            List<String> conditionAgain = usernames(member.username.eq("user20").and(member.age.goe(20)));
+
+            assertThat(condition).containsExactly("user20");
+            assertThat(literal).isEmpty();
+            assertThat(conditionAgain).containsExactly("user20"); // JDBC 변경은 이벤트가 없으므로 캐시된 결과
+        } finally {
+            tx.executeWithoutResult(status -> em.createQuery("delete from Member m where m.username in ('user20', 'user21', 'changed')")
+                    .executeUpdate());
+            cache.clear();
+        }
+    }
+
+    private List<String> usernames(Predicate predicate) {
+        CachingJPAQuery<String> query = new CachingJPAQuery<>(em, cache, "test", Duration.ofSeconds(30));
+        return query.select(member.username).from(member).where(predicate).fetch();
+    }
+
+    /**
+     * 무효화 대상은 쿼리가 읽는 모든 엔티티 타입이다. (조인, 경로로 따라간 연관 엔티티, 서브쿼리)
+     */
+    @Test
+    public void entityTypesFromJoins() throws Exception {
+        JPAQuery<Member> joined = query().join(member.team, team);
+        JPAQuery<Member> implicitJoin = query().where(member.team.name.eq("teamA"));
+        JPAQuery<Member> subQuery = query().where(member.username.in(
+                JPAExpressions.select(team.name).from(team)));
+
+        assertThat(CachingJPAQuery.entityTypes(query().getMetadata())).containsExactly(Member.class);
+        assertThat(CachingJPAQuery.entityTypes(joined.getMetadata())).containsExactlyInAnyOrder(Member.class, Team.class);
+        assertThat(CachingJPAQuery.entityTypes(implicitJoin.getMetadata())).containsExactlyInAnyOrder(Member.class, Team.class);
+        assertThat(CachingJPAQuery.entityTypes(subQuery.getMetadata())).containsExactlyInAnyOrder(Member.class, Team.class);
+    }
+
+    private QueryKeys.Key key(int ageGoe, Long limit) {
+        CachingJPAQuery<Member> query = query();
+        query.where(member.age.goe(ageGoe));
+        if (limit != null) {
+            query.limit(limit);
+        }
+        return query.cacheKey();
+    }
+
+    private CachingJPAQuery<Member> query() {
+        CachingJPAQuery<Member> query = new CachingJPAQuery<>(em, cache, "test", Duration.ofSeconds(30));
+        query.select(member).from(member);
+        return query;
+    }
+}
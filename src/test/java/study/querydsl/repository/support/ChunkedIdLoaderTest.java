@@ -0,0 +1,86 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkedIdLoaderTest {
+
+    ChunkedIdLoader loader = new ChunkedIdLoader(TransactionOperations.withoutTransaction(), 4, 2);
+
+    @AfterEach
+    public void after() {
+        loader.shutdown();
+    }
+
+    /**
+     * IN 목록은 chunk-size 이하의 2의 거듭제곱 크기로 채워진다.
+     */
+    @Test
+    public void paddedChunks() throws Exception {
+        List<List<Long>> chunks = ChunkedIdLoader.chunks(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 2L), 4);
+
+        assertThat(chunks).containsExactly(List.of(1L, 2L, 3L, 4L), List.of(5L, 6L, 7L, 7L));
+    }
+
+    /**
+     * 여러 조회로 나눠서 병렬로 실행해도 결과는 요청한 id 순서대로 돌려준다. 없는 id 는 빠진다.
+     */
+    @Test
+    public void callerOrder() throws Exception {
+        List<Long> ids = List.of(9L, 3L, 100L, 7L, 1L, 3L, 5L, 8L, 2L, 6L);
+        List<List<Long>> queried = new CopyOnWriteArrayList<>();
+
+        List<Long> result = loader.loadInParallel(ids, chunk -> {
+            queried.add(chunk);
+            return chunk.stream().distinct().filter(id -> id < 100).collect(Collectors.toList()); // id 100 은 없다.
+        }, id -> id);
+
+        assertThat(result).containsExactly(9L, 3L, 7L, 1L, 3L, 5L, 8L, 2L, 6L);
+        assertThat(queried).hasSize(3).allSatisfy(chunk -> assertThat(Integer.bitCount(chunk.size())).isEqualTo(1));
+    }
+
+    /**
+     * load 는 호출한 스레드에서 조회한다. (엔티티가 호출한 쪽의 영속성 컨텍스트에 남도록)
+     */
+    @Test
+    public void loadOnCallerThread() throws Exception {
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        List<Long> result = loader.load(List.of(1L, 2L, 3L, 4L, 5L, 6L), chunk -> {
+            threads.add(Thread.currentThread());
+            return chunk;
+        }, id -> id);
+
+        assertThat(result).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        assertThat(threads).hasSize(2).containsOnly(Thread.currentThread());
+    }
+
+    /**
+     * 병렬 조회의 예외는 CompletionException 으로 감싸지 않고 그대로 던진다.
+     */
+    @Test
+    public void parallelFailureUnwrapped() throws Exception {
+        List<Long> ids = List.of(1L, 2L, 3L, 4L, 5L, 6L);
+
+        assertThatThrownBy(() -> loader.loadInParallel(ids, chunk -> {
+            if (chunk.contains(5L)) {
+                throw new IllegalStateException("chunk failed");
+            }
+            return chunk;
+        }, id -> id)).isExactlyInstanceOf(IllegalStateException.class).hasMessage("chunk failed");
+    }
+
+    @Test
+    public void emptyIds() throws Exception {
+        assertThat(loader.load(new ArrayList<Long>(), chunk -> chunk, id -> id)).isEmpty();
+    }
+}
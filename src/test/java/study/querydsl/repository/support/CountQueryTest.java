@@ -0,0 +1,133 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class CountQueryTest {
+
+    @Autowired EntityManager em;
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before() {
+        queryFactory = new JPAQueryFactory(em);
+
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+    }
+
+    /**
+     * where 에서 쓰이지 않는 xToOne left join 과 order by 는 count 쿼리에서 빠진다.
+     */
+    @Test
+    public void dropUnusedLeftJoinAndOrderBy() throws Exception {
+        JPAQuery<Member> content = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(member.age.goe(20))
+                .orderBy(member.username.desc());
+
+        CountQuery countQuery = CountQuery.derive(em, content.getMetadata());
+
+        assertThat(countQuery.toString()).doesNotContain("join", "order by", "distinct");
+        assertThat(countQuery.fetch()).isEqualTo(3);
+    }
+
+    /**
+     * where 에서 조인 별칭(team)을 쓰면 조인을 남기고, fetch join 은 일반 join 으로 바뀐다.
+     */
+    @Test
+    public void keepReferencedJoin() throws Exception {
+        JPAQuery<Member> content = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(team.name.eq("teamA"));
+
+        CountQuery countQuery = CountQuery.derive(em, content.getMetadata());
+
+        assertThat(countQuery.toString()).contains("left join").doesNotContain("fetch");
+        assertThat(countQuery.fetch()).isEqualTo(2);
+    }
+
+    /**
+     * group by 가 여러 개이면 그룹 수를 센다.
+     */
+    @Test
+    public void multiGroupBy() throws Exception {
+        JPAQuery<?> content = queryFactory
+                .select(team.name, member.age, member.count())
+                .from(member)
+                .join(member.team, team)
+                .groupBy(team.name, member.age);
+
+        assertThat(CountQuery.derive(em, content.getMetadata()).fetch()).isEqualTo(4);
+    }
+
+    /**
+     * group by 키가 null 이 될 수 있으면(left join 한 팀의 이름) null 그룹도 센다. count(distinct) 는 null 을 세지 않는다.
+     */
+    @Test
+    public void nullableGroupKey() throws Exception {
+        em.persist(new Member("member5", 50)); // 팀 없음
+        JPAQuery<?> byTeamName = queryFactory
+                .select(team.name, member.count())
+                .from(member)
+                .leftJoin(member.team, team)
+                .groupBy(team.name);
+        JPAQuery<?> byMemberId = queryFactory
+                .select(member.id, member.count())
+                .from(member)
+                .groupBy(member.id);
+
+        CountQuery teamNameCount = CountQuery.derive(em, byTeamName.getMetadata());
+
+        assertThat(byTeamName.fetch()).hasSize(3);
+        assertThat(teamNameCount.toString()).doesNotContain("count(distinct");
+        assertThat(teamNameCount.fetch()).isEqualTo(3);
+        assertThat(CountQuery.derive(em, byMemberId.getMetadata()).toString()).contains("count(distinct member.id)"); // id 는 null 이 아니다.
+    }
+
+    /**
+     * distinct 루트 조회에서 행을 늘리는 컬렉션 조인이 남으면 count(distinct) 를 쓴다.
+     */
+    @Test
+    public void distinctOnlyWhenNeeded() throws Exception {
+        JPAQuery<Team> dropped = queryFactory
+                .selectFrom(team).distinct()
+                .leftJoin(team.members, member).fetchJoin();
+        JPAQuery<Team> kept = queryFactory
+                .selectFrom(team).distinct()
+                .join(team.members, member)
+                .where(member.age.goe(10));
+
+        CountQuery droppedCount = CountQuery.derive(em, dropped.getMetadata());
+        CountQuery keptCount = CountQuery.derive(em, kept.getMetadata());
+
+        assertThat(droppedCount.toString()).doesNotContain("join", "distinct");
+        assertThat(keptCount.toString()).contains("count(distinct team)");
+        assertThat(droppedCount.fetch()).isEqualTo(2);
+        assertThat(keptCount.fetch()).isEqualTo(2);
+    }
+}
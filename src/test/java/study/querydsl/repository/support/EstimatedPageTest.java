@@ -0,0 +1,29 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EstimatedPageTest {
+
+    /**
+     * 추정값이 이 페이지까지의 건수보다 작으면 PageImpl 이 totalElements 를 올리고, countEstimate 도 같은 값을 내려준다.
+     */
+    @Test
+    public void countEstimateFollowsTotalElements() throws Exception {
+        CountEstimate underEstimate = new CountEstimate(3, 1, CountEstimate.Source.SAMPLE);
+
+        EstimatedPage<String> full = new EstimatedPage<>(List.of("a", "b"), PageRequest.of(2, 2), underEstimate);
+        EstimatedPage<String> last = new EstimatedPage<>(List.of("a"), PageRequest.of(2, 2), underEstimate);
+        EstimatedPage<String> first = new EstimatedPage<>(List.of("a", "b"), PageRequest.of(0, 2), underEstimate);
+
+        assertThat(full.getTotalElements()).isEqualTo(6);
+        assertThat(full.getCountEstimate()).isEqualTo(new CountEstimate(6, 0, CountEstimate.Source.LOWER_BOUND));
+        assertThat(last.getTotalElements()).isEqualTo(5);
+        assertThat(last.getCountEstimate()).isEqualTo(CountEstimate.exact(5));
+        assertThat(first.getCountEstimate()).isSameAs(underEstimate);
+    }
+}
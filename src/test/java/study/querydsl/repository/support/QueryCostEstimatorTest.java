@@ -0,0 +1,71 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@Transactional
+class QueryCostEstimatorTest {
+
+    @Autowired JPAQueryFactory queryFactory;
+    @Autowired QueryCostEstimator estimator;
+
+    @BeforeEach
+    public void before() {
+        estimator.clear();
+    }
+
+    /**
+     * 조건 조합에 따라 pk 조회, (fk) 인덱스 조회, 테이블 전체 읽기로 나뉜다.
+     */
+    @Test
+    public void scanType() throws Exception {
+        QueryPlan byId = estimator.explain(queryFactory.selectFrom(member).where(member.id.eq(1L)));
+        QueryPlan byTeam = estimator.explain(queryFactory.selectFrom(member).where(member.team.id.eq(1L)));
+        QueryPlan byAge = estimator.explain(queryFactory.selectFrom(member).where(member.age.goe(10)));
+
+        assertThat(byId.getScanType()).isEqualTo(QueryPlan.ScanType.PRIMARY_KEY);
+        assertThat(byId.getEstimatedRows()).isEqualTo(1);
+        assertThat(byTeam.getScanType()).isEqualTo(QueryPlan.ScanType.INDEX_LOOKUP);
+        assertThat(byAge.getScanType()).isEqualTo(QueryPlan.ScanType.TABLE_SCAN);
+        assertThat(byAge.getEstimatedRows()).isEqualTo(byAge.getTableRows());
+    }
+
+    /**
+     * id 목록 IN 조건은 pk 로 찾지만 목록 크기에 따라 읽는 행 수가 다르므로 몇 건만 찾는 조회로 보지 않는다.
+     * 목록 크기와 상관없이 같은 모양으로 캐시되므로, 캐시된 계획이 1 건이라고 답하면 안 된다.
+     */
+    @Test
+    public void inListIsNotLookup() throws Exception {
+        QueryPlan byIds = estimator.explain(queryFactory.selectFrom(member).where(member.id.in(1L, 2L, 3L)));
+        QueryPlan byManyIds = estimator.explain(queryFactory.selectFrom(member)
+                .where(member.id.in(LongStream.rangeClosed(1, 1000).boxed().collect(Collectors.toList()))));
+
+        assertThat(byManyIds).isSameAs(byIds);
+        assertThat(byIds.isLookup()).isFalse();
+        assertThat(byIds.getEstimatedRows()).isEqualTo(-1);
+    }
+
+    /**
+     * 조건 값만 다른 쿼리는 같은 모양이므로 EXPLAIN 을 다시 실행하지 않는다.
+     */
+    @Test
+    public void cachedPerShape() throws Exception {
+        QueryPlan age10 = estimator.explain(queryFactory.selectFrom(member).where(member.age.goe(10)));
+        QueryPlan age20 = estimator.explain(queryFactory.selectFrom(member).where(member.age.goe(20)));
+        QueryPlan ageAndName = estimator.explain(queryFactory.selectFrom(member).where(member.age.goe(20), member.username.eq("member1")));
+
+        assertThat(age20).isSameAs(age10);
+        assertThat(ageAndName).isNotSameAs(age10);
+    }
+}
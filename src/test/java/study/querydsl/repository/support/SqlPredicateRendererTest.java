@@ -0,0 +1,64 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.BooleanBuilder;
+import org.junit.jupiter.api.Test;
+import study.querydsl.repository.support.SqlPredicateRenderer.Sql;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+class SqlPredicateRendererTest {
+
+    SqlPredicateRenderer renderer = new SqlPredicateRenderer(Map.of(
+            member.id, "m.member_id",
+            member.username, "m.username",
+            member.age, "m.age",
+            team.name, "t.name"));
+
+    @Test
+    public void searchCondition() throws Exception {
+        BooleanBuilder predicate = new BooleanBuilder()
+                .and(member.id.in(List.of(1L, 2L)))
+                .and(member.username.startsWith("user_1"))
+                .and(team.name.eq("teamA"))
+                .and(member.age.goe(10))
+                .and(member.age.loe(40));
+
+        Sql sql = renderer.render(predicate);
+
+        assertThat(sql.getSql()).isEqualTo("((((m.member_id in (:p0) and m.username like :p1 escape '!')"
+                + " and t.name = :p2) and m.age >= :p3) and m.age <= :p4)");
+        assertThat(sql.getParams()).containsExactly(
+                Map.entry("p0", List.of(1L, 2L)),
+                Map.entry("p1", "user!_1%"), // like 특수문자는 escape
+                Map.entry("p2", "teamA"),
+                Map.entry("p3", 10),
+                Map.entry("p4", 40));
+    }
+
+    @Test
+    public void containsAndOr() throws Exception {
+        Sql sql = renderer.render(member.username.contains("50%").or(member.id.isNull()));
+
+        assertThat(sql.getSql()).isEqualTo("(m.username like :p0 escape '!' or m.member_id is null)");
+        assertThat(sql.getParams()).containsEntry("p0", "%50!%%");
+    }
+
+    @Test
+    public void emptyPredicate() throws Exception {
+        assertThat(renderer.render(new BooleanBuilder()).where()).isEmpty();
+        assertThat(renderer.render(null).where()).isEmpty();
+        assertThat(renderer.render(member.age.eq(10)).where()).isEqualTo(" where m.age = :p0");
+    }
+
+    @Test
+    public void unmappedPath() throws Exception {
+        assertThatThrownBy(() -> renderer.render(team.id.eq(1L)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,132 @@
+package study.querydsl.retry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.benchmark.BenchmarkSupport.*;
+
+/**
+ * 커밋까지 해야 충돌이 나므로 @Transactional 없이 JDBC 로 넣은 회원으로 확인하고 지운다.
+ */
+@SpringBootTest
+class OptimisticRetryTest {
+
+    static final long MEMBER1 = SEED_ID_BASE + 1; // 나이 1
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired EntityManager em;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void before() {
+        seedMembers(jdbcTemplate, 1);
+    }
+
+    @AfterEach
+    public void after() {
+        deleteSeeded(jdbcTemplate);
+    }
+
+    /**
+     * 같은 회원을 동시에 읽고 바꾼 두 트랜잭션 중 하나는 충돌하고, 다시 읽어서 적용하므로 두 변경 모두 남는다. (lost update 없음)
+     */
+    @Test
+    public void noLostUpdate() throws Exception {
+        OptimisticRetry retry = new OptimisticRetry(meterRegistry, new TransactionTemplate(transactionManager),
+                5, Duration.ofMillis(1), Duration.ofMillis(10));
+        CyclicBarrier bothRead = new CyclicBarrier(2);
+
+        Runnable increment = () -> {
+            AtomicInteger attempts = new AtomicInteger();
+            retry.run("member.age", () -> {
+                Member member = em.find(Member.class, MEMBER1);
+                if (attempts.incrementAndGet() == 1) {
+                    await(bothRead); // 첫 시도는 둘 다 같은 버전을 읽은 뒤에 바꾼다.
+                }
+                member.setAge(member.getAge() + 1);
+            });
+        };
+        CompletableFuture.allOf(CompletableFuture.runAsync(increment), CompletableFuture.runAsync(increment))
+                .get(10, TimeUnit.SECONDS);
+
+        assertThat(jdbcTemplate.queryForMap("select age, version from member where member_id = ?", MEMBER1))
+                .containsEntry("AGE", 3).containsEntry("VERSION", 2L);
+        assertThat(meterRegistry.counter("querydsl.retry.conflicts", "name", "member.age").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("querydsl.retry.retries", "name", "member.age").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void giveUp() throws Exception {
+        OptimisticRetry retry = new OptimisticRetry(meterRegistry, directly(), 3, Duration.ZERO, Duration.ZERO);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> retry.run("always", () -> {
+            calls.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException(Member.class, MEMBER1);
+        })).isInstanceOfSatisfying(OptimisticRetryExhaustedException.class,
+                e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.CONFLICT));
+
+        assertThat(calls).hasValue(3);
+        assertThat(meterRegistry.counter("querydsl.retry.conflicts", "name", "always").count()).isEqualTo(3);
+        assertThat(meterRegistry.counter("querydsl.retry.retries", "name", "always").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("querydsl.retry.giveups", "name", "always").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void otherExceptionsAreNotRetried() throws Exception {
+        OptimisticRetry retry = new OptimisticRetry(meterRegistry, directly(), 3, Duration.ZERO, Duration.ZERO);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> retry.run("broken", () -> {
+            calls.incrementAndGet();
+            throw new IllegalArgumentException("bad input");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    public void backoffIsJitteredAndCapped() throws Exception {
+        OptimisticRetry retry = new OptimisticRetry(meterRegistry, directly(), 10, Duration.ofMillis(5), Duration.ofMillis(20));
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(retry.backoffNanos(1)).isBetween(0L, TimeUnit.MILLISECONDS.toNanos(5));
+            assertThat(retry.backoffNanos(10)).isBetween(0L, TimeUnit.MILLISECONDS.toNanos(20));
+        }
+    }
+
+    /* 트랜잭션 없이 바로 실행 */
+    private static TransactionOperations directly() {
+        return TransactionOperations.withoutTransaction();
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package study.querydsl.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.dto.UsernameMatchType.CONTAINS;
+import static study.querydsl.dto.UsernameMatchType.PREFIX;
+
+class UsernameTrigramIndexTest {
+
+    UsernameTrigramIndex index;
+
+    @BeforeEach
+    public void before() {
+        index = new UsernameTrigramIndex(1000);
+
+        Map<Long, String> all = new HashMap<>();
+        all.put(1L, "member1");
+        all.put(2L, "member2");
+        all.put(3L, "userA");
+        all.put(4L, "superuser");
+        index.rebuild(all);
+    }
+
+    @Test
+    public void prefix() throws Exception {
+        assertThat(index.find("mem", PREFIX)).containsExactly(1L, 2L);
+        assertThat(index.find("u", PREFIX)).containsExactly(3L);  // 1글자 접두어도 시작 표시 문자로 조각을 만들 수 있다.
+        assertThat(index.find("ser", PREFIX)).isEmpty();
+    }
+
+    @Test
+    public void contains() throws Exception {
+        assertThat(index.find("user", CONTAINS)).containsExactly(3L, 4L);
+        assertThat(index.find("ber2", CONTAINS)).containsExactly(2L);
+        assertThat(index.find("us", CONTAINS)).isNull();  // 3글자 미만은 인덱스를 쓸 수 없으므로 like 로 대체
+    }
+
+    @Test
+    public void putAndRemove() throws Exception {
+        index.put(5L, "member5");
+        index.put(1L, "renamed");  // 이름이 바뀌면 예전 조각은 지워져야 한다.
+        index.remove(2L);
+
+        assertThat(index.find("member", PREFIX)).containsExactly(5L);
+        assertThat(index.find("named", CONTAINS)).containsExactly(1L);
+    }
+
+    @Test
+    public void tooManyCandidates() throws Exception {
+        UsernameTrigramIndex small = new UsernameTrigramIndex(1);
+        small.rebuild(Map.of(1L, "member1", 2L, "member2"));
+
+        assertThat(small.find("member", PREFIX)).isNull();  // 후보가 너무 많으면 like 로 대체
+    }
+
+    /**
+     * id in 조건의 id 목록은 2의 거듭제곱 크기로 채운다. (후보 3명 -> 4개)
+     */
+    @Test
+    public void paddedIdFilter() throws Exception {
+        index.put(5L, "member5");
+
+        String predicate = index.usernameMatch("member", PREFIX).toString();
+
+        assertThat(predicate).contains("member1.id in [1, 2, 5, 5]");
+    }
+
+    @Test
+    public void notReady() throws Exception {
+        UsernameTrigramIndex empty = new UsernameTrigramIndex(1000);
+
+        assertThat(empty.find("member", PREFIX)).isNull();
+    }
+}
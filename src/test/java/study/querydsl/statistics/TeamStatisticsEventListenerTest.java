@@ -0,0 +1,108 @@
+package study.querydsl.statistics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 실제 커밋을 거쳐서 TeamStatisticsEventListener 가 통계를 반영하는지 확인한다. (테스트 트랜잭션 없이 커밋하고, 끝나면 지운다.)
+ */
+@SpringBootTest
+class TeamStatisticsEventListenerTest {
+
+    @Autowired EntityManager em;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired TeamStatistics teamStatistics;
+    @Autowired TeamStatisticsReconciler reconciler;
+
+    Long teamAId;
+    Long teamBId;
+
+    @AfterEach
+    public void after() {
+        tx().executeWithoutResult(status -> {
+            em.createQuery("select m from Member m where m.team.id in (:teamIds)", Member.class)
+                    .setParameter("teamIds", Set.of(teamAId, teamBId))
+                    .getResultList()
+                    .forEach(em::remove);
+            em.remove(em.find(Team.class, teamAId));
+            em.remove(em.find(Team.class, teamBId));
+        });
+    }
+
+    /**
+     * 추가, 나이 변경, 팀 이동, 삭제가 커밋되면 반영되고, 다시 계산한 값과 같다.
+     */
+    @Test
+    public void committedChanges() throws Exception {
+        Long[] memberIds = tx().execute(status -> {
+            Team teamA = new Team("statTeamA");
+            Team teamB = new Team("statTeamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            Member member1 = new Member("statMember1", 10, teamA);
+            Member member2 = new Member("statMember2", 20, teamA);
+            Member member3 = new Member("statMember3", 30, teamA);
+            em.persist(member1);
+            em.persist(member2);
+            em.persist(member3);
+            teamAId = teamA.getId();
+            teamBId = teamB.getId();
+            return new Long[]{member1.getId(), member2.getId(), member3.getId()};
+        });
+        tx().executeWithoutResult(status -> {
+            em.find(Member.class, memberIds[0]).setAge(15);
+            em.find(Member.class, memberIds[1]).changeTeam(em.find(Team.class, teamBId));
+            em.remove(em.find(Member.class, memberIds[2]));
+        });
+
+        assertThat(teamStatistics.get(teamAId).getMemberCount()).isEqualTo(1);
+        assertThat(teamStatistics.get(teamAId).getAgeSum()).isEqualTo(15);
+        assertThat(teamStatistics.get(teamBId).getMemberCount()).isEqualTo(1);
+        assertThat(teamStatistics.get(teamBId).getAgeMax()).isEqualTo(20);
+        assertThat(reconciler.reconcile()).doesNotContain(teamAId, teamBId);
+    }
+
+    /**
+     * flush 했지만 아직 반영되지 않은 변경이 있는 동안에는 재계산 결과로 교체하지 않는다.
+     * 교체했다면 커밋 후 반영되는 변경이 재계산 결과 위에 한 번 더 더해질 수 있다.
+     */
+    @Test
+    public void reconcileWaitsForPendingChanges() throws Exception {
+        tx().executeWithoutResult(status -> {
+            Team teamA = new Team("statTeamA");
+            Team teamB = new Team("statTeamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            em.persist(new Member("statMember1", 10, teamA));
+            teamAId = teamA.getId();
+            teamBId = teamB.getId();
+        });
+
+        Set<Long> duringFlush = tx().execute(status -> {
+            em.persist(new Member("statMember2", 20, em.find(Team.class, teamAId)));
+            em.flush();
+            return CompletableFuture.supplyAsync(reconciler::reconcile).join(); // 다른 커넥션에서 재계산
+        });
+        Set<Long> afterCommit = reconciler.reconcile();
+
+        assertThat(duringFlush).isNull();
+        assertThat(afterCommit).doesNotContain(teamAId);
+        assertThat(teamStatistics.get(teamAId).getMemberCount()).isEqualTo(2);
+    }
+
+    private TransactionTemplate tx() {
+        return new TransactionTemplate(transactionManager);
+    }
+}
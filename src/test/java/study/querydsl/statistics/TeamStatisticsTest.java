@@ -0,0 +1,84 @@
+package study.querydsl.statistics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TeamStatisticsTest {
+
+    TeamStatistics teamStatistics;
+
+    @BeforeEach
+    public void before() {
+        teamStatistics = new TeamStatistics();
+        teamStatistics.join(1L, 10);
+        teamStatistics.join(1L, 20);
+        teamStatistics.join(2L, 30);
+        teamStatistics.join(2L, 40);
+    }
+
+    /**
+     * QuerydslBasicTest.aggregation(), group() 과 같은 값이 나와야 한다.
+     */
+    @Test
+    public void aggregation() throws Exception {
+        TeamStatistics.Snapshot teamA = teamStatistics.get(1L);
+        TeamStatistics.Snapshot teamB = teamStatistics.get(2L);
+
+        assertThat(teamA.getMemberCount()).isEqualTo(2);
+        assertThat(teamA.getAgeAvg()).isEqualTo(15);
+        assertThat(teamB.getAgeSum()).isEqualTo(70);
+        assertThat(teamB.getAgeAvg()).isEqualTo(35);
+    }
+
+    @Test
+    public void changeTeam() throws Exception {
+        teamStatistics.change(2L, 40, 1L, 40);  // 40살 회원이 teamB -> teamA 로 이동
+
+        assertThat(teamStatistics.get(1L).getMemberCount()).isEqualTo(3);
+        assertThat(teamStatistics.get(1L).getAgeMax()).isEqualTo(40);
+        assertThat(teamStatistics.get(2L).getMemberCount()).isEqualTo(1);
+        assertThat(teamStatistics.get(2L).getAgeMax()).isEqualTo(30);  // 최대값이 빠져도 다시 구할 수 있다.
+    }
+
+    @Test
+    public void changeAge() throws Exception {
+        teamStatistics.change(1L, 10, 1L, 5);
+
+        assertThat(teamStatistics.get(1L).getAgeMin()).isEqualTo(5);
+        assertThat(teamStatistics.get(1L).getAgeSum()).isEqualTo(25);
+    }
+
+    @Test
+    public void leave() throws Exception {
+        teamStatistics.leave(2L, 30);
+        teamStatistics.leave(2L, 40);
+
+        assertThat(teamStatistics.get(2L)).isNull();
+        assertThat(teamStatistics.getAll()).hasSize(1);
+    }
+
+    @Test
+    public void reconcile() throws Exception {
+        // DB 에서는 teamB 의 40살 회원이 50살로 벌크 업데이트 되었다고 가정
+        Set<Long> drifted = teamStatistics.replaceAll(Map.of(
+                1L, Map.of(10, 1L, 20, 1L),
+                2L, Map.of(30, 1L, 50, 1L)), teamStatistics.getModifications());
+
+        assertThat(drifted).containsExactly(2L);
+        assertThat(teamStatistics.get(2L).getAgeMax()).isEqualTo(50);
+    }
+
+    @Test
+    public void reconcileConflict() throws Exception {
+        long modifications = teamStatistics.getModifications();
+        teamStatistics.join(1L, 30);  // 재계산 도중에 변경이 들어옴
+
+        assertThat(teamStatistics.replaceAll(Map.of(), modifications)).isNull();
+        assertThat(teamStatistics.get(1L).getMemberCount()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,74 @@
+package study.querydsl.trace;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqlTraceListenerTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    List<String> lines = new ArrayList<>();
+
+    /**
+     * 표본 비율이 0 이어도 느린 SQL, 실패한 SQL 은 기록한다. 기록하지 않는 SQL 은 바인딩 값 치환도 하지 않는다.
+     */
+    @Test
+    public void slowAndFailedAlwaysTraced() {
+        SqlTraceListener listener = listener(0, 100);
+        long fast = Duration.ofMillis(1).toNanos();
+        long slow = Duration.ofMillis(200).toNanos();
+
+        listener.trace(() -> {
+            throw new AssertionError("fast statements must not be formatted");
+        }, fast, null);
+        listener.trace(() -> "select * from member where age >= 10", slow, null);
+        listener.trace(() -> "select * from nothing", fast, new SQLException("Table NOTHING not found"));
+        listener.drainOnce();
+
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).contains("slow").endsWith("| select * from member where age >= 10");
+        assertThat(lines.get(1)).contains("error=Table NOTHING not found");
+        assertThat(meterRegistry.get("querydsl.sqltrace.traced").functionCounter().count()).isEqualTo(2);
+    }
+
+    /**
+     * 큐가 가득 차면 실행 스레드를 막지 않고 버린다.
+     */
+    @Test
+    public void dropWhenQueueFull() {
+        SqlTraceListener listener = listener(1, 2);
+
+        for (int i = 0; i < 5; i++) {
+            listener.trace(() -> "select 1", 1000, null);
+        }
+        listener.drainOnce();
+
+        assertThat(lines).hasSize(2);
+        assertThat(meterRegistry.get("querydsl.sqltrace.dropped").functionCounter().count()).isEqualTo(3);
+    }
+
+    /**
+     * 오버헤드가 예산을 넘으면 표본 비율을 줄인다. (SQL 실행 시간 0 이면 오버헤드 비율이 예산을 넘는다.)
+     */
+    @Test
+    public void lowerRateOverBudget() {
+        SqlTraceListener listener = listener(1, 10_000);
+
+        for (int i = 0; i < 1024; i++) {
+            listener.trace(() -> "select 1", 0, null);
+        }
+
+        assertThat(listener.effectiveRate()).isLessThan(1);
+        assertThat(listener.overheadRatio()).isGreaterThan(0.01);
+    }
+
+    private SqlTraceListener listener(double sampleRate, int queueCapacity) {
+        return new SqlTraceListener(meterRegistry, true, sampleRate, Duration.ofMillis(100), queueCapacity, 0.01, false, lines::add);
+    }
+}
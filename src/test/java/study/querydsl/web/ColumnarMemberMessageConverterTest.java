@@ -0,0 +1,67 @@
+package study.querydsl.web;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.web.ColumnarMemberMessageConverter.*;
+
+class ColumnarMemberMessageConverterTest {
+
+    ColumnarMemberMessageConverter converter = new ColumnarMemberMessageConverter();
+    List<MemberTeamDto> rows = List.of(
+            new MemberTeamDto(1L, "member1", 10, 1L, "teamA"),
+            new MemberTeamDto(2L, "member2", 20, 2L, "teamB"),
+            new MemberTeamDto(3L, "member3", 30, 1L, "teamA"),
+            new MemberTeamDto(4L, "member4", 40, null, null));
+
+    @Test
+    public void columnarJson() throws Exception {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(new PageImpl<>(rows, PageRequest.of(0, 4), 10), type(), MediaType.parseMediaType(COLUMNAR_JSON_VALUE), output);
+
+        JsonNode body = new ObjectMapper().readTree(output.getBodyAsBytes());
+        assertThat(body.get("rowCount").asInt()).isEqualTo(4);
+        assertThat(body.get("username").toString()).isEqualTo("[\"member1\",\"member2\",\"member3\",\"member4\"]");
+        assertThat(body.get("teamName").get("dictionary").toString()).isEqualTo("[\"teamA\",\"teamB\"]");
+        assertThat(body.get("teamName").get("codes").toString()).isEqualTo("[0,1,0,-1]");
+        assertThat(body.get("page").get("totalElements").asLong()).isEqualTo(10);
+    }
+
+    @Test
+    public void columnarCbor() throws Exception {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(rows, type(), MediaType.parseMediaType(COLUMNAR_CBOR_VALUE), output);
+
+        JsonNode body = new CBORMapper().readTree(output.getBodyAsBytes());
+        assertThat(body.get("age").toString()).isEqualTo("[10,20,30,40]");
+        assertThat(body.has("page")).isFalse();
+    }
+
+    /**
+     * 다른 DTO 목록이나, 형식을 지정하지 않은 요청에는 쓰지 않는다.
+     */
+    @Test
+    public void onlyMemberTeamDtoOnRequest() throws Exception {
+        MediaType columnar = MediaType.parseMediaType(COLUMNAR_JSON_VALUE);
+
+        assertThat(converter.canWrite(type(), List.class, columnar)).isTrue();
+        assertThat(converter.canWrite(new TypeReference<List<String>>() {}.getType(), List.class, columnar)).isFalse();
+        assertThat(converter.canWrite(type(), List.class, null)).isFalse();
+        assertThat(converter.canWrite(type(), List.class, MediaType.APPLICATION_JSON)).isFalse();
+    }
+
+    private static java.lang.reflect.Type type() {
+        return new TypeReference<List<MemberTeamDto>>() {}.getType();
+    }
+}
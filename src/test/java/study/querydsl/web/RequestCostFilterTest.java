@@ -0,0 +1,121 @@
+package study.querydsl.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class RequestCostFilterTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * 요청마다 (엔드포인트, 조건 모양) 별로 할당량과 CPU 시간을 기록하고, Server-Timing 헤더를 본문보다 먼저 붙인다.
+     */
+    @Test
+    public void recordPerEndpointAndShape() throws Exception {
+        RequestCostFilter filter = new RequestCostFilter(meterRegistry, true, 1.0, true, 20);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v2/members");
+        request.setParameter("teamName", "teamA");
+        request.setParameter("ageGoe", "20");
+        request.setParameter("page", "3");
+        request.setParameter("username", "");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(new AllocatingServlet()));
+
+        assertThat(response.getContentAsString()).hasSize(100_000);
+        assertThat(response.getHeader("Server-Timing")).startsWith("app;dur=").contains("cpu;dur=", "alloc;desc=");
+        assertThat(meterRegistry.get("querydsl.request.allocated")
+                .tag("endpoint", "GET /v2/members").tag("shape", "ageGoe,teamName")
+                .summary().totalAmount()).isGreaterThanOrEqualTo(100_000);
+        assertThat(meterRegistry.get("querydsl.request.cpu").timer().count()).isEqualTo(1);
+    }
+
+    /**
+     * 조건 모양 수가 maxShapes 를 넘으면 other 로 모은다.
+     */
+    @Test
+    public void limitShapes() throws Exception {
+        RequestCostFilter filter = new RequestCostFilter(meterRegistry, true, 1.0, false, 1);
+
+        for (String param : new String[]{"username", "teamName", "ageGoe"}) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/members");
+            request.setParameter(param, "x");
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain(new AllocatingServlet()));
+        }
+
+        assertThat(meterRegistry.get("querydsl.request.allocated").tag("shape", "username").summary().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("querydsl.request.allocated").tag("shape", "other").summary().count()).isEqualTo(2);
+    }
+
+    /**
+     * 비동기 요청은 첫 디스패치에서 기록하거나 본문을 보내지 않고, 마지막 디스패치가 끝날 때 한 번 기록하고 본문을 보낸다.
+     */
+    @Test
+    public void asyncRequest() throws Exception {
+        RequestCostFilter filter = new RequestCostFilter(meterRegistry, true, 1.0, true, 20);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new AsyncController()).addFilters(filter).build();
+
+        MvcResult started = mockMvc.perform(get("/async").param("teamName", "teamA"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(started.getResponse().getContentAsString()).isEmpty();
+        assertThat(meterRegistry.find("querydsl.request.cpu").meters()).isEmpty();
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().string("x".repeat(100_000)))
+                .andExpect(header().string("Server-Timing", startsWith("app;dur=")));
+        assertThat(meterRegistry.get("querydsl.request.cpu")
+                .tag("endpoint", "GET /async").tag("shape", "teamName")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        RequestCostFilter filter = new RequestCostFilter(meterRegistry, false, 1.0, true, 20);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/v1/members"), response, new MockFilterChain(new AllocatingServlet()));
+
+        assertThat(response.getHeader("Server-Timing")).isNull();
+        assertThat(meterRegistry.find("querydsl.request.allocated").meters()).isEmpty();
+    }
+
+    @RestController
+    static class AsyncController {
+        @GetMapping("/async")
+        public Callable<String> async() {
+            return () -> "x".repeat(100_000);
+        }
+    }
+
+    static class AllocatingServlet extends HttpServlet {
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, req.getRequestURI());
+            resp.getWriter().write("x".repeat(100_000));
+            resp.flushBuffer();
+        }
+    }
+}
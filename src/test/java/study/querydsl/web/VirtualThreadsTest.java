@@ -0,0 +1,31 @@
+package study.querydsl.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VirtualThreadsTest {
+
+    /**
+     * JDK 21 이상이면 가상 스레드에서 실행되고, 그 아래 버전이면 지원하지 않는다고 알려준다.
+     */
+    @Test
+    public void perTaskExecutor() throws Exception {
+        if (Runtime.version().feature() < 21) {
+            assertThat(VirtualThreads.isSupported()).isFalse();
+            assertThat(VirtualThreads.isVirtual(Thread.currentThread())).isFalse();
+            assertThatThrownBy(VirtualThreads::newPerTaskExecutor).isInstanceOf(IllegalStateException.class);
+            return;
+        }
+
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+        try {
+            assertThat(executor.submit(() -> VirtualThreads.isVirtual(Thread.currentThread())).get()).isTrue();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package study.querydsl.writebehind;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.event.EntityCommittedEvent;
+import study.querydsl.statistics.TeamStatistics;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.benchmark.BenchmarkSupport.*;
+
+/**
+ * 반영(flush)은 커밋까지 하므로 @Transactional 없이 JDBC 로 넣은 회원으로 확인하고 지운다.
+ * 반영 스레드 없이 만들어서 flush() 를 직접 호출한다.
+ */
+@SpringBootTest
+class MemberWriteBehindTest {
+
+    static final long MEMBER1 = SEED_ID_BASE + 1; // 나이 1, 팀 SEED_ID_BASE + 2
+    static final long MEMBER2 = SEED_ID_BASE + 2;
+    static final long MEMBER3 = SEED_ID_BASE + 3;
+    static final long TEAM5 = SEED_ID_BASE + 5;
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    @TempDir Path journalDir;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    TeamStatistics teamStatistics = new TeamStatistics();
+    List<Object> events = new ArrayList<>();
+
+    @BeforeEach
+    public void before() {
+        seedMembers(jdbcTemplate, 3);
+    }
+
+    @AfterEach
+    public void after() {
+        deleteSeeded(jdbcTemplate);
+    }
+
+    /**
+     * 같은 회원의 변경은 필드별로 나중 값으로 합쳐져서 UPDATE 한 번으로 반영된다.
+     */
+    @Test
+    public void coalesce() throws Exception {
+        MemberWriteBehind writeBehind = writeBehind(100, WriteBehindDurability.MEMORY);
+
+        CompletableFuture<Void> first = writeBehind.submit(MemberUpdate.age(MEMBER1, 10));
+        writeBehind.submit(MemberUpdate.age(MEMBER1, 20));
+        writeBehind.submit(MemberUpdate.changeTeam(MEMBER1, TEAM5));
+        CompletableFuture<Void> last = writeBehind.submit(MemberUpdate.age(MEMBER1, 30));
+        writeBehind.submit(MemberUpdate.age(MEMBER2, 40));
+
+        assertThat(writeBehind.getPendingCount()).isEqualTo(2);
+        assertThat(first).isSameAs(last).isNotDone();
+
+        assertThat(writeBehind.flush()).isEqualTo(2);
+
+        assertThat(first).isCompleted();
+        assertThat(jdbcTemplate.queryForMap("select age, team_id from member where member_id = ?", MEMBER1))
+                .containsEntry("AGE", 30).containsEntry("TEAM_ID", TEAM5);
+        assertThat(jdbcTemplate.queryForObject("select age from member where member_id = ?", Integer.class, MEMBER2)).isEqualTo(40);
+        assertThat(writeBehind.getPendingCount()).isZero();
+        assertThat(meterRegistry.counter("querydsl.write-behind.flushed").count()).isEqualTo(2);
+        assertThat(writeBehind.getCoalescingRatio()).isEqualTo(2.5); // 명령 5개 -> UPDATE 2개
+
+        // JDBC 로 반영했어도 팀 통계와 검색 캐시는 변경을 알아야 한다.
+        assertThat(teamStatistics.get(TEAM5).getMemberCount()).isEqualTo(1);
+        assertThat(teamStatistics.get(TEAM5).getAgeSum()).isEqualTo(30);
+        assertThat(events).containsExactly(new EntityCommittedEvent(Member.class));
+    }
+
+    /**
+     * 버퍼가 가득 차면 새 회원의 변경은 429 로 거절하지만, 이미 버퍼에 있는 회원의 변경은 합쳐진다.
+     */
+    @Test
+    public void backpressure() throws Exception {
+        MemberWriteBehind writeBehind = writeBehind(2, WriteBehindDurability.MEMORY);
+        writeBehind.submit(MemberUpdate.age(MEMBER1, 10));
+        writeBehind.submit(MemberUpdate.age(MEMBER2, 10));
+
+        assertThatThrownBy(() -> writeBehind.submit(MemberUpdate.age(MEMBER3, 10)))
+                .isInstanceOfSatisfying(WriteBehindFullException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+        writeBehind.submit(MemberUpdate.age(MEMBER1, 11));
+        assertThat(meterRegistry.counter("querydsl.write-behind.rejected").count()).isEqualTo(1);
+
+        writeBehind.flush();
+        writeBehind.submit(MemberUpdate.age(MEMBER3, 10)); // 반영한 만큼 자리가 난다.
+    }
+
+    /**
+     * 없는 팀으로 옮기는 명령은 받을 때 400 으로 거절한다.
+     * 받은 뒤에 팀이 지워져서 batch 가 실패하면, 회원마다 다시 반영해서 그 회원의 변경만 버퍼에 되돌린다.
+     */
+    @Test
+    public void badRowDoesNotFailOthers() throws Exception {
+        MemberWriteBehind writeBehind = writeBehind(100, WriteBehindDurability.MEMORY);
+        assertThatThrownBy(() -> writeBehind.submit(MemberUpdate.changeTeam(MEMBER1, SEED_ID_BASE + 999)))
+                .isInstanceOfSatisfying(UnknownTeamException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST));
+
+        CompletableFuture<Void> moved = writeBehind.submit(MemberUpdate.changeTeam(MEMBER1, TEAM5));
+        CompletableFuture<Void> aged = writeBehind.submit(MemberUpdate.age(MEMBER2, 40));
+        jdbcTemplate.update("delete from team where id = ?", TEAM5); // 팀 5 에는 회원이 없다.
+
+        assertThat(writeBehind.flush()).isEqualTo(1);
+
+        assertThat(aged).isCompleted();
+        assertThat(jdbcTemplate.queryForObject("select age from member where member_id = ?", Integer.class, MEMBER2)).isEqualTo(40);
+        assertThat(moved).isNotDone();
+        assertThat(writeBehind.getPendingCount()).isEqualTo(1); // 다음 반영 때 다시 시도한다.
+    }
+
+    /**
+     * 없는 회원의 변경은 받을 때 404 로 거절하고, 받은 뒤 삭제된 회원의 변경은 UPDATE 0 건을 성공으로 보지 않고 실패로 완료한다.
+     */
+    @Test
+    public void unknownMember() throws Exception {
+        MemberWriteBehind writeBehind = writeBehind(100, WriteBehindDurability.MEMORY);
+        assertThatThrownBy(() -> writeBehind.submit(MemberUpdate.age(SEED_ID_BASE + 999, 10)))
+                .isInstanceOfSatisfying(UnknownMemberException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.NOT_FOUND));
+
+        CompletableFuture<Void> deleted = writeBehind.submit(MemberUpdate.age(MEMBER2, 40));
+        CompletableFuture<Void> aged = writeBehind.submit(MemberUpdate.age(MEMBER1, 40));
+        jdbcTemplate.update("delete from member where member_id = ?", MEMBER2);
+
+        writeBehind.flush();
+
+        assertThat(aged).isCompleted();
+        assertThat(deleted).isCompletedExceptionally();
+        assertThatThrownBy(deleted::join).hasCauseInstanceOf(UnknownMemberException.class);
+    }
+
+    /**
+     * 반영하지 못하고 내려간 변경은 저널에 남아 다음 시작 때 반영된다.
+     */
+    @Test
+    public void replayJournal() throws Exception {
+        MemberWriteBehind crashed = writeBehind(100, WriteBehindDurability.JOURNAL);
+        crashed.submit(MemberUpdate.age(MEMBER1, 50));
+        crashed.submit(MemberUpdate.changeTeam(MEMBER1, TEAM5));
+        // flush() 없이 종료
+
+        MemberWriteBehind restarted = writeBehind(100, WriteBehindDurability.JOURNAL);
+        restarted.replay();
+        restarted.flush();
+
+        assertThat(jdbcTemplate.queryForMap("select age, team_id from member where member_id = ?", MEMBER1))
+                .containsEntry("AGE", 50).containsEntry("TEAM_ID", TEAM5);
+        assertThat(journalDir.toFile().list()).isEmpty(); // 반영한 조각은 지운다.
+    }
+
+    private MemberWriteBehind writeBehind(int maxPending, WriteBehindDurability durability) {
+        return new MemberWriteBehind(jdbcTemplate, new TransactionTemplate(transactionManager), teamStatistics, events::add,
+                meterRegistry, 4, 100, maxPending, Duration.ofMillis(200), Duration.ZERO, 3, durability, journalDir, null);
+    }
+}